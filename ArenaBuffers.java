@@ -0,0 +1,142 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers reaproveitados durante uma ordenação, para que a quantidade de runs e de passos de
+ * merge não vire alocação (e coleta de lixo) proporcional ao tamanho da entrada.
+ *
+ * Os ByteBuffers são diretos, fora do heap, e separados em classes de tamanho: potências de 2
+ * entre TAMANHO_MINIMO e TAMANHO_MAXIMO. Um pedido recebe um buffer livre da menor classe que
+ * o comporta (ou um novo, se não houver), limpo e em little-endian; pedidos que não são
+ * potência de 2 recebem a capacidade da classe inteira. Os escritores de run (EscritorRun), a
+ * leitura dos runs no merge (BufferArquivoBinario e CanalLeituraAntecipada) e o manifesto
+ * obtêm os buffers aqui e os devolvem ao fechar, então depois do primeiro run e da primeira
+ * mesclagem quase nada é alocado. Os auxiliares long[] do radix são reaproveitados do mesmo
+ * jeito, pelo tamanho exato.
+ *
+ * Os buffers livres guardados somam no máximo limiteRetido bytes; um buffer devolvido além
+ * disso fica para o GC. Guardados, eles não têm reserva no OrcamentoMemoria: quem muda de fase
+ * (a ExecucaoOrdenacao, no fim da formação dos runs) chama liberar() antes de reservar a
+ * memória da fase seguinte. DESCARTAVEL não guarda nada e aloca no heap: é a arena dos runs
+ * lidos no modo mapeado, que não têm buffer de leitura.
+ */
+class ArenaBuffers {
+    static final int CLASSE_MINIMA = 10;                  // 1KB
+    static final int CLASSE_MAXIMA = 24;                  // 16MB
+    static final int TAMANHO_MINIMO = 1 << CLASSE_MINIMA;
+    static final int TAMANHO_MAXIMO = 1 << CLASSE_MAXIMA;
+
+    /** sem reaproveitamento: cada pedido é uma alocação nova no heap */
+    static final ArenaBuffers DESCARTAVEL = new ArenaBuffers(0, false);
+
+    private final long limiteRetido;
+    private final boolean direto;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Queue<ByteBuffer>[] livres = new Queue[CLASSE_MAXIMA + 1];
+    private final Map<Integer, Queue<long[]>> auxiliares = new ConcurrentHashMap<>();
+    private final AtomicLong retidos = new AtomicLong();        // bytes guardados nas listas de livres
+    private final AtomicLong alocados = new AtomicLong();       // pedidos que precisaram de alocação nova
+    private final AtomicLong reaproveitados = new AtomicLong(); // pedidos atendidos por um buffer devolvido
+
+    /**
+     * @param limiteRetido máximo de bytes guardados entre um uso e outro (o orçamento da ordenação)
+     */
+    ArenaBuffers(long limiteRetido) {
+        this(limiteRetido, true);
+    }
+
+    private ArenaBuffers(long limiteRetido, boolean direto) {
+        this.limiteRetido = limiteRetido;
+        this.direto = direto;
+        for (int classe = CLASSE_MINIMA; classe <= CLASSE_MAXIMA; classe++) {
+            livres[classe] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Buffer com ao menos tamanho bytes, vazio para escrita (posição 0, limite na capacidade)
+     */
+    ByteBuffer obter(int tamanho) {
+        int classe = classe(tamanho);
+        ByteBuffer buffer = classe < 0 ? null : livres[classe].poll();
+        if (buffer != null) {
+            retidos.addAndGet(-buffer.capacity());
+            reaproveitados.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        alocados.incrementAndGet();
+        int capacidade = classe < 0 ? tamanho : 1 << classe;
+        buffer = direto ? ByteBuffer.allocateDirect(capacidade) : ByteBuffer.allocate(capacidade);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Devolve um buffer obtido aqui; ele não pode mais ser usado por quem devolveu
+     */
+    void devolver(ByteBuffer buffer) {
+        int classe = classe(buffer.capacity());
+        if (classe < 0 || buffer.capacity() != 1 << classe || buffer.isDirect() != direto) return;
+        if (reter(buffer.capacity())) livres[classe].add(buffer);
+    }
+
+    /**
+     * Auxiliar long[] com exatamente tamanho posições (conteúdo indefinido)
+     */
+    long[] obterLongs(int tamanho) {
+        Queue<long[]> fila = auxiliares.get(tamanho);
+        long[] auxiliar = fila != null ? fila.poll() : null;
+        if (auxiliar != null) {
+            retidos.addAndGet(-(long) tamanho * Long.BYTES);
+            reaproveitados.incrementAndGet();
+            return auxiliar;
+        }
+        alocados.incrementAndGet();
+        return new long[tamanho];
+    }
+
+    void devolver(long[] auxiliar) {
+        if (reter((long) auxiliar.length * Long.BYTES)) {
+            auxiliares.computeIfAbsent(auxiliar.length, tamanho -> new ConcurrentLinkedQueue<>()).add(auxiliar);
+        }
+    }
+
+    private boolean reter(long bytes) {
+        if (retidos.addAndGet(bytes) <= limiteRetido) return true;
+        retidos.addAndGet(-bytes);
+        return false;
+    }
+
+    // menor classe que comporta o tamanho, ou -1 se passar da maior
+    private static int classe(int tamanho) {
+        if (tamanho > TAMANHO_MAXIMO) return -1;
+        int classe = 32 - Integer.numberOfLeadingZeros(Math.max(tamanho, 1) - 1);
+        return Math.max(CLASSE_MINIMA, classe);
+    }
+
+    /** pedidos que precisaram de uma alocação nova */
+    long alocados() {
+        return alocados.get();
+    }
+
+    /** pedidos atendidos por um buffer devolvido */
+    long reaproveitados() {
+        return reaproveitados.get();
+    }
+
+    /**
+     * Descarta os buffers livres (ficam para o GC); a arena pode continuar sendo usada
+     */
+    void liberar() {
+        for (int classe = CLASSE_MINIMA; classe <= CLASSE_MAXIMA; classe++) {
+            livres[classe].clear();
+        }
+        auxiliares.clear();
+        retidos.set(0);
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Merge de k fontes ordenadas com uma árvore de perdedores (tournament tree).
+ *
+ * Cada nó interno guarda o perdedor da disputa entre as duas subárvores e a raiz (posição 0)
+ * guarda o vencedor geral. Para retirar um elemento basta refazer as disputas no caminho da
+ * folha vencedora até a raiz: log2(k) comparações por elemento, contra ~2*log2(k) do
+ * poll() + add() de uma PriorityQueue, e nenhuma alocação por elemento.
+ *
+ * As chaves atuais de cada fonte ficam copiadas em um long[], então as comparações
+ * não passam por Comparator nem por chamadas virtuais.
+ *
+ * Para a agregação (ConfiguracaoOrdenacao.Agregacao), removerAgrupado() retira um valor
+ * de todas as fontes de uma vez, somando as contagens de cada uma.
+ *
+ * Quando o long é só o prefixo da chave (OrdenacaoRegistros), um Desempate decide entre
+ * duas fontes com o mesmo prefixo; sem ele, chaves iguais empatam.
+ */
+class ArvorePerdedores implements Closeable {
+
+    /**
+     * Ordem entre duas fontes cujos valores atuais são iguais
+     */
+    interface Desempate {
+        /** true se a fonte a deve sair antes da fonte b */
+        boolean antes(int a, int b);
+    }
+
+    private final FonteRunOrdenada[] fontes;
+    private final int k;
+    private final int[] arvore;       // arvore[0] = vencedor, arvore[1..k-1] = perdedores
+    private final long[] chaves;      // valor atual de cada fonte
+    private final boolean[] esgotada; // fonte sem mais valores (vale como +infinito)
+    private final Desempate desempate; // null: valores iguais empatam
+    private int fontesAtivas;
+    private long contagemRemovida;    // ocorrências do último valor retirado por removerAgrupado
+
+    public ArvorePerdedores(List<? extends FonteRunOrdenada> fontes) {
+        this(fontes, null);
+    }
+
+    /**
+     * @param desempate ordem das fontes com o mesmo valor atual (os índices são os da lista)
+     */
+    ArvorePerdedores(List<? extends FonteRunOrdenada> fontes, Desempate desempate) {
+        this.desempate = desempate;
+        this.k = Math.max(1, fontes.size());
+        this.fontes = fontes.toArray(new FonteRunOrdenada[0]);
+        this.arvore = new int[k];
+        this.chaves = new long[k];
+        this.esgotada = new boolean[k];
+
+        for (int i = 0; i < k; i++) {
+            if (i >= this.fontes.length || this.fontes[i].vazio()) {
+                esgotada[i] = true;
+            } else {
+                chaves[i] = this.fontes[i].lerProxima();
+                fontesAtivas++;
+            }
+        }
+        construir();
+    }
+
+    /**
+     * Monta a árvore de baixo para cima: a folha i fica na posição k + i
+     * e os filhos do nó n são 2n e 2n + 1
+     */
+    private void construir() {
+        int[] vencedores = new int[2 * k];
+        for (int i = 0; i < k; i++) {
+            vencedores[k + i] = i;
+        }
+        for (int n = k - 1; n >= 1; n--) {
+            int a = vencedores[2 * n];
+            int b = vencedores[2 * n + 1];
+            if (vence(a, b)) {
+                vencedores[n] = a;
+                arvore[n] = b;
+            } else {
+                vencedores[n] = b;
+                arvore[n] = a;
+            }
+        }
+        arvore[0] = k == 1 ? 0 : vencedores[1];
+    }
+
+    // true se a fonte a deve sair antes da fonte b
+    private boolean vence(int a, int b) {
+        if (esgotada[a]) return false;
+        if (esgotada[b]) return true;
+        if (desempate == null) return chaves[a] <= chaves[b];
+        return chaves[a] != chaves[b] ? chaves[a] < chaves[b] : desempate.antes(a, b);
+    }
+
+    /**
+     * Refaz as disputas no caminho da folha s até a raiz
+     */
+    private void ajustar(int s) {
+        for (int t = (s + k) >>> 1; t > 0; t >>>= 1) {
+            if (vence(arvore[t], s)) {
+                int perdedor = s;
+                s = arvore[t];
+                arvore[t] = perdedor;
+            }
+        }
+        arvore[0] = s;
+    }
+
+    public boolean vazia() {
+        return fontesAtivas == 0;
+    }
+
+    /**
+     * @return o menor valor entre todas as fontes, sem consumi-lo
+     */
+    public long lerProxima() {
+        return chaves[arvore[0]];
+    }
+
+    /**
+     * @return o índice (na lista recebida) da fonte que fornece o próximo valor
+     */
+    public int fonteDaProxima() {
+        return arvore[0];
+    }
+
+    /**
+     * @return o menor valor entre todas as fontes, avançando a fonte de onde ele veio
+     */
+    public long remover() throws IOException {
+        int vencedor = arvore[0];
+        long valor = chaves[vencedor];
+        FonteRunOrdenada fonte = fontes[vencedor];
+
+        fonte.remover();
+        if (fonte.vazio()) {
+            esgotada[vencedor] = true;
+            fontesAtivas--;
+            fonte.close(); // libera o descritor assim que a fonte termina
+        } else {
+            chaves[vencedor] = fonte.lerProxima();
+        }
+        ajustar(vencedor);
+        return valor;
+    }
+
+    /**
+     * Retira o menor valor junto com todas as repetições dele, em todas as fontes
+     *
+     * @return o valor; a soma das ocorrências fica em contagemRemovida()
+     */
+    public long removerAgrupado() throws IOException {
+        long valor = chaves[arvore[0]];
+        long contagem = 0;
+        do {
+            contagem += fontes[arvore[0]].contagem();
+            remover();
+        } while (fontesAtivas > 0 && chaves[arvore[0]] == valor);
+        contagemRemovida = contagem;
+        return valor;
+    }
+
+    /**
+     * @return ocorrências do último valor retirado por removerAgrupado()
+     */
+    public long contagemRemovida() {
+        return contagemRemovida;
+    }
+
+    public void close() throws IOException {
+        IOException erro = null;
+        for (FonteRunOrdenada fonte : fontes) {
+            try {
+                fonte.close();
+            } catch (IOException e) {
+                erro = e;
+            }
+        }
+        if (erro != null) throw erro;
+    }
+}
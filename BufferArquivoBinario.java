@@ -1,56 +1,274 @@
-import java.io.*;
-
-/**
- * Classe auxiliar que gerencia a leitura bufferizada de um arquivo ordenado
- * durante a fase de merge, mantendo sempre a próxima linha disponível em cache.
- */
-class BufferArquivoBinario {
-    public static int TAMANHO_BUFFER = 2048; // Tamanho do buffer de leitura
-    public BufferedReader leitor; // Stream de leitura do arquivo
-    public File arquivoOriginal;  // Referência ao arquivo físico
-    private String cache;         // Próxima linha a ser processada
-    private boolean vazio;        // indica se chegou ao final
-
-    public BufferArquivoBinario(File arquivo) throws IOException {
-        this.arquivoOriginal = arquivo;
-        this.leitor = new BufferedReader(new FileReader(arquivo), TAMANHO_BUFFER);
-        this.recarregar(); // Carrega a primeira linha
-    }
-
-    public boolean vazio() {
-        return vazio;
-    }
-
-    /**
-     * Carrega a próxima linha do arquivo para o cache
-     */
-    private void recarregar() throws IOException {
-        try {
-            this.cache = leitor.readLine();
-            this.vazio = (this.cache == null);
-        } catch(EOFException oef) {
-            this.vazio = true;
-            this.cache = null;
-        }
-    }
-
-    public void fechar() throws IOException {
-        leitor.close();
-    }
-
-    /**
-     * @return a próxima linha sem consumi-la (peek)
-     */
-    public String lerProxima() {
-        return vazio ? null : cache;
-    }
-
-    /**
-     * @return a próxima linha e já avança para a seguinte
-     */
-    public String remover() throws IOException {
-        String resposta = lerProxima();
-        recarregar(); // Pré-carrega a próxima linha
-        return resposta;
-    }
-}
\ No newline at end of file
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Classe auxiliar que gerencia a leitura bufferizada de um run binário (gravado por EscritorRun)
+ * durante a fase de merge, mantendo sempre o próximo valor disponível em cache.
+ * Os valores são decodificados uma única vez ao serem carregados, então as comparações
+ * do merge são feitas direto entre longs.
+ *
+ * No modo mapeado ({@link #abrirMapeado}) o buffer é a própria janela do arquivo mapeada
+ * em memória e os valores são decodificados direto dela. Nos outros modos o buffer de
+ * decodificação vem da ArenaBuffers e volta para ela em fechar().
+ *
+ * Runs gravados com CabecalhoRun.FLAG_CONTAGENS trazem a quantidade de ocorrências de cada
+ * valor, disponível em contagem(); nos outros cada valor conta uma vez.
+ *
+ * Com o índice do run (IndiceRun), {@link #abrirNoPonto} começa a leitura no meio do arquivo,
+ * sem decodificar os valores anteriores ao ponto.
+ */
+class BufferArquivoBinario implements FonteRunOrdenada {
+    static final int TAMANHO_JANELA_MAPEADA = 16 * 1024 * 1024; // Janela no modo mapeado
+    static final int TAMANHO_BUFFER_DECODIFICACAO = 8 * 1024; // Buffer de decodificação com leitura antecipada
+    public ReadableByteChannel canal; // Canal de leitura do arquivo
+    public File arquivoOriginal;  // Referência ao arquivo físico
+    private ByteBuffer buffer;    // Buffer de decodificação (ou janela mapeada atual)
+    private final boolean mapeado;
+    private final ArenaBuffers arena; // Origem do buffer de decodificação
+    private long posicaoJanela;   // Posição no arquivo do início da janela mapeada
+    private final CabecalhoRun cabecalho;
+    final long minimo;            // Menor valor do run, usado pelos codecs com deslocamento
+    long anterior;                // Último valor decodificado, usado pelos codecs com delta
+    private long restantes;       // Quantidade de valores ainda não carregados
+    private long[] blocoCodec;    // Diferenças do bloco atual (DELTA_BLOCOS)
+    int posicaoBloco;             // Próxima diferença do bloco atual
+    int tamanhoBloco;             // Diferenças válidas no bloco atual
+    private long cache;           // Próximo valor a ser processado
+    private long contagemCache = 1; // Ocorrências do próximo valor
+    private boolean vazio;        // indica se chegou ao final
+
+    /**
+     * @param tamanhoBuffer tamanho do buffer de leitura, definido pelo PlanejadorMerge
+     * @param arena de onde vem (e para onde volta ao fechar) o buffer de leitura
+     */
+    BufferArquivoBinario(File arquivo, int tamanhoBuffer, ArenaBuffers arena) throws IOException {
+        this(arquivo, FileChannel.open(arquivo.toPath(), StandardOpenOption.READ), tamanhoBuffer, false,
+                arena, null, -1);
+    }
+
+    /**
+     * @param indice índice do run, com o cabeçalho já lido (null lê o cabeçalho do canal)
+     * @param ponto ponto do índice em que o canal está posicionado (no modo mapeado, a posição
+     *              é tirada do próprio ponto)
+     */
+    private BufferArquivoBinario(File arquivo, ReadableByteChannel canal, int tamanhoBuffer, boolean mapeado,
+                                 ArenaBuffers arena, IndiceRun indice, int ponto) throws IOException {
+        this.arquivoOriginal = arquivo;
+        this.canal = canal;
+        this.mapeado = mapeado;
+        this.arena = arena;
+        this.buffer = mapeado ? ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN)
+                : arena.obter(Math.max(tamanhoBuffer, CabecalhoRun.TAMANHO));
+        this.buffer.flip();
+
+        try {
+            if (indice == null) {
+                garantirBytes(CabecalhoRun.TAMANHO);
+                this.cabecalho = CabecalhoRun.ler(buffer);
+                this.anterior = cabecalho.minimo;
+                this.restantes = cabecalho.quantidade;
+            } else {
+                this.cabecalho = indice.cabecalho;
+                this.posicaoJanela = indice.posicoes[ponto]; // só usada no modo mapeado
+                this.anterior = indice.anteriores[ponto];
+                this.restantes = cabecalho.quantidade - indice.indices[ponto];
+            }
+            this.minimo = cabecalho.minimo;
+            this.recarregar(); // Carrega o primeiro valor
+        } catch (IOException e) {
+            fechar();
+            throw e;
+        }
+    }
+
+    /**
+     * Abre o run com leitura antecipada: a memória do buffer é dividida entre os dois buffers
+     * do CanalLeituraAntecipada, que são preenchidos em segundo plano, e a decodificação
+     * usa apenas um buffer pequeno.
+     *
+     * @param tamanhoBuffer memória total reservada para a leitura deste run
+     * @param arena de onde vêm os buffers de leitura e de decodificação
+     */
+    static BufferArquivoBinario abrirComLeituraAntecipada(File arquivo, int tamanhoBuffer,
+                                                          ArenaBuffers arena) throws IOException {
+        int tamanhoMetade = Math.max(TAMANHO_BUFFER_DECODIFICACAO, tamanhoBuffer / 2);
+        return new BufferArquivoBinario(arquivo, new CanalLeituraAntecipada(arquivo, tamanhoMetade, 0, arena),
+                TAMANHO_BUFFER_DECODIFICACAO, false, arena, null, -1);
+    }
+
+    /**
+     * Abre o run no modo mapeado em memória
+     */
+    public static BufferArquivoBinario abrirMapeado(File arquivo) throws IOException {
+        return new BufferArquivoBinario(arquivo, FileChannel.open(arquivo.toPath(), StandardOpenOption.READ),
+                0, true, ArenaBuffers.DESCARTAVEL, null, -1);
+    }
+
+    /**
+     * Abre o run a partir de um ponto do índice: o primeiro valor lido é a chave do ponto
+     *
+     * @param tamanhoBuffer memória reservada para a leitura deste run (ignorada no modo mapeado)
+     * @param arena de onde vêm os buffers de leitura e de decodificação
+     */
+    static BufferArquivoBinario abrirNoPonto(File arquivo, IndiceRun indice, int ponto, int tamanhoBuffer,
+                                             boolean leituraAntecipada, boolean mapeado,
+                                             ArenaBuffers arena) throws IOException {
+        long posicao = indice.posicoes[ponto];
+        if (leituraAntecipada && !mapeado) {
+            int tamanhoMetade = Math.max(TAMANHO_BUFFER_DECODIFICACAO, tamanhoBuffer / 2);
+            return new BufferArquivoBinario(arquivo, new CanalLeituraAntecipada(arquivo, tamanhoMetade, posicao, arena),
+                    TAMANHO_BUFFER_DECODIFICACAO, false, arena, indice, ponto);
+        }
+        FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ);
+        try {
+            if (!mapeado) canal.position(posicao);
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+        return new BufferArquivoBinario(arquivo, canal, tamanhoBuffer, mapeado, arena, indice, ponto);
+    }
+
+    public boolean vazio() {
+        return vazio;
+    }
+
+    /**
+     * Quantidade total de valores do run, segundo o cabeçalho
+     */
+    public long quantidade() {
+        return cabecalho.quantidade;
+    }
+
+    public long minimo() {
+        return cabecalho.minimo;
+    }
+
+    public long maximo() {
+        return cabecalho.maximo;
+    }
+
+    /**
+     * Decodifica o próximo valor do arquivo para o cache
+     */
+    private void recarregar() throws IOException {
+        if (restantes == 0) {
+            this.vazio = true;
+            return;
+        }
+        this.cache = cabecalho.codec.ler(this);
+        if ((cabecalho.flags & CabecalhoRun.FLAG_CONTAGENS) != 0) {
+            this.contagemCache = lerVarLong();
+        }
+        this.anterior = cache;
+        this.restantes--;
+    }
+
+    /**
+     * Garante que o buffer tem ao menos a quantidade de bytes pedida, lendo mais do canal se preciso
+     */
+    private void garantirBytes(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return;
+        if (mapeado) {
+            mapearJanela(bytes);
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (canal.read(buffer) < 0) {
+                buffer.flip();
+                throw new EOFException("run truncado: " + arquivoOriginal);
+            }
+        }
+        buffer.flip();
+    }
+
+    // mapeia a janela seguinte a partir do primeiro byte ainda não consumido
+    private void mapearJanela(int bytes) throws IOException {
+        FileChannel arquivo = (FileChannel) canal;
+        long inicio = posicaoJanela + buffer.position();
+        long tamanho = Math.min(TAMANHO_JANELA_MAPEADA, arquivo.size() - inicio);
+        if (tamanho < bytes) {
+            throw new EOFException("run truncado: " + arquivoOriginal);
+        }
+        buffer = arquivo.map(FileChannel.MapMode.READ_ONLY, inicio, tamanho).order(ByteOrder.LITTLE_ENDIAN);
+        posicaoJanela = inicio;
+    }
+
+    long[] blocoCodec() {
+        if (blocoCodec == null) blocoCodec = new long[CodecRun.VALORES_POR_BLOCO];
+        return blocoCodec;
+    }
+
+    // valores ainda não carregados, incluindo o que está sendo decodificado
+    long restantes() {
+        return restantes;
+    }
+
+    int lerByte() throws IOException {
+        garantirBytes(1);
+        return buffer.get() & 0xFF;
+    }
+
+    int lerInt() throws IOException {
+        garantirBytes(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    long lerLong() throws IOException {
+        garantirBytes(Long.BYTES);
+        return buffer.getLong();
+    }
+
+    /**
+     * Lê um varint (sem sinal) gravado por EscritorRun.escreverVarLong
+     */
+    long lerVarLong() throws IOException {
+        long valor = 0;
+        for (int deslocamento = 0; deslocamento < 64; deslocamento += 7) {
+            garantirBytes(1);
+            byte b = buffer.get();
+            valor |= (long) (b & 0x7F) << deslocamento;
+            if (b >= 0) return valor;
+        }
+        throw new IOException("varint malformado em " + arquivoOriginal);
+    }
+
+    public void fechar() throws IOException {
+        if (!canal.isOpen()) return; // já fechado: o buffer já voltou para a arena
+        try {
+            canal.close();
+        } finally {
+            if (!mapeado) arena.devolver(buffer);
+        }
+    }
+
+    public void close() throws IOException {
+        fechar();
+    }
+
+    /**
+     * @return o próximo valor sem consumi-lo (peek)
+     */
+    public long lerProxima() {
+        return cache;
+    }
+
+    @Override
+    public long contagem() {
+        return contagemCache;
+    }
+
+    /**
+     * @return o próximo valor e já avança para o seguinte
+     */
+    public long remover() throws IOException {
+        long resposta = lerProxima();
+        recarregar(); // Pré-carrega o próximo valor
+        return resposta;
+    }
+}
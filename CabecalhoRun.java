@@ -0,0 +1,79 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Cabeçalho de tamanho fixo no início de cada arquivo de run (little-endian):
+ *
+ *   int  marcador   "ESR1"
+ *   byte versao
+ *   byte codec      id do {@link CodecRun}
+ *   byte flags      combinação de FLAG_CONTAGENS e FLAG_INDICE
+ *   byte reservado
+ *   long quantidade de elementos
+ *   long minimo
+ *   long maximo
+ *
+ * Com FLAG_CONTAGENS (runs da Agregacao.CONTAGEM) cada valor do run é distinto e vem seguido
+ * da quantidade de ocorrências em varint; a quantidade do cabeçalho conta os pares.
+ * Com FLAG_INDICE o run termina com o índice esparso descrito em IndiceRun.
+ */
+class CabecalhoRun {
+    static final int TAMANHO = 32;
+    static final int MARCADOR = 0x31525345; // "ESR1" lido em little-endian
+    static final byte VERSAO = 1;
+    static final int FLAG_CONTAGENS = 1; // cada valor seguido da quantidade de ocorrências
+    static final int FLAG_INDICE = 2;    // índice esparso depois do último valor
+
+    CodecRun codec;
+    int flags;
+    long quantidade;
+    long minimo;
+    long maximo;
+
+    CabecalhoRun(CodecRun codec, long quantidade, long minimo, long maximo) {
+        this.codec = codec;
+        this.quantidade = quantidade;
+        this.minimo = minimo;
+        this.maximo = maximo;
+    }
+
+    ByteBuffer serializar() {
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANHO).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MARCADOR);
+        buffer.put(VERSAO);
+        buffer.put((byte) codec.id);
+        buffer.put((byte) flags);
+        buffer.put((byte) 0);
+        buffer.putLong(quantidade);
+        buffer.putLong(minimo);
+        buffer.putLong(maximo);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Lê o cabeçalho a partir da posição atual do buffer (que precisa ter TAMANHO bytes disponíveis)
+     */
+    static CabecalhoRun ler(ByteBuffer buffer) throws IOException {
+        ByteOrder ordemOriginal = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MARCADOR) {
+                throw new IOException("arquivo não é um run válido.");
+            }
+            byte versao = buffer.get();
+            if (versao != VERSAO) {
+                throw new IOException("versão de run não suportada: " + versao);
+            }
+            CodecRun codec = CodecRun.porId(buffer.get());
+            int flags = buffer.get();
+            buffer.get();
+            CabecalhoRun cabecalho = new CabecalhoRun(codec, buffer.getLong(), buffer.getLong(), buffer.getLong());
+            cabecalho.flags = flags;
+            return cabecalho;
+        } finally {
+            buffer.order(ordemOriginal);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Canal de leitura sequencial com buffer duplo: enquanto um buffer é consumido,
+ * o outro já está sendo preenchido em segundo plano por um AsynchronousFileChannel.
+ *
+ * Usado por baixo do BufferArquivoBinario no merge, para que a thread do merge só
+ * espere o disco quando a leitura antecipada ainda não terminou, e não a cada vez que
+ * um dos k runs esvazia o seu buffer. Os dois buffers vêm da ArenaBuffers e voltam para
+ * ela no close, depois que a leitura pendente termina.
+ */
+class CanalLeituraAntecipada implements ReadableByteChannel {
+    private final AsynchronousFileChannel canal;
+    private final ArenaBuffers arena;
+    private ByteBuffer atual;                // buffer sendo consumido (já invertido para leitura)
+    private ByteBuffer proximo;              // buffer sendo preenchido em segundo plano
+    private Future<Integer> leituraPendente; // leitura em andamento no buffer "proximo"
+    private long posicao;                    // posição no arquivo da próxima leitura a agendar
+    private boolean fim;
+    private boolean aberto = true;
+
+    /**
+     * @param arquivo arquivo a ser lido
+     * @param tamanhoBuffer tamanho de cada um dos dois buffers
+     * @param posicaoInicial posição no arquivo a partir da qual a leitura começa
+     * @param arena de onde vêm (e para onde voltam no close) os dois buffers
+     */
+    CanalLeituraAntecipada(File arquivo, int tamanhoBuffer, long posicaoInicial, ArenaBuffers arena) throws IOException {
+        this.canal = AsynchronousFileChannel.open(arquivo.toPath(), StandardOpenOption.READ);
+        this.arena = arena;
+        this.posicao = posicaoInicial;
+        this.atual = arena.obter(tamanhoBuffer);
+        this.atual.flip();
+        this.proximo = arena.obter(tamanhoBuffer);
+        agendarLeitura();
+    }
+
+    private void agendarLeitura() {
+        proximo.clear();
+        leituraPendente = canal.read(proximo, posicao);
+    }
+
+    /**
+     * Espera a leitura antecipada terminar, passa a consumir o buffer que ela preencheu
+     * e já agenda a leitura seguinte no buffer que acabou de ser esvaziado
+     */
+    private boolean trocarBuffers() throws IOException {
+        if (fim) return false;
+
+        int lidos;
+        try {
+            lidos = leituraPendente.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("leitura antecipada interrompida.");
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            throw causa instanceof IOException ? (IOException) causa : new IOException(causa);
+        }
+
+        if (lidos < 0) {
+            fim = true;
+            return false;
+        }
+        posicao += lidos;
+        proximo.flip();
+
+        ByteBuffer consumido = atual;
+        atual = proximo;
+        proximo = consumido;
+        agendarLeitura();
+        return true;
+    }
+
+    public int read(ByteBuffer destino) throws IOException {
+        if (!aberto) throw new ClosedChannelException();
+        while (!atual.hasRemaining()) {
+            if (!trocarBuffers()) return -1;
+        }
+
+        int quantidade = Math.min(destino.remaining(), atual.remaining());
+        ByteBuffer fatia = atual.slice();
+        fatia.limit(quantidade);
+        destino.put(fatia);
+        atual.position(atual.position() + quantidade);
+        return quantidade;
+    }
+
+    public boolean isOpen() {
+        return aberto;
+    }
+
+    public void close() throws IOException {
+        if (!aberto) return;
+        aberto = false;
+        canal.close(); // uma leitura pendente termina com AsynchronousCloseException
+        // o buffer só pode voltar para a arena quando ninguém mais escreve nele
+        try {
+            leituraPendente.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return; // a leitura pode não ter terminado: os buffers ficam para o GC
+        } catch (ExecutionException | CancellationException e) {
+            // leitura interrompida pelo fechamento do canal
+        }
+        arena.devolver(atual);
+        arena.devolver(proximo);
+    }
+}
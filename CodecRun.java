@@ -0,0 +1,180 @@
+import java.io.*;
+
+/**
+ * Codificações possíveis para os valores gravados em um arquivo de run.
+ *
+ * Como o run já está ordenado, cada codec pode contar com o cabeçalho (mínimo e máximo)
+ * e com o valor anterior para gravar menos bytes por elemento:
+ *  - FIXO_32: deslocamento em relação ao mínimo, em 4 bytes little-endian (intervalo até 2^32)
+ *  - FIXO_64: o próprio valor, em 8 bytes little-endian
+ *  - DELTA_VARINT: diferença para o valor anterior em varint (1 byte para diferenças < 128)
+ *  - DELTA_BLOCOS: diferenças para o valor anterior em blocos de VALORES_POR_BLOCO, cada bloco
+ *    com um byte de cabeçalho (a largura em bits da maior diferença) seguido das diferenças
+ *    empacotadas nessa largura; dados com poucos valores distintos ficam com 1 bit por elemento
+ *    e a decodificação é feita um bloco inteiro por vez, sem um desvio por byte como no varint
+ *
+ * Para adicionar uma nova codificação basta criar uma nova constante com um id ainda não usado.
+ */
+enum CodecRun {
+    FIXO_32(0) {
+        void escrever(EscritorRun saida, long valor) throws IOException {
+            saida.escreverInt((int) (valor - saida.minimo));
+        }
+
+        long ler(BufferArquivoBinario entrada) throws IOException {
+            return entrada.minimo + Integer.toUnsignedLong(entrada.lerInt());
+        }
+    },
+    FIXO_64(1) {
+        void escrever(EscritorRun saida, long valor) throws IOException {
+            saida.escreverLong(valor);
+        }
+
+        long ler(BufferArquivoBinario entrada) throws IOException {
+            return entrada.lerLong();
+        }
+    },
+    DELTA_VARINT(2) {
+        void escrever(EscritorRun saida, long valor) throws IOException {
+            saida.escreverVarLong(valor - saida.anterior);
+        }
+
+        long ler(BufferArquivoBinario entrada) throws IOException {
+            return entrada.anterior + entrada.lerVarLong();
+        }
+    },
+    DELTA_BLOCOS(3) {
+        void escrever(EscritorRun saida, long valor) throws IOException {
+            long[] bloco = saida.blocoCodec();
+            bloco[saida.posicaoBloco++] = valor - saida.anterior;
+            if (saida.posicaoBloco == VALORES_POR_BLOCO) {
+                empacotar(saida, bloco, VALORES_POR_BLOCO);
+                saida.posicaoBloco = 0;
+            }
+        }
+
+        @Override
+        void concluir(EscritorRun saida) throws IOException {
+            if (saida.posicaoBloco > 0) {
+                empacotar(saida, saida.blocoCodec(), saida.posicaoBloco);
+                saida.posicaoBloco = 0;
+            }
+        }
+
+        long ler(BufferArquivoBinario entrada) throws IOException {
+            long[] bloco = entrada.blocoCodec();
+            if (entrada.posicaoBloco == entrada.tamanhoBloco) {
+                // o último bloco do run é parcial: o tamanho sai do que falta ler
+                entrada.tamanhoBloco = (int) Math.min(VALORES_POR_BLOCO, entrada.restantes());
+                desempacotar(entrada, bloco, entrada.tamanhoBloco);
+                entrada.posicaoBloco = 0;
+            }
+            return entrada.anterior + bloco[entrada.posicaoBloco++];
+        }
+    };
+
+    static final int VALORES_POR_BLOCO = 128; // valores por bloco do DELTA_BLOCOS
+
+    final int id; // identificador gravado no cabeçalho do run
+
+    CodecRun(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Grava um valor; os valores precisam chegar em ordem crescente
+     */
+    abstract void escrever(EscritorRun saida, long valor) throws IOException;
+
+    /**
+     * Grava o que o codec ainda guarda (chamado pelo EscritorRun no fechamento)
+     */
+    void concluir(EscritorRun saida) throws IOException {
+    }
+
+    /**
+     * Lê o próximo valor gravado por {@link #escrever}
+     */
+    abstract long ler(BufferArquivoBinario entrada) throws IOException;
+
+    static CodecRun porId(int id) throws IOException {
+        for (CodecRun codec : values()) {
+            if (codec.id == id) return codec;
+        }
+        throw new IOException("codec de run desconhecido: " + id);
+    }
+
+    /**
+     * Codec sem compressão para os limites: deslocamento em 4 bytes se o intervalo couber, senão 8
+     */
+    static CodecRun fixo(long minimo, long maximo) {
+        return Long.compareUnsigned(maximo - minimo, 0xFFFFFFFFL) <= 0 ? FIXO_32 : FIXO_64;
+    }
+
+    /**
+     * Grava um bloco: a largura em bits da maior diferença e as diferenças empacotadas nela,
+     * do bit menos significativo para o mais significativo, em palavras de 8 bytes
+     * (a última palavra só com os bytes usados)
+     */
+    private static void empacotar(EscritorRun saida, long[] bloco, int quantidade) throws IOException {
+        long todos = 0;
+        for (int i = 0; i < quantidade; i++) {
+            todos |= bloco[i];
+        }
+        int largura = 64 - Long.numberOfLeadingZeros(todos);
+        saida.escreverByte(largura);
+
+        long palavra = 0;
+        int ocupados = 0; // bits já usados da palavra
+        for (int i = 0; i < quantidade; i++) {
+            long valor = bloco[i];
+            palavra |= valor << ocupados;
+            int livres = 64 - ocupados;
+            if (largura >= livres) {
+                saida.escreverLong(palavra);
+                palavra = livres == 64 ? 0 : valor >>> livres;
+                ocupados = largura - livres;
+            } else {
+                ocupados += largura;
+            }
+        }
+        for (int b = 0; b < ocupados; b += 8) {
+            saida.escreverByte((int) (palavra >>> b));
+        }
+    }
+
+    // lê um bloco gravado por empacotar com a quantidade de valores informada
+    private static void desempacotar(BufferArquivoBinario entrada, long[] bloco, int quantidade) throws IOException {
+        int largura = entrada.lerByte();
+        if (largura > 64) {
+            throw new IOException("bloco de run malformado em " + entrada.arquivoOriginal);
+        }
+        long mascara = largura == 64 ? -1L : (1L << largura) - 1;
+        int bytesRestantes = (int) (((long) quantidade * largura + 7) / 8);
+
+        long palavra = 0;
+        int disponiveis = 0; // bits ainda não lidos da palavra
+        for (int i = 0; i < quantidade; i++) {
+            if (disponiveis >= largura) {
+                bloco[i] = palavra & mascara;
+                palavra = largura == 64 ? 0 : palavra >>> largura;
+                disponiveis -= largura;
+            } else {
+                long nova;
+                if (bytesRestantes >= Long.BYTES) {
+                    nova = entrada.lerLong();
+                    bytesRestantes -= Long.BYTES;
+                } else {
+                    nova = 0;
+                    for (int b = 0; bytesRestantes > 0; b += 8, bytesRestantes--) {
+                        nova |= (long) entrada.lerByte() << b;
+                    }
+                }
+                bloco[i] = (palavra | nova << disponiveis) & mascara;
+                int usados = largura - disponiveis;
+                palavra = usados == 64 ? 0 : nova >>> usados;
+                disponiveis = 64 - usados;
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.File;
+
+/**
+ * Configuração imutável de um ExternalSorter, montada pelo {@link ExternalSorter.Builder}.
+ *
+ * Por ser imutável, a mesma configuração (e o mesmo ExternalSorter) pode ser usada por várias
+ * ordenações ao mesmo tempo: o estado de cada ordenação fica em uma ExecucaoOrdenacao própria.
+ */
+public final class ConfiguracaoOrdenacao {
+
+    /** algoritmo que ordena cada bloco em memória */
+    public enum AlgoritmoBloco {
+        QUICKSORT, // QuickSortThreeWay
+        RADIX      // OrdenacaoRadix (usa um auxiliar do tamanho do bloco)
+    }
+
+    /** como os runs iniciais são formados */
+    public enum FormacaoRuns {
+        BLOCOS,               // blocos de tamanho fixo
+        SELECAO_SUBSTITUICAO  // SelecaoSubstituicao
+    }
+
+    /** codificação dos runs temporários (ver CodecRun) */
+    public enum CompressaoRuns {
+        NENHUMA,   // largura fixa (FIXO_32 ou FIXO_64)
+        BLOCOS,    // DELTA_BLOCOS em todos os runs
+        ADAPTATIVA // DELTA_BLOCOS, desligado se o primeiro run não encolher o suficiente
+    }
+
+    /** o que a saída guarda de cada valor repetido */
+    public enum Agregacao {
+        NENHUMA,   // todas as ocorrências
+        DISTINTOS, // uma ocorrência de cada valor (sort -u)
+        CONTAGEM   // uma linha por valor, com a quantidade de ocorrências
+    }
+
+    private final long memoriaMaxima;
+    private final long memoriaMerge;
+    private final File diretorioTemporario;
+    private final File diretorioTrabalho;
+    private final int fanIn;
+    private final int threadsOrdenacao;
+    private final int threadsMerge;
+    private final boolean leituraAntecipada;
+    private final boolean mapearArquivos;
+    private final AlgoritmoBloco algoritmoBloco;
+    private final FormacaoRuns formacaoRuns;
+    private final int limiteContagem;
+    private final TipoChave tipoChave;
+    private final FormatoArquivo formatoEntrada;
+    private final FormatoArquivo formatoSaida;
+    private final boolean quebraLinhaFinal;
+    private final Agregacao agregacao;
+    private final CompressaoRuns compressaoRuns;
+    private final OuvinteOrdenacao ouvinte;
+    private final boolean registrarJmx;
+
+    ConfiguracaoOrdenacao(ExternalSorter.Builder builder) {
+        this.memoriaMaxima = builder.memoriaMaxima;
+        this.memoriaMerge = builder.memoriaMerge;
+        this.diretorioTemporario = builder.diretorioTemporario;
+        this.diretorioTrabalho = builder.diretorioTrabalho;
+        this.fanIn = builder.fanIn;
+        this.threadsOrdenacao = builder.threadsOrdenacao;
+        this.threadsMerge = builder.threadsMerge;
+        this.leituraAntecipada = builder.leituraAntecipada;
+        this.mapearArquivos = builder.mapearArquivos;
+        this.algoritmoBloco = builder.algoritmoBloco;
+        this.formacaoRuns = builder.formacaoRuns;
+        this.limiteContagem = builder.limiteContagem;
+        this.tipoChave = builder.tipoChave;
+        this.formatoEntrada = builder.formatoEntrada;
+        this.formatoSaida = builder.formatoSaida;
+        this.quebraLinhaFinal = builder.quebraLinhaFinal;
+        this.agregacao = builder.agregacao;
+        this.compressaoRuns = builder.compressaoRuns;
+        this.ouvinte = builder.ouvinte;
+        this.registrarJmx = builder.registrarJmx;
+    }
+
+    /** orçamento de memória para blocos e buffers, em bytes (0 = 40% do heap máximo, ver OrcamentoMemoria) */
+    public long memoriaMaxima() {
+        return memoriaMaxima;
+    }
+
+    /** memória dos buffers de leitura do merge, em bytes (0 = a mesma parcela dos blocos) */
+    public long memoriaMerge() {
+        return memoriaMerge;
+    }
+
+    /** diretório dos runs temporários (null = diretório temporário do sistema) */
+    public File diretorioTemporario() {
+        return diretorioTemporario;
+    }
+
+    /** diretório durável dos runs e do manifesto, para retomar ordenações interrompidas (null = desligado) */
+    public File diretorioTrabalho() {
+        return diretorioTrabalho;
+    }
+
+    public int fanIn() {
+        return fanIn;
+    }
+
+    public int threadsOrdenacao() {
+        return threadsOrdenacao;
+    }
+
+    public int threadsMerge() {
+        return threadsMerge;
+    }
+
+    public boolean leituraAntecipada() {
+        return leituraAntecipada;
+    }
+
+    public boolean mapearArquivos() {
+        return mapearArquivos;
+    }
+
+    public AlgoritmoBloco algoritmoBloco() {
+        return algoritmoBloco;
+    }
+
+    public FormacaoRuns formacaoRuns() {
+        return formacaoRuns;
+    }
+
+    /** tamanho máximo do intervalo de valores ordenado por contagem (0 = desligado) */
+    public int limiteContagem() {
+        return limiteContagem;
+    }
+
+    public TipoChave tipoChave() {
+        return tipoChave;
+    }
+
+    public FormatoArquivo formatoEntrada() {
+        return formatoEntrada;
+    }
+
+    public FormatoArquivo formatoSaida() {
+        return formatoSaida;
+    }
+
+    /** se a saída TEXTO termina com System.lineSeparator() (ver EscritorSaida) */
+    public boolean quebraLinhaFinal() {
+        return quebraLinhaFinal;
+    }
+
+    /** repetições combinadas nos runs e na saída (ver EscritorRun e EscritorSaida.escreverContagem) */
+    public Agregacao agregacao() {
+        return agregacao;
+    }
+
+    public CompressaoRuns compressaoRuns() {
+        return compressaoRuns;
+    }
+
+    /** quem acompanha o progresso de cada ordenação (null = ninguém) */
+    public OuvinteOrdenacao ouvinte() {
+        return ouvinte;
+    }
+
+    /** se as métricas de cada ordenação são registradas no servidor JMX da plataforma */
+    public boolean registrarJmx() {
+        return registrarJmx;
+    }
+}
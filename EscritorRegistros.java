@@ -0,0 +1,74 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Grava os registros ordenados no arquivo de saída, no enquadramento do FormatoRegistro da
+ * entrada: nas linhas, cada registro seguido do final de linha da entrada ("\n" ou "\r\n",
+ * ver LeitorRegistros.terminador); no PREFIXADO, o tamanho em 4 bytes little-endian seguido
+ * do registro.
+ */
+class EscritorRegistros implements Closeable {
+    private final FileChannel canal;
+    private final ByteBuffer buffer;
+    private final boolean emLinhas;
+    private final byte[] terminador;
+    private long quantidade;
+
+    /**
+     * @param terminador final de cada linha (ignorado no PREFIXADO)
+     */
+    EscritorRegistros(File arquivo, FormatoRegistro formato, byte[] terminador) throws IOException {
+        this.canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocate(EscritorSaida.TAMANHO_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        this.emLinhas = formato.emLinhas();
+        this.terminador = terminador;
+    }
+
+    void escrever(byte[] registro, int inicio, int tamanho) throws IOException {
+        if (!emLinhas) {
+            if (buffer.remaining() < Integer.BYTES) descarregar();
+            buffer.putInt(tamanho);
+        }
+        if (buffer.remaining() < tamanho) {
+            descarregar();
+        }
+        if (tamanho > buffer.capacity()) {
+            // maior que o buffer: vai direto para o canal
+            ByteBuffer direto = ByteBuffer.wrap(registro, inicio, tamanho);
+            while (direto.hasRemaining()) {
+                canal.write(direto);
+            }
+        } else {
+            buffer.put(registro, inicio, tamanho);
+        }
+        if (emLinhas) {
+            if (buffer.remaining() < terminador.length) descarregar();
+            buffer.put(terminador);
+        }
+        quantidade++;
+    }
+
+    private void descarregar() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    long quantidade() {
+        return quantidade;
+    }
+
+    public void close() throws IOException {
+        try {
+            descarregar();
+        } finally {
+            canal.close();
+        }
+    }
+}
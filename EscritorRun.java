@@ -0,0 +1,266 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Grava um run ordenado no formato binário lido por {@link BufferArquivoBinario}.
+ *
+ * O cabeçalho é reservado no início do arquivo e reescrito no fechamento com a quantidade
+ * real de elementos, então o escritor também serve para runs intermediários do merge,
+ * em que só os limites (mínimo e máximo) são conhecidos de antemão. O máximo gravado é
+ * sempre o último valor escrito, então um limite superior folgado também é aceito.
+ *
+ * No modo mapeado os valores são gravados direto em janelas do arquivo mapeadas com
+ * FileChannel.map, sem buffer intermediário; no fechamento o arquivo é truncado no
+ * tamanho realmente usado. Fora dele o buffer de escrita vem da ArenaBuffers e volta
+ * para ela no fechamento.
+ *
+ * Com uma Agregacao diferente de NENHUMA, valores iguais seguidos são combinados antes de
+ * chegar ao codec: DISTINTOS grava cada valor uma vez e CONTAGEM grava cada valor com a soma
+ * das ocorrências (CabecalhoRun.FLAG_CONTAGENS). Quem escreve não precisa agrupar nada.
+ *
+ * Todo run termina com um índice esparso (ver IndiceRun): a cada IndiceRun.INTERVALO valores
+ * o escritor anota onde o valor começa, e no fechamento grava os pontos depois dos dados.
+ */
+class EscritorRun implements Closeable {
+    public static final int TAMANHO_BUFFER = 64 * 1024;                // Tamanho do buffer de escrita
+    public static final int TAMANHO_JANELA_MAPEADA = 16 * 1024 * 1024; // Janela no modo mapeado
+
+    private final FileChannel canal;
+    private ByteBuffer buffer;           // buffer de escrita ou janela mapeada atual
+    private final boolean mapeado;
+    private final ArenaBuffers arena;    // origem do buffer de escrita
+    private long posicaoJanela;          // posição no arquivo do início da janela mapeada
+    private final CabecalhoRun cabecalho;
+    private final ConfiguracaoOrdenacao.Agregacao agregacao;
+    private boolean pendente;            // há um valor esperando a próxima repetição (com agregação)
+    private long valorPendente;
+    private long contagemPendente;
+    final long minimo;   // usado pelos codecs com deslocamento
+    long anterior;       // último valor gravado, usado pelos codecs com delta
+    private long[] blocoCodec;           // diferenças do bloco atual (DELTA_BLOCOS)
+    int posicaoBloco;                    // diferenças já guardadas no bloco atual
+    private long quantidade;             // valores (ou pares) gravados
+    private long elementos;              // ocorrências recebidas, somando as contagens
+    private long bytesDescarregados = CabecalhoRun.TAMANHO; // posição no arquivo do início do buffer de escrita
+    private long[] pontos = new long[4 * 16]; // pontos do índice: chave, posição, anterior, índice
+    private int tamanhoIndice;           // posições usadas em pontos
+
+    /**
+     * @param arquivo destino do run
+     * @param codec codificação dos valores
+     * @param minimo menor valor que será gravado
+     * @param maximo maior valor que será gravado
+     * @param mapeado grava através de janelas mapeadas em memória em vez do buffer de escrita
+     * @param agregacao como os valores repetidos são combinados no run
+     * @param arena de onde vem (e para onde volta no close) o buffer de escrita
+     */
+    EscritorRun(File arquivo, CodecRun codec, long minimo, long maximo, boolean mapeado,
+                ConfiguracaoOrdenacao.Agregacao agregacao, ArenaBuffers arena) throws IOException {
+        if (agregacao == ConfiguracaoOrdenacao.Agregacao.CONTAGEM && codec == CodecRun.DELTA_BLOCOS) {
+            // as contagens vão intercaladas com os valores, e os blocos guardam os valores para depois
+            throw new IllegalArgumentException("DELTA_BLOCOS não grava runs com contagens.");
+        }
+        this.agregacao = agregacao;
+        this.canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.cabecalho = new CabecalhoRun(codec, 0, minimo, maximo);
+        cabecalho.flags = CabecalhoRun.FLAG_INDICE;
+        if (agregacao == ConfiguracaoOrdenacao.Agregacao.CONTAGEM) {
+            cabecalho.flags |= CabecalhoRun.FLAG_CONTAGENS;
+        }
+        this.minimo = minimo;
+        this.anterior = minimo;
+        this.mapeado = mapeado;
+        this.arena = arena;
+        // o cabeçalho definitivo é gravado no close()
+        try {
+            if (mapeado) {
+                mapearJanela(CabecalhoRun.TAMANHO);
+            } else {
+                canal.position(CabecalhoRun.TAMANHO);
+                this.buffer = arena.obter(TAMANHO_BUFFER);
+            }
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Grava um bloco já ordenado inteiro com o codec informado, combinando os valores repetidos
+     * conforme a agregação
+     *
+     * @param mapeado grava através de janelas mapeadas em memória
+     * @param arena de onde vem o buffer de escrita
+     * @return quantidade de valores gravados no run (com agregação, os distintos)
+     */
+    static long gravar(File arquivo, long[] valores, int quantidade, boolean mapeado,
+                       ConfiguracaoOrdenacao.Agregacao agregacao, CodecRun codec,
+                       ArenaBuffers arena) throws IOException {
+        long minimo = quantidade > 0 ? valores[0] : 0;
+        long maximo = quantidade > 0 ? valores[quantidade - 1] : 0;
+        EscritorRun escritor = new EscritorRun(arquivo, codec, minimo, maximo, mapeado, agregacao, arena);
+        try (escritor) {
+            for (int i = 0; i < quantidade; i++) {
+                escritor.escrever(valores[i]);
+            }
+        }
+        return escritor.quantidade(); // só depois do close: o último valor agregado é gravado nele
+    }
+
+    public void escrever(long valor) throws IOException {
+        escrever(valor, 1);
+    }
+
+    /**
+     * Grava um valor com a quantidade de ocorrências dele (sem agregação, o valor é repetido)
+     */
+    public void escrever(long valor, long contagem) throws IOException {
+        elementos += contagem;
+        if (agregacao == ConfiguracaoOrdenacao.Agregacao.NENHUMA) {
+            for (long r = 0; r < contagem; r++) {
+                gravarValor(valor, 1);
+            }
+        } else if (pendente && valor == valorPendente) {
+            contagemPendente += contagem;
+        } else {
+            if (pendente) gravarValor(valorPendente, contagemPendente);
+            pendente = true;
+            valorPendente = valor;
+            contagemPendente = contagem;
+        }
+    }
+
+    private void gravarValor(long valor, long contagem) throws IOException {
+        if ((quantidade & (IndiceRun.INTERVALO - 1)) == 0) {
+            anotarPonto(valor);
+        }
+        cabecalho.codec.escrever(this, valor);
+        if ((cabecalho.flags & CabecalhoRun.FLAG_CONTAGENS) != 0) {
+            escreverVarLong(contagem);
+        }
+        anterior = valor;
+        quantidade++;
+    }
+
+    // INTERVALO é múltiplo do bloco do DELTA_BLOCOS, então o bloco anterior já foi gravado aqui
+    private void anotarPonto(long valor) {
+        if (tamanhoIndice == pontos.length) {
+            pontos = Arrays.copyOf(pontos, pontos.length * 2);
+        }
+        pontos[tamanhoIndice++] = valor;
+        pontos[tamanhoIndice++] = mapeado ? posicaoJanela + buffer.position() : bytesDescarregados + buffer.position();
+        pontos[tamanhoIndice++] = anterior;
+        pontos[tamanhoIndice++] = quantidade;
+    }
+
+    long[] blocoCodec() {
+        if (blocoCodec == null) blocoCodec = new long[CodecRun.VALORES_POR_BLOCO];
+        return blocoCodec;
+    }
+
+    void escreverByte(int valor) throws IOException {
+        garantirEspaco(1);
+        buffer.put((byte) valor);
+    }
+
+    void escreverInt(int valor) throws IOException {
+        garantirEspaco(Integer.BYTES);
+        buffer.putInt(valor);
+    }
+
+    void escreverLong(long valor) throws IOException {
+        garantirEspaco(Long.BYTES);
+        buffer.putLong(valor);
+    }
+
+    /**
+     * Grava o valor (sem sinal) em varint: 7 bits por byte, bit mais alto indica continuação
+     */
+    void escreverVarLong(long valor) throws IOException {
+        garantirEspaco(10);
+        while ((valor & ~0x7FL) != 0) {
+            buffer.put((byte) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        buffer.put((byte) valor);
+    }
+
+    private void garantirEspaco(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            if (mapeado) {
+                mapearJanela(posicaoJanela + buffer.position());
+            } else {
+                descarregar();
+            }
+        }
+    }
+
+    // a nova janela começa exatamente onde a escrita parou; a anterior é liberada pelo GC
+    private void mapearJanela(long inicio) throws IOException {
+        buffer = canal.map(FileChannel.MapMode.READ_WRITE, inicio, TAMANHO_JANELA_MAPEADA)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        posicaoJanela = inicio;
+    }
+
+    private void descarregar() throws IOException {
+        buffer.flip();
+        bytesDescarregados += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** valores gravados no run (com agregação, os distintos) */
+    public long quantidade() {
+        return quantidade;
+    }
+
+    /** ocorrências recebidas, incluindo as que foram combinadas */
+    public long elementos() {
+        return elementos;
+    }
+
+    // rodapé no formato lido por IndiceRun.ler
+    private void gravarIndice() throws IOException {
+        for (int i = 0; i < tamanhoIndice; i++) {
+            escreverLong(pontos[i]);
+        }
+        escreverInt(tamanhoIndice / 4);
+        escreverInt(IndiceRun.MARCADOR);
+    }
+
+    public void close() throws IOException {
+        if (!canal.isOpen()) return; // já fechado: o buffer já voltou para a arena
+        try {
+            if (pendente) {
+                pendente = false;
+                gravarValor(valorPendente, contagemPendente);
+            }
+            cabecalho.codec.concluir(this);
+            gravarIndice();
+            if (mapeado) {
+                canal.truncate(posicaoJanela + buffer.position()); // descarta o final não usado da janela
+            } else {
+                descarregar();
+            }
+            cabecalho.quantidade = quantidade;
+            if (quantidade > 0) {
+                cabecalho.maximo = anterior; // o run é crescente: o último valor é o máximo real
+            }
+            ByteBuffer bytesCabecalho = cabecalho.serializar();
+            long posicao = 0;
+            while (bytesCabecalho.hasRemaining()) {
+                posicao += canal.write(bytesCabecalho, posicao);
+            }
+        } finally {
+            canal.close();
+            if (!mapeado) arena.devolver(buffer);
+        }
+    }
+}
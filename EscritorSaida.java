@@ -0,0 +1,169 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Grava as chaves ordenadas no arquivo de saída, convertendo-as de volta para o tipo
+ * (TipoChave) e o formato (FormatoArquivo) pedidos.
+ *
+ * O texto é gravado em ISO-8859-1, que mapeia cada caractere em exatamente um byte:
+ * números saem em ASCII e chaves BYTES saem com os mesmos bytes da entrada. Os dois formatos
+ * usam o mesmo buffer de bytes, e em texto cada chave é formatada direto nele
+ * (TipoChave.formatar(chave, destino, posicao)), sem uma String por valor.
+ *
+ * Na Agregacao.CONTAGEM cada elemento da saída é um par (escreverContagem): em texto,
+ * "valor contagem"; no binário, o valor na largura do tipo seguido da contagem em 8 bytes.
+ *
+ * Com quebraLinhaFinal, o TEXTO termina com System.lineSeparator() ao ser fechado (terminador).
+ */
+class EscritorSaida implements Closeable {
+    static final int TAMANHO_BUFFER = 64 * 1024;
+
+    private final TipoChave tipo;
+    private final boolean texto;
+    private final byte[] separador;    // vazio no formato binário
+    private final boolean quebraFinal; // LINHAS termina com uma quebra de linha
+    private final byte[] terminador;   // gravado no fim da saída TEXTO com quebraLinhaFinal
+    private final FileChannel canal;
+    private final ByteBuffer buffer;
+    private final byte[] repetida = new byte[TipoChave.TAMANHO_MAXIMO_TEXTO]; // chave formatada uma vez em escrever(chave, repeticoes)
+    private boolean primeiroElemento = true;
+    private long quantidade;
+
+    /**
+     * @param quebraLinhaFinal se a saída TEXTO termina com System.lineSeparator() (ver terminador)
+     */
+    public EscritorSaida(File arquivo, TipoChave tipo, FormatoArquivo formato, boolean quebraLinhaFinal)
+            throws IOException {
+        this.tipo = tipo;
+        this.texto = formato != FormatoArquivo.BINARIO;
+        this.separador = texto ? formato.separador.getBytes(StandardCharsets.ISO_8859_1) : new byte[0];
+        this.quebraFinal = formato == FormatoArquivo.LINHAS;
+        this.terminador = terminador(formato, quebraLinhaFinal);
+        this.canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocate(TAMANHO_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void escrever(long chave) throws IOException {
+        if (texto) {
+            iniciarElemento();
+            escreverChave(chave);
+        } else {
+            escreverBinario(chave);
+        }
+        quantidade++;
+    }
+
+    /**
+     * Grava a mesma chave várias vezes, convertendo para texto uma única vez
+     */
+    public void escrever(long chave, long repeticoes) throws IOException {
+        if (repeticoes <= 0) return;
+        if (texto) {
+            int tamanho = tipo.formatar(chave, repetida, 0);
+            for (long r = 0; r < repeticoes; r++) {
+                iniciarElemento();
+                escreverBytes(repetida, tamanho);
+            }
+        } else {
+            for (long r = 0; r < repeticoes; r++) {
+                escreverBinario(chave);
+            }
+        }
+        quantidade += repeticoes;
+    }
+
+    /**
+     * Grava um valor com a quantidade de ocorrências dele, como um único elemento da saída
+     */
+    public void escreverContagem(long chave, long contagem) throws IOException {
+        if (texto) {
+            iniciarElemento();
+            escreverChave(chave);
+            garantirEspaco(1 + TipoChave.TAMANHO_MAXIMO_TEXTO);
+            buffer.put((byte) ' ');
+            avancar(TipoChave.formatarDecimal(contagem, buffer.array(), buffer.position()));
+        } else {
+            escreverBinario(chave);
+            garantirEspaco(Long.BYTES);
+            buffer.putLong(contagem);
+        }
+        quantidade++;
+    }
+
+    // Formatação: adiciona o separador antes de todos os elementos, exceto o primeiro
+    private void iniciarElemento() throws IOException {
+        if (!primeiroElemento) {
+            escreverBytes(separador, separador.length);
+        } else {
+            primeiroElemento = false;
+        }
+    }
+
+    private void escreverChave(long chave) throws IOException {
+        garantirEspaco(TipoChave.TAMANHO_MAXIMO_TEXTO);
+        avancar(tipo.formatar(chave, buffer.array(), buffer.position()));
+    }
+
+    // o buffer é de heap e começa no início do array, então posição no array = posição no buffer
+    private void avancar(int posicao) {
+        buffer.position(posicao);
+    }
+
+    private void escreverBytes(byte[] bytes, int tamanho) throws IOException {
+        garantirEspaco(tamanho);
+        buffer.put(bytes, 0, tamanho);
+    }
+
+    private void escreverBinario(long chave) throws IOException {
+        garantirEspaco(tipo.largura);
+        long bits = tipo.paraBinario(chave);
+        if (tipo.largura == Integer.BYTES) {
+            buffer.putInt((int) bits);
+        } else {
+            buffer.putLong(bits);
+        }
+    }
+
+    private void garantirEspaco(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            descarregar();
+        }
+    }
+
+    private void descarregar() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Bytes que encerram a saída depois do último elemento: System.lineSeparator() no TEXTO com
+     * quebraLinhaFinal, nada nos outros casos. Também usado pelo passo final particionado, que
+     * grava os segmentos sem ele e o acrescenta depois de concatená-los.
+     */
+    static byte[] terminador(FormatoArquivo formato, boolean quebraLinhaFinal) {
+        return quebraLinhaFinal && formato == FormatoArquivo.TEXTO
+                ? System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1) : new byte[0];
+    }
+
+    public long quantidade() {
+        return quantidade;
+    }
+
+    public void close() throws IOException {
+        try {
+            if (quebraFinal && !primeiroElemento) escreverBytes(separador, separador.length);
+            escreverBytes(terminador, terminador.length);
+            descarregar();
+        } finally {
+            canal.close();
+        }
+    }
+}
@@ -0,0 +1,1127 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uma ordenação feita por um ExternalSorter: guarda o estado que antes era estático no
+ * ExternalSort (memória, métricas, runs temporários) e implementa as fases:
+ * 1. Divide o arquivo grande em blocos que cabem na memória
+ * 2. Ordena cada bloco individualmente e salva em arquivos temporários
+ * 3. Mescla todos os arquivos temporários ordenados em um único arquivo de saída
+ *
+ * Cada instância é usada por uma única chamada a ordenar/ordenarEmMemoria. As threads de
+ * ordenação e de merge dessa chamada compartilham a instância, então o estado mutável é
+ * atômico ou concorrente.
+ *
+ * Toda alocação grande (blocos, histograma, heap da seleção, buffers do merge, arrays da
+ * ordenação em memória) é dimensionada e reservada pelo OrcamentoMemoria antes de acontecer.
+ * O tempo de cada fase e os contadores de bytes, runs e merge vão para MetricasOrdenacao,
+ * sempre por bloco ou por run, fora dos laços por valor.
+ *
+ * Com um diretório de trabalho configurado, os runs ficam nele e cada run, o fim da formação e
+ * cada mesclagem intermediária são anotados no ManifestoOrdenacao; uma nova execução com a
+ * mesma entrada parte dos runs válidos que encontrar lá.
+ */
+class ExecucaoOrdenacao {
+    public static final int BYTES_POR_ELEMENTO = Long.BYTES; // Custo real de cada número no bloco
+    private static final AtomicLong SEQUENCIA_JMX = new AtomicLong(); // Identifica cada ordenação no JMX
+    static final double LIMIAR_COMPRESSAO = 0.75; // Fração do tamanho sem compressão que a compressão precisa atingir
+
+    private final ConfiguracaoOrdenacao configuracao;
+    private final OrcamentoMemoria orcamento;
+    private final MedidorMemoria medidor;  // Pico de uso do heap e pausas de GC durante a execução
+    private final MetricasOrdenacao metricas;
+    private final ArenaBuffers arena;      // Buffers de leitura/escrita dos runs e auxiliares do radix, reaproveitados
+    private final Queue<File> temporarios = new ConcurrentLinkedQueue<File>(); // Apagados no fim da ordenação
+    private ManifestoOrdenacao manifesto; // Diretório de trabalho durável (null = runs temporários)
+    private volatile Boolean compressaoCompensa; // CompressaoRuns.ADAPTATIVA: null até o primeiro run ser medido
+
+    ExecucaoOrdenacao(ConfiguracaoOrdenacao configuracao) throws IOException {
+        this.configuracao = configuracao;
+        this.orcamento = new OrcamentoMemoria(configuracao);
+        this.medidor = new MedidorMemoria();
+        this.arena = new ArenaBuffers(orcamento.total());
+        this.metricas = new MetricasOrdenacao(configuracao.ouvinte(), medidor, arena);
+    }
+
+    MetricasOrdenacao metricas() {
+        return metricas;
+    }
+
+    ArenaBuffers arena() {
+        return arena;
+    }
+
+    boolean mapearArquivos() {
+        return configuracao.mapearArquivos();
+    }
+
+    ConfiguracaoOrdenacao.Agregacao agregacao() {
+        return configuracao.agregacao();
+    }
+
+    FormatoArquivo formatoSaida() {
+        return configuracao.formatoSaida();
+    }
+
+    /** bytes acrescentados ao fim da saída, depois do último segmento (ver EscritorSaida.terminador) */
+    byte[] terminadorSaida() {
+        return EscritorSaida.terminador(configuracao.formatoSaida(), configuracao.quebraLinhaFinal());
+    }
+
+    void reservar(long bytes, String finalidade) throws IOException {
+        orcamento.reservar(bytes, finalidade);
+    }
+
+    void liberar(long bytes) {
+        orcamento.liberar(bytes);
+    }
+
+    /**
+     * Custo em memória de cada número de um bloco: com o radix, o bloco e o auxiliar das passadas
+     */
+    int bytesPorElementoBloco() {
+        boolean radix = configuracao.algoritmoBloco() == ConfiguracaoOrdenacao.AlgoritmoBloco.RADIX;
+        return radix ? 2 * BYTES_POR_ELEMENTO : BYTES_POR_ELEMENTO;
+    }
+
+    /**
+     * Codec de um run com os limites informados, conforme a CompressaoRuns configurada: largura
+     * fixa sem compressão, DELTA_BLOCOS com compressão. Os runs de CONTAGEM intercalam as
+     * contagens com os valores, o que os blocos não permitem, e são comprimidos com DELTA_VARINT.
+     */
+    CodecRun codecRun(long minimo, long maximo) {
+        boolean comprimir;
+        switch (configuracao.compressaoRuns()) {
+            case NENHUMA:
+                comprimir = false;
+                break;
+            case BLOCOS:
+                comprimir = true;
+                break;
+            default:
+                comprimir = !Boolean.FALSE.equals(compressaoCompensa);
+        }
+        if (!comprimir) return CodecRun.fixo(minimo, maximo);
+        return configuracao.agregacao() == ConfiguracaoOrdenacao.Agregacao.CONTAGEM
+                ? CodecRun.DELTA_VARINT : CodecRun.DELTA_BLOCOS;
+    }
+
+    /**
+     * Na compressão ADAPTATIVA, o primeiro run gravado decide se os seguintes são comprimidos:
+     * se ele não ficou abaixo de LIMIAR_COMPRESSAO do que ocuparia com largura fixa, a compressão
+     * (e o custo de decodificá-la no merge) não compensa para esta entrada
+     *
+     * @param valores quantidade de valores gravados no run
+     */
+    void medirCompressao(File run, long minimo, long maximo, long valores) {
+        if (configuracao.compressaoRuns() != ConfiguracaoOrdenacao.CompressaoRuns.ADAPTATIVA
+                || compressaoCompensa != null || valores == 0) {
+            return;
+        }
+        int largura = CodecRun.fixo(minimo, maximo) == CodecRun.FIXO_32 ? Integer.BYTES : Long.BYTES;
+        if (configuracao.agregacao() == ConfiguracaoOrdenacao.Agregacao.CONTAGEM) {
+            largura++; // as contagens iriam junto nos dois casos (ao menos 1 byte de varint cada)
+        }
+        compressaoCompensa = run.length() - CabecalhoRun.TAMANHO < valores * largura * LIMIAR_COMPRESSAO;
+    }
+
+    /**
+     * Cria um arquivo temporário no diretório configurado; todos são apagados no fim da ordenação
+     * (mesmo em caso de erro) e, por garantia, na saída da JVM.
+     * Com diretório de trabalho, o arquivo é criado nele e sobrevive a uma falha.
+     */
+    File criarArquivoTemporario(String prefixo) throws IOException {
+        if (manifesto != null) return manifesto.criarArquivo(prefixo);
+        File arquivo = File.createTempFile(prefixo, "run", configuracao.diretorioTemporario());
+        arquivo.deleteOnExit();
+        temporarios.add(arquivo);
+        return arquivo;
+    }
+
+    /**
+     * Ordenação externa completa (ver ExternalSorter.ordenar)
+     */
+    ResultadoOrdenacao ordenar(File entrada, File saida) throws IOException {
+        long tempoInicio = System.currentTimeMillis();
+        List<File> runs = new ArrayList<File>();
+        int runsIniciais = 0;
+        long quantidade = 0;
+        metricas.entrada(entrada.length());
+        ObjectName nomeJmx = registrarJmx();
+
+        try {
+            HistogramaContagem histograma = formarRuns(entrada, runs);
+            runsIniciais = runs.size();
+
+            if (histograma != null) {
+                try {
+                    quantidade = gravarContagem(histograma, saida);
+                } finally {
+                    liberar(histograma.memoria());
+                }
+            } else {
+                quantidade = mesclarArquivosOrdenados(runs, saida, planejadorMerge());
+            }
+            if (manifesto != null) manifesto.concluir();
+        } finally {
+            apagarTemporarios();
+            fecharManifesto();
+            concluir(quantidade, saida.length(), nomeJmx);
+        }
+        return resultado(quantidade, runsIniciais, tempoInicio);
+    }
+
+    /**
+     * Saída ordenada sob demanda (ver ExternalSorter.iterar): forma os runs e faz os passos
+     * intermediários do merge como em ordenar, mas o passo final só avança a cada valor pedido.
+     * Os runs, a memória e as métricas ficam presos ao iterador até ele ser fechado.
+     */
+    IteradorOrdenado iterar(File entrada) throws IOException {
+        List<File> runs = new ArrayList<File>();
+        metricas.entrada(entrada.length());
+        ObjectName nomeJmx = registrarJmx();
+        long reserva = 0;
+        boolean aberto = false;
+
+        try {
+            List<FonteRunOrdenada> fontes = new ArrayList<>();
+            HistogramaContagem histograma = formarRuns(entrada, runs);
+            if (histograma != null) {
+                // a contagem cobriu a entrada: os valores saem direto do histograma
+                reserva = histograma.memoria();
+                metricas.elementosLidos(histograma.quantidade());
+                metricas.iniciarFase(FaseOrdenacao.MERGE_FINAL);
+                fontes.add(histograma.fonte(configuracao.agregacao() != ConfiguracaoOrdenacao.Agregacao.NENHUMA));
+            } else {
+                PlanejadorMerge planejador = planejadorMerge();
+                runs = reduzirParaMergeFinal(runs, planejador);
+                int tamanhoBuffer = planejador.tamanhoBuffer(runs.size(), 1);
+                long memoria = memoriaBuffers(runs.size(), tamanhoBuffer, planejador.leituraAntecipada());
+                reservar(memoria, "os buffers do merge");
+                reserva = memoria;
+                fontes.addAll(abrirBuffers(runs, tamanhoBuffer, planejador.leituraAntecipada()));
+            }
+
+            long inicio = System.nanoTime();
+            long reservaMerge = reserva;
+            List<File> finais = runs;
+            IteradorOrdenado iterador = new IteradorOrdenado(new ArvorePerdedores(fontes), configuracao.tipoChave(),
+                    configuracao.agregacao() != ConfiguracaoOrdenacao.Agregacao.NENHUMA, metricas, retirados -> {
+                        // o tempo do merge final inclui o do consumidor entre uma chamada e outra
+                        metricas.registrar(FaseOrdenacao.MERGE_FINAL, inicio);
+                        try {
+                            liberar(reservaMerge);
+                            for (File arquivo : finais) {
+                                arquivo.delete();
+                            }
+                            if (manifesto != null) manifesto.concluir();
+                        } finally {
+                            apagarTemporarios();
+                            fecharManifesto();
+                            concluir(retirados, 0, nomeJmx);
+                        }
+                    });
+            aberto = true;
+            return iterador;
+        } finally {
+            if (!aberto) {
+                liberar(reserva);
+                apagarTemporarios();
+                fecharManifesto();
+                concluir(0, 0, nomeJmx);
+            }
+        }
+    }
+
+    /**
+     * Os k menores valores da entrada, em ordem (ver ExternalSorter.ordenarMenores).
+     * Se os k valores cabem na parcela de runs do orçamento, uma única passada com um heap
+     * limitado (SelecaoMenores) basta, sem runs temporários; senão a entrada é ordenada
+     * externamente e o merge final para depois do k-ésimo valor. Com agregação o heap não
+     * sabe quais valores já tem, então vale sempre o segundo caminho (os runs já chegam
+     * combinados ao merge).
+     */
+    ResultadoOrdenacao ordenarMenores(File entrada, File saida, long k) throws IOException {
+        long tempoInicio = System.currentTimeMillis();
+        if (k > orcamento.paraRuns() / bytesPorElementoBloco() || k > Integer.MAX_VALUE - 8
+                || configuracao.agregacao() != ConfiguracaoOrdenacao.Agregacao.NENHUMA) {
+            long quantidade = 0;
+            try (IteradorOrdenado iterador = iterar(entrada);
+                 EscritorSaida escritor = abrirSaida(saida)) {
+                while (quantidade < k && iterador.hasNext()) {
+                    escreverAgregado(escritor, iterador.nextLong(), iterador.contagem());
+                    quantidade++;
+                }
+            }
+            return resultado(quantidade, metricas.getRunsIniciais() + metricas.getRunsRetomados(), tempoInicio);
+        }
+
+        long quantidade = 0;
+        long reserva = 0;
+        metricas.entrada(entrada.length());
+        ObjectName nomeJmx = registrarJmx();
+        try {
+            reservar(k * bytesPorElementoBloco(), "o heap dos menores valores");
+            reserva = k * bytesPorElementoBloco();
+            SelecaoMenores heap;
+            try (LeitorNumerosStreaming leitor = abrirEntrada(entrada)) {
+                metricas.iniciarFase(FaseOrdenacao.LEITURA);
+                long inicio = System.nanoTime();
+                heap = SelecaoMenores.selecionar(leitor, (int) k);
+                metricas.registrar(FaseOrdenacao.LEITURA, inicio);
+                metricas.leitura(leitor.bytesConsumidos());
+            }
+            metricas.elementosLidos(heap.lidos());
+
+            metricas.iniciarFase(FaseOrdenacao.ORDENACAO);
+            ordenarBloco(heap.valores(), heap.tamanho());
+
+            metricas.iniciarFase(FaseOrdenacao.ESCRITA_SAIDA);
+            long inicio = System.nanoTime();
+            try (EscritorSaida escritor = abrirSaida(saida)) {
+                for (int i = 0; i < heap.tamanho(); i++) {
+                    escritor.escrever(heap.valores()[i]);
+                }
+            }
+            metricas.registrar(FaseOrdenacao.ESCRITA_SAIDA, inicio);
+            quantidade = heap.tamanho();
+        } finally {
+            liberar(reserva);
+            concluir(quantidade, saida.length(), nomeJmx);
+        }
+        return resultado(quantidade, 0, tempoInicio);
+    }
+
+    /**
+     * Ordenação de registros pela chave extraída deles (ver ExternalSorter.ordenarRegistros).
+     * Os blocos, runs e merge ficam com a OrdenacaoRegistros; daqui vêm o orçamento, os
+     * arquivos temporários, a arena e as métricas, como nas outras ordenações.
+     */
+    ResultadoOrdenacao ordenarRegistros(File entrada, File saida, FormatoRegistro formato) throws IOException {
+        long tempoInicio = System.currentTimeMillis();
+        OrdenacaoRegistros ordenacao = new OrdenacaoRegistros(formato, this);
+        long quantidade = 0;
+        metricas.entrada(entrada.length());
+        ObjectName nomeJmx = registrarJmx();
+        try {
+            // o merge dos registros é feito em uma thread, sem leitura antecipada
+            quantidade = ordenacao.ordenar(entrada, saida, orcamento.paraRuns(),
+                    new PlanejadorMerge(configuracao.fanIn(), orcamento.paraMerge(), 1, false));
+        } finally {
+            apagarTemporarios();
+            concluir(quantidade, saida.length(), nomeJmx);
+        }
+        return resultado(quantidade, ordenacao.runsIniciais(), tempoInicio);
+    }
+
+    /**
+     * Contagem e formação dos runs iniciais, ou retomada deles pelo diretório de trabalho
+     *
+     * @param runs lista que recebe os runs iniciais
+     * @return o histograma, se a contagem chegou ao fim da entrada (nenhum run é gerado e a
+     *         memória dele, histograma.memoria(), continua reservada para quem recebe); senão null
+     */
+    private HistogramaContagem formarRuns(File entrada, List<File> runs) throws IOException {
+        abrirManifesto(entrada, runs);
+        if (manifesto != null && manifesto.formacaoConcluida()) return null;
+
+        try (LeitorNumerosStreaming leitor = abrirEntrada(entrada)) {
+            if (!runs.isEmpty()) leitor.posicionar(manifesto.posicaoRetomada());
+            // Primeiro tenta a contagem (só do início da entrada); se o intervalo de valores
+            // for grande, continua em blocos
+            int limite = runs.isEmpty() ? limiteContagem() : 0;
+            if (limite > 0) {
+                // o vetor de contagens cresce dobrando: no pior caso o antigo e o novo coexistem
+                long reserva = (long) limite * Long.BYTES * 3 / 2;
+                reservar(reserva, "o histograma da contagem");
+                HistogramaContagem histograma = null;
+                boolean completo = false;
+                try {
+                    metricas.iniciarFase(FaseOrdenacao.CONTAGEM);
+                    long inicio = System.nanoTime();
+                    histograma = HistogramaContagem.contar(leitor, limite);
+                    metricas.registrar(FaseOrdenacao.CONTAGEM, inicio);
+                    metricas.leitura(leitor.bytesConsumidos());
+                    completo = ordenarPorContagem(histograma, leitor, runs);
+                } finally {
+                    // só o vetor de contagens que ficou continua reservado, e só se ainda for usado
+                    liberar(completo ? reserva - histograma.memoria() : reserva);
+                }
+                if (completo) return histograma;
+            }
+            runs.addAll(configuracao.formacaoRuns() == ConfiguracaoOrdenacao.FormacaoRuns.SELECAO_SUBSTITUICAO
+                    ? ordenarEmLotesPorSelecao(leitor, entrada)
+                    : ordenarEmLotes(leitor, entrada));
+        } finally {
+            // os auxiliares do radix e os buffers dos escritores guardados na arena já não têm
+            // reserva no orçamento: descartados aqui, não somam com os buffers do merge
+            arena.liberar();
+        }
+        if (manifesto != null) manifesto.registrarFormacao();
+        return null;
+    }
+
+    private PlanejadorMerge planejadorMerge() {
+        return new PlanejadorMerge(configuracao.fanIn(), orcamento.paraMerge(),
+                configuracao.threadsMerge(), configuracao.leituraAntecipada());
+    }
+
+    // abre o diretório de trabalho, se configurado, e recupera os runs de uma execução interrompida
+    private void abrirManifesto(File entrada, List<File> runs) throws IOException {
+        if (configuracao.diretorioTrabalho() == null) return;
+        manifesto = ManifestoOrdenacao.abrir(configuracao.diretorioTrabalho(), entrada, configuracao, arena);
+        runs.addAll(manifesto.runs());
+        metricas.retomada(manifesto.runsRetomados(), manifesto.elementosRetomados(), manifesto.posicaoRetomada());
+    }
+
+    private void fecharManifesto() {
+        if (manifesto == null) return;
+        try {
+            manifesto.close();
+        } catch (IOException e) {
+            // a trava é liberada de qualquer forma quando o processo termina
+        }
+    }
+
+    /**
+     * Anota no manifesto um run inicial já fechado (sem diretório de trabalho, não faz nada)
+     *
+     * @param inicio posição da entrada onde o bloco do run começa (-1 se não corresponde a um trecho)
+     * @param fim posição da entrada logo depois do último valor do bloco
+     */
+    void registrarRun(File arquivo, long inicio, long fim, long quantidade) throws IOException {
+        if (manifesto != null) manifesto.registrarRun(arquivo, inicio, fim, quantidade);
+    }
+
+    private ResultadoOrdenacao resultado(long quantidade, int runsIniciais, long tempoInicio) {
+        return new ResultadoOrdenacao(quantidade, runsIniciais, System.currentTimeMillis() - tempoInicio,
+                medidor.pico(), orcamento.total(), orcamento.picoReservado(), metricas);
+    }
+
+    // fim da ordenação, com sucesso ou não: fecha a medição e avisa o ouvinte
+    private void concluir(long quantidade, long bytesEscritos, ObjectName nomeJmx) {
+        medidor.close();
+        arena.liberar();
+        metricas.concluir(quantidade, bytesEscritos);
+        if (nomeJmx != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(nomeJmx);
+            } catch (JMException e) {
+                // já removido
+            }
+        }
+    }
+
+    /**
+     * Registra as métricas desta ordenação no servidor JMX da plataforma, se configurado
+     *
+     * @return nome do MXBean registrado, ou null
+     */
+    private ObjectName registrarJmx() throws IOException {
+        if (!configuracao.registrarJmx()) return null;
+        try {
+            ObjectName nome = new ObjectName("ExternalSorter:type=Ordenacao,id=" + SEQUENCIA_JMX.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metricas, nome);
+            return nome;
+        } catch (JMException e) {
+            throw new IOException("não foi possível registrar as métricas no JMX.", e);
+        }
+    }
+
+    // o histograma não passa da parcela dos runs (com folga para o crescimento)
+    private int limiteContagem() {
+        long cabe = orcamento.paraRuns() * 2 / 3 / Long.BYTES;
+        return (int) Math.min(configuracao.limiteContagem(), cabe);
+    }
+
+    /**
+     * Ordenação da entrada inteira em memória (ver ExternalSorter.ordenarEmMemoria).
+     * Chaves INT ficam em um int[] e usam o QuickSortThreeWay paralelo; os outros tipos, long[]
+     * (ver ChavesEmMemoria).
+     */
+    ResultadoOrdenacao ordenarEmMemoria(File entrada, File saida) throws IOException {
+        long tempoInicio = System.currentTimeMillis();
+        int threads = configuracao.threadsOrdenacao();
+        boolean radix = configuracao.algoritmoBloco() == ConfiguracaoOrdenacao.AlgoritmoBloco.RADIX;
+        ChavesEmMemoria chaves = configuracao.tipoChave() == TipoChave.INT
+                ? new ChavesEmMemoria.Inteiros() : new ChavesEmMemoria.Longos();
+        int quantidade = 0;
+        metricas.entrada(entrada.length());
+        ObjectName nomeJmx = registrarJmx();
+
+        try {
+            metricas.iniciarFase(FaseOrdenacao.LEITURA);
+            long inicio = System.nanoTime();
+            int tamanho = lerChaves(entrada, chaves);
+            long bytesChaves = (long) tamanho * chaves.bytesPorElemento();
+            metricas.registrar(FaseOrdenacao.LEITURA, inicio);
+            metricas.elementosLidos(tamanho);
+            // as chaves já estão reservadas (lerChaves): se o auxiliar não couber, são liberadas igual
+            try {
+                long reservaAuxiliar = radix ? bytesChaves : 0;
+                reservar(reservaAuxiliar, "o auxiliar do radix");
+                try (EscritorSaida escritor = abrirSaida(saida)) {
+                    metricas.iniciarFase(FaseOrdenacao.ORDENACAO);
+                    inicio = System.nanoTime();
+                    chaves.ordenar(radix, threads);
+                    metricas.registrar(FaseOrdenacao.ORDENACAO, inicio);
+
+                    metricas.iniciarFase(FaseOrdenacao.ESCRITA_SAIDA);
+                    inicio = System.nanoTime();
+                    if (configuracao.agregacao() == ConfiguracaoOrdenacao.Agregacao.NENHUMA) {
+                        for (int i = 0; i < tamanho; i++) {
+                            escritor.escrever(chaves.valor(i));
+                        }
+                    } else {
+                        int i = 0;
+                        while (i < tamanho) {
+                            long valor = chaves.valor(i);
+                            int j = i + 1;
+                            while (j < tamanho && chaves.valor(j) == valor) j++;
+                            escreverAgregado(escritor, valor, j - i);
+                            i = j;
+                        }
+                    }
+                    quantidade = (int) escritor.quantidade();
+                    metricas.registrar(FaseOrdenacao.ESCRITA_SAIDA, inicio);
+                } finally {
+                    liberar(reservaAuxiliar);
+                }
+            } finally {
+                liberar(bytesChaves);
+            }
+        } finally {
+            concluir(quantidade, saida.length(), nomeJmx);
+        }
+        return resultado(quantidade, 0, tempoInicio);
+    }
+
+    /**
+     * Lê todas as chaves da entrada para chaves, que termina com um array do tamanho exato.
+     * Cada array alocado (inclusive as cópias ao crescer) é reservado antes; no fim só
+     * o array final continua reservado, e quem chamou é quem libera.
+     *
+     * @return quantidade de chaves lidas
+     */
+    private int lerChaves(File arquivo, ChavesEmMemoria chaves) throws IOException {
+        int bytesPorElemento = chaves.bytesPorElemento();
+        int capacidade = capacidadeInicial(arquivo, bytesPorElemento);
+        reservar((long) capacidade * bytesPorElemento, "a leitura da entrada");
+        chaves.redimensionar(capacidade);
+        int quantidade = 0;
+
+        try (LeitorNumerosStreaming leitor = abrirEntrada(arquivo)) {
+            while (leitor.temProximo()) {
+                if (quantidade == capacidade) {
+                    capacidade = crescer(capacidade, bytesPorElemento);
+                    chaves.redimensionar(capacidade);
+                    liberar((long) quantidade * bytesPorElemento);
+                }
+                chaves.definir(quantidade++, leitor.proximo());
+            }
+            metricas.leitura(leitor.bytesConsumidos());
+        } catch (IOException | RuntimeException e) {
+            liberar((long) capacidade * bytesPorElemento);
+            throw e;
+        }
+
+        if (quantidade == 0) {
+            liberar((long) capacidade * bytesPorElemento);
+            throw new IOException("arquivo vazio.");
+        }
+        if (quantidade < capacidade) {
+            reservar((long) quantidade * bytesPorElemento, "a leitura da entrada");
+            chaves.redimensionar(quantidade);
+            liberar((long) capacidade * bytesPorElemento);
+        }
+        return quantidade;
+    }
+
+    /**
+     * Capacidade inicial para ler a entrada inteira: a estimativa pelo tamanho do arquivo,
+     * limitada a metade do orçamento (a outra metade fica para a cópia no tamanho exato)
+     */
+    private int capacidadeInicial(File arquivo, int bytesPorElemento) {
+        long cabe = orcamento.paraRuns() / 2 / bytesPorElemento;
+        return (int) Math.max(16, Math.min(estimarQuantidade(arquivo), cabe));
+    }
+
+    // dobra a capacidade, reservando o novo array antes de alocá-lo
+    private int crescer(int capacidade, int bytesPorElemento) throws IOException {
+        int novaCapacidade = (int) Math.min(Integer.MAX_VALUE - 8, capacidade * 2L);
+        reservar((long) novaCapacidade * bytesPorElemento, "a leitura da entrada");
+        return novaCapacidade;
+    }
+
+    /**
+     * Quantidade máxima de números na entrada: cada número em texto ocupa ao menos
+     * 2 bytes ("9,"), então metade do tamanho do arquivo basta como estimativa
+     */
+    private long estimarQuantidade(File arquivo) {
+        return configuracao.formatoEntrada() == FormatoArquivo.BINARIO
+                ? arquivo.length() / configuracao.tipoChave().largura
+                : arquivo.length() / 2 + 1;
+    }
+
+    private LeitorNumerosStreaming abrirEntrada(File arquivo) throws IOException {
+        return LeitorNumerosStreaming.abrir(arquivo, configuracao.mapearArquivos(),
+                configuracao.tipoChave(), configuracao.formatoEntrada());
+    }
+
+    private EscritorSaida abrirSaida(File arquivo) throws IOException {
+        return abrirSaida(arquivo, configuracao.quebraLinhaFinal());
+    }
+
+    private EscritorSaida abrirSaida(File arquivo, boolean quebraLinhaFinal) throws IOException {
+        return new EscritorSaida(arquivo, configuracao.tipoChave(), configuracao.formatoSaida(), quebraLinhaFinal);
+    }
+
+    /**
+     * Grava um valor da saída já com as repetições combinadas: com CONTAGEM, o par
+     * valor/ocorrências; senão, o valor uma vez (quem chama já agrupou as repetições, ou
+     * não há agregação e contagem é 1)
+     */
+    private void escreverAgregado(EscritorSaida escritor, long valor, long contagem) throws IOException {
+        if (configuracao.agregacao() == ConfiguracaoOrdenacao.Agregacao.CONTAGEM) {
+            escritor.escreverContagem(valor, contagem);
+        } else {
+            escritor.escrever(valor);
+        }
+    }
+
+    private void apagarTemporarios() {
+        File arquivo;
+        while ((arquivo = temporarios.poll()) != null) {
+            arquivo.delete();
+        }
+    }
+
+    /**
+     * Quantidade de números por bloco: a parcela de runs do orçamento dividida entre os
+     * blocos que ficam em memória ao mesmo tempo (ver GeradorRunsParalelo), pelo custo
+     * conhecido de cada número. Nunca passa da quantidade de números que a entrada pode ter.
+     *
+     * @param arquivo arquivo que será ordenado
+     * @param blocosEmVoo quantidade de blocos alocados simultaneamente
+     * @param bytesPorElemento custo em memória de cada número
+     */
+    int capacidadeDoBloco(File arquivo, int blocosEmVoo, int bytesPorElemento) {
+        long capacidade = Math.min(orcamento.paraRuns() / blocosEmVoo / bytesPorElemento, estimarQuantidade(arquivo));
+        return (int) Math.max(1, Math.min(capacidade, Integer.MAX_VALUE - 8));
+    }
+
+    /**
+     * Fase de divisão e ordenação inicial, a partir de um leitor já aberto:
+     * 1. Lê a entrada em blocos que cabem na memória
+     * 2. Ordena cada bloco em memória primária
+     * 3. Salva cada bloco ordenado em arquivo temporário
+     *
+     * Cada número é convertido uma única vez para long e guardado em um long[] reaproveitado
+     * entre os blocos, então o tamanho do bloco é medido em bytes reais (BYTES_POR_ELEMENTO
+     * por número). Com mais de uma thread de ordenação, a leitura, a ordenação e a escrita
+     * dos blocos passam a ser feitas em pipeline (GeradorRunsParalelo).
+     *
+     * @param leitor leitor da entrada, posicionado no próximo número a ser ordenado
+     * @param arquivo arquivo de entrada (usado para estimar o tamanho dos blocos)
+     * @return lista de arquivos temporários ordenados
+     */
+    List<File> ordenarEmLotes(LeitorNumerosStreaming leitor, File arquivo) throws IOException {
+        int threadsOrdenacao = configuracao.threadsOrdenacao();
+        if (threadsOrdenacao > 1) {
+            int blocosEmVoo = GeradorRunsParalelo.blocosEmVoo(threadsOrdenacao);
+            int capacidade = capacidadeDoBloco(arquivo, blocosEmVoo, bytesPorElementoBloco());
+            metricas.iniciarFase(FaseOrdenacao.LEITURA);
+            return GeradorRunsParalelo.gerar(leitor, capacidade, threadsOrdenacao, this);
+        }
+
+        List<File> arquivos = new ArrayList<File>();
+        int capacidade = capacidadeDoBloco(arquivo, 1, bytesPorElementoBloco());
+        long reserva = (long) capacidade * bytesPorElementoBloco();
+        reservar(reserva, "o bloco de ordenação");
+        try {
+            long[] bloco = new long[capacidade];
+            metricas.iniciarFase(FaseOrdenacao.LEITURA);
+
+            // cada bloco começa onde o anterior terminou (os separadores entre eles ficam no anterior)
+            long fimBloco = leitor.bytesConsumidos();
+            while (leitor.temProximo()) {
+                long inicio = System.nanoTime();
+                long inicioBloco = fimBloco;
+                int quantidade = 0;
+                while (quantidade < bloco.length && leitor.temProximo()) {
+                    bloco[quantidade++] = leitor.proximo();
+                }
+                metricas.registrar(FaseOrdenacao.LEITURA, inicio);
+                fimBloco = leitor.bytesConsumidos();
+                metricas.leitura(fimBloco);
+
+                arquivos.add(ordenarESalvar(bloco, quantidade, inicioBloco, fimBloco));
+            }
+        } finally {
+            liberar(reserva);
+        }
+        return arquivos;
+    }
+
+    /**
+     * Alternativa à divisão em blocos fixos: forma os runs por seleção por substituição
+     * (SelecaoSubstituicao), usando toda a parcela de runs do orçamento para o heap.
+     * Os runs ficam, em média, com o dobro do tamanho e entradas já ordenadas viram um único run.
+     *
+     * @param leitor leitor da entrada, posicionado no próximo número a ser ordenado
+     * @param arquivo arquivo de entrada (usado para estimar a memória)
+     * @return lista de arquivos temporários ordenados
+     */
+    List<File> ordenarEmLotesPorSelecao(LeitorNumerosStreaming leitor, File arquivo) throws IOException {
+        int capacidade = capacidadeDoBloco(arquivo, 1, SelecaoSubstituicao.BYTES_POR_ELEMENTO);
+        long reserva = (long) capacidade * SelecaoSubstituicao.BYTES_POR_ELEMENTO;
+        reservar(reserva, "o heap da seleção por substituição");
+        metricas.iniciarFase(FaseOrdenacao.ORDENACAO);
+        long inicio = System.nanoTime();
+        try {
+            return SelecaoSubstituicao.gerar(leitor, capacidade, this);
+        } finally {
+            metricas.registrar(FaseOrdenacao.ORDENACAO, inicio);
+            liberar(reserva);
+        }
+    }
+
+    /**
+     * Caminho rápido para entradas com intervalo pequeno de valores: se a contagem
+     * (HistogramaContagem) chegou ao fim da entrada, a saída ordenada sai direto das
+     * contagens (gravarContagem ou IteradorOrdenado), sem runs temporários nem merge.
+     *
+     * Se algum valor estourou o limite, o que já foi contado é salvo como run em runs e o leitor
+     * fica posicionado nesse valor, para a divisão em blocos continuar dali.
+     *
+     * @param histograma contagem feita sobre o início da entrada
+     * @param leitor leitor da entrada
+     * @param runs lista que recebe o run da contagem, se ela foi interrompida
+     * @return true se a contagem cobre a entrada inteira
+     */
+    boolean ordenarPorContagem(HistogramaContagem histograma, LeitorNumerosStreaming leitor,
+                               List<File> runs) throws IOException {
+        if (!leitor.temProximo()) {
+            return true;
+        }
+        if (histograma.quantidade() > 0) {
+            long inicio = System.nanoTime();
+            File run = criarArquivoTemporario("contagem");
+            histograma.gravarRun(run, configuracao.mapearArquivos(), configuracao.agregacao(),
+                    codecRun(histograma.minimo(), histograma.maximo()), arena);
+            registrarRun(run, 0, leitor.bytesConsumidos(), histograma.quantidade());
+            runs.add(run);
+            metricas.registrar(FaseOrdenacao.GRAVACAO_RUNS, inicio);
+            metricas.runGravado(run.length(), histograma.quantidade());
+        }
+        return false;
+    }
+
+    // grava a saída direto das contagens
+    private long gravarContagem(HistogramaContagem histograma, File arquivoSaida) throws IOException {
+        metricas.elementosLidos(histograma.quantidade());
+        metricas.iniciarFase(FaseOrdenacao.ESCRITA_SAIDA);
+        long inicio = System.nanoTime();
+        long quantidade;
+        try (EscritorSaida escritor = abrirSaida(arquivoSaida)) {
+            quantidade = histograma.gravar(escritor, configuracao.agregacao());
+        }
+        metricas.registrar(FaseOrdenacao.ESCRITA_SAIDA, inicio);
+        return quantidade;
+    }
+
+    /**
+     * Método auxiliar que ordena um bloco na memória e salva em arquivo temporário
+     *
+     * @param bloco buffer com os números a serem ordenados
+     * @param quantidade quantidade de posições válidas no início do buffer
+     * @param inicio posição da entrada onde o bloco começa (para o manifesto)
+     * @param fim posição da entrada logo depois do bloco
+     * @return arquivo temporário com os dados ordenados
+     */
+    File ordenarESalvar(long[] bloco, int quantidade, long inicio, long fim) throws IOException {
+        ordenarBloco(bloco, quantidade);
+        return salvarRun(bloco, quantidade, inicio, fim);
+    }
+
+    /**
+     * Ordena in-place as primeiras posições do bloco: radix (OrdenacaoRadix) ou
+     * particionamento de três vias do QuickSortThreeWay
+     */
+    void ordenarBloco(long[] bloco, int quantidade) {
+        long inicio = System.nanoTime();
+        if (configuracao.algoritmoBloco() == ConfiguracaoOrdenacao.AlgoritmoBloco.RADIX) {
+            // o auxiliar tem o tamanho do bloco (não da parte usada) para servir a todos os blocos
+            long[] auxiliar = arena.obterLongs(bloco.length);
+            OrdenacaoRadix.ordenar(bloco, 0, quantidade, auxiliar);
+            arena.devolver(auxiliar);
+        } else {
+            QuickSortThreeWay.ordenar(bloco, 0, quantidade);
+        }
+        metricas.registrar(FaseOrdenacao.ORDENACAO, inicio);
+    }
+
+    /**
+     * Salva um bloco já ordenado em um arquivo temporário
+     *
+     * @param bloco buffer com os números já ordenados
+     * @param quantidade quantidade de posições válidas no início do buffer
+     * @param inicioBloco posição da entrada onde o bloco começa (para o manifesto)
+     * @param fimBloco posição da entrada logo depois do bloco
+     * @return arquivo temporário com os dados ordenados
+     */
+    File salvarRun(long[] bloco, int quantidade, long inicioBloco, long fimBloco) throws IOException {
+        long inicio = System.nanoTime();
+        File novoArquivoTemp = criarArquivoTemporario("ordenarEmLotes");
+
+        // Escreve os dados ordenados no formato binário de run (cabeçalho + codec escolhido pelo bloco),
+        // já com as repetições combinadas se houver agregação
+        long minimo = quantidade > 0 ? bloco[0] : 0;
+        long maximo = quantidade > 0 ? bloco[quantidade - 1] : 0;
+        long gravados = EscritorRun.gravar(novoArquivoTemp, bloco, quantidade, configuracao.mapearArquivos(),
+                configuracao.agregacao(), codecRun(minimo, maximo), arena);
+        medirCompressao(novoArquivoTemp, minimo, maximo, gravados);
+        registrarRun(novoArquivoTemp, inicioBloco, fimBloco, quantidade);
+        metricas.registrar(FaseOrdenacao.GRAVACAO_RUNS, inicio);
+        metricas.runGravado(novoArquivoTemp.length(), quantidade);
+        return novoArquivoTemp;  // Retorna o arquivo temporário que foi criado
+    }
+
+    /**
+     * Fase de merge (mesclagem) dos arquivos ordenados, respeitando o fan-in e a memória do
+     * planejador: se houver runs demais, primeiro são feitos passos intermediários (em paralelo)
+     * até sobrarem runs suficientes para um único passo final.
+     * O passo final usa uma árvore de perdedores (ArvorePerdedores) para mesclar os runs
+     * restantes no arquivo de saída com log2(k) comparações por elemento. Com agregação,
+     * cada valor sai uma única vez, somando as ocorrências de todos os runs.
+     *
+     * @param arquivos lista de arquivos temporários ordenados
+     * @param arquivoSaida arquivo de saída final ordenado
+     * @param planejador fan-in, memória e paralelismo do merge
+     * @return número total de valores gravados
+     */
+    long mesclarArquivosOrdenados(List<File> arquivos, File arquivoSaida,
+                                  PlanejadorMerge planejador) throws IOException {
+        arquivos = reduzirParaMergeFinal(arquivos, planejador);
+        long inicio = System.nanoTime();
+
+        long quantidade = -1;
+        if (planejador.threads() > 1 && !arquivos.isEmpty()) {
+            quantidade = mesclarParticionado(arquivos, arquivoSaida, planejador);
+        }
+        if (quantidade < 0) {
+            // Abre um buffer de leitura para cada arquivo temporário restante
+            int tamanhoBuffer = planejador.tamanhoBuffer(arquivos.size(), 1);
+            long reserva = memoriaBuffers(arquivos.size(), tamanhoBuffer, planejador.leituraAntecipada());
+            reservar(reserva, "os buffers do merge");
+            try {
+                List<BufferArquivoBinario> buffers = abrirBuffers(arquivos, tamanhoBuffer, planejador.leituraAntecipada());
+
+                try (ArvorePerdedores arvore = new ArvorePerdedores(buffers);
+                     EscritorSaida escritor = abrirSaida(arquivoSaida)) {
+                    escreverMerge(arvore, escritor, new AtomicLong());
+                    quantidade = escritor.quantidade();
+                }
+            } finally {
+                liberar(reserva);
+            }
+        }
+        metricas.registrar(FaseOrdenacao.MERGE_FINAL, inicio);
+
+        // Todos os runs foram consumidos: os arquivos temporários podem ser apagados
+        for (File arquivo : arquivos) {
+            arquivo.delete();
+        }
+        return quantidade;
+    }
+
+    /**
+     * Passo final em partições paralelas (MergeParticionado), se os índices dos runs
+     * derem separadores
+     *
+     * @return número de valores gravados, ou -1 se o passo final deve ser feito em uma só thread
+     */
+    private long mesclarParticionado(List<File> arquivos, File arquivoSaida,
+                                     PlanejadorMerge planejador) throws IOException {
+        List<IndiceRun> indices = MergeParticionado.lerIndices(arquivos);
+        if (indices == null) return -1;
+        long[] separadores = MergeParticionado.separadores(indices, planejador.threads());
+        if (separadores.length == 0) return -1;
+        return MergeParticionado.mesclar(arquivos, indices, separadores, arquivoSaida, planejador, this);
+    }
+
+    /**
+     * Uma partição do passo final paralelo: mescla os valores dos runs que caem em
+     * [inicio, fim) em um segmento da saída. Cada run é aberto no ponto do índice anterior
+     * a inicio, então só uma fração de um intervalo do índice é lida e descartada.
+     *
+     * @param indices índice de cada run
+     * @param fim limite superior exclusivo, ignorado na última partição
+     * @param segmento arquivo com o trecho da saída desta partição
+     * @param gravados ocorrências consumidas por todas as partições, para o progresso
+     * @return número de valores gravados no segmento
+     */
+    long mesclarParticao(List<File> arquivos, List<IndiceRun> indices, long inicio, long fim, boolean ultima,
+                         File segmento, int tamanhoBuffer, boolean leituraAntecipada,
+                         AtomicLong gravados) throws IOException {
+        long reserva = memoriaBuffers(arquivos.size(), tamanhoBuffer, leituraAntecipada);
+        reservar(reserva, "os buffers de uma partição do merge final");
+        try {
+            List<FonteRunOrdenada> fontes = new ArrayList<FonteRunOrdenada>();
+            try {
+                for (int i = 0; i < arquivos.size(); i++) {
+                    int ponto = indices.get(i).pontoAntes(inicio);
+                    BufferArquivoBinario buffer = ponto < 0
+                            ? abrirBuffer(arquivos.get(i), tamanhoBuffer, leituraAntecipada)
+                            : BufferArquivoBinario.abrirNoPonto(arquivos.get(i), indices.get(i), ponto,
+                                    tamanhoBuffer, leituraAntecipada, configuracao.mapearArquivos(), arena);
+                    fontes.add(buffer); // entra antes do filtro, para ser fechado se o descarte falhar
+                    fontes.set(i, new MergeParticionado.FonteIntervalo(buffer, inicio, fim, !ultima));
+                }
+            } catch (IOException e) {
+                for (FonteRunOrdenada fonte : fontes) {
+                    fonte.close();
+                }
+                throw e;
+            }
+
+            try (ArvorePerdedores arvore = new ArvorePerdedores(fontes);
+                 EscritorSaida escritor = abrirSaida(segmento, false)) {
+                escreverMerge(arvore, escritor, gravados);
+                return escritor.quantidade();
+            }
+        } finally {
+            liberar(reserva);
+        }
+    }
+
+    /**
+     * Grava na saída tudo o que a árvore tiver. Com agregação, cada valor sai uma única vez,
+     * somando as ocorrências de todas as fontes.
+     *
+     * @param gravados ocorrências consumidas (comparáveis às lidas da entrada), somadas entre
+     *                 as partições do passo final paralelo para o progresso
+     */
+    private void escreverMerge(ArvorePerdedores arvore, EscritorSaida escritor, AtomicLong gravados) throws IOException {
+        // Processa enquanto alguma fonte ainda tiver elementos
+        // (a árvore fecha cada fonte assim que ela esvazia)
+        long consumidos = 0, informados = 0;
+        if (configuracao.agregacao() == ConfiguracaoOrdenacao.Agregacao.NENHUMA) {
+            while (!arvore.vazia()) {
+                escritor.escrever(arvore.remover());
+                if ((++consumidos & MetricasOrdenacao.MASCARA_PROGRESSO) == 0) {
+                    metricas.gravados(gravados.addAndGet(consumidos - informados));
+                    informados = consumidos;
+                }
+            }
+        } else {
+            while (!arvore.vazia()) {
+                long valor = arvore.removerAgrupado();
+                escreverAgregado(escritor, valor, arvore.contagemRemovida());
+                long antes = consumidos;
+                consumidos += arvore.contagemRemovida();
+                if ((antes & ~MetricasOrdenacao.MASCARA_PROGRESSO) != (consumidos & ~MetricasOrdenacao.MASCARA_PROGRESSO)) {
+                    metricas.gravados(gravados.addAndGet(consumidos - informados));
+                    informados = consumidos;
+                }
+            }
+        }
+        metricas.gravados(gravados.addAndGet(consumidos - informados));
+    }
+
+    // passos intermediários até sobrarem runs para um único passo final
+    private List<File> reduzirParaMergeFinal(List<File> arquivos, PlanejadorMerge planejador) throws IOException {
+        int mesclagens = planejador.mesclagens(arquivos.size());
+        metricas.planoMerge(planejador.passos(arquivos.size()), planejador.fanIn(arquivos.size()), mesclagens);
+        if (mesclagens > 0) metricas.iniciarFase(FaseOrdenacao.MERGE_INTERMEDIARIO);
+        List<File> restantes = planejador.reduzir(arquivos, this);
+        metricas.iniciarFase(FaseOrdenacao.MERGE_FINAL);
+        return restantes;
+    }
+
+    /**
+     * Passo intermediário do merge: mescla um grupo de runs em um novo run binário
+     * (anotado no manifesto, se houver, antes de os runs do grupo serem apagados)
+     *
+     * @param arquivos runs a serem mesclados (são apagados ao final)
+     * @param tamanhoBuffer tamanho do buffer de leitura de cada run
+     * @param leituraAntecipada se os runs são lidos com buffer duplo em segundo plano
+     * @return novo run temporário com todos os valores do grupo
+     */
+    File mesclarEmRun(List<File> arquivos, int tamanhoBuffer, boolean leituraAntecipada) throws IOException {
+        long reserva = memoriaBuffers(arquivos.size(), tamanhoBuffer, leituraAntecipada);
+        reservar(reserva, "os buffers de uma mesclagem intermediária");
+        try {
+            return mesclarEmRun(arquivos, abrirBuffers(arquivos, tamanhoBuffer, leituraAntecipada));
+        } finally {
+            liberar(reserva);
+        }
+    }
+
+    private File mesclarEmRun(List<File> arquivos, List<BufferArquivoBinario> buffers) throws IOException {
+        long inicio = System.nanoTime();
+
+        // Os limites do novo run saem dos cabeçalhos, antes de ler qualquer valor
+        long minimo = Long.MAX_VALUE, maximo = Long.MIN_VALUE, quantidade = 0;
+        for (BufferArquivoBinario buffer : buffers) {
+            if (buffer.vazio()) continue;
+            minimo = Math.min(minimo, buffer.minimo());
+            maximo = Math.max(maximo, buffer.maximo());
+            quantidade += buffer.quantidade();
+        }
+        if (quantidade == 0) {
+            minimo = maximo = 0;
+        }
+
+        File novoArquivoTemp;
+        try {
+            novoArquivoTemp = criarArquivoTemporario("mesclagem");
+        } catch (IOException e) {
+            for (BufferArquivoBinario buffer : buffers) {
+                buffer.fechar();
+            }
+            throw e;
+        }
+
+        long elementos;
+        try (ArvorePerdedores arvore = new ArvorePerdedores(buffers);
+             EscritorRun escritor = new EscritorRun(novoArquivoTemp, codecRun(minimo, maximo),
+                     minimo, maximo, configuracao.mapearArquivos(), configuracao.agregacao(), arena)) {
+            if (configuracao.agregacao() == ConfiguracaoOrdenacao.Agregacao.NENHUMA) {
+                while (!arvore.vazia()) {
+                    escritor.escrever(arvore.remover());
+                }
+            } else {
+                // as repetições entre runs do grupo também viram um único valor
+                while (!arvore.vazia()) {
+                    long valor = arvore.removerAgrupado();
+                    escritor.escrever(valor, arvore.contagemRemovida());
+                }
+            }
+            elementos = escritor.elementos();
+        }
+        if (manifesto != null) manifesto.registrarMesclagem(novoArquivoTemp, arquivos, elementos);
+
+        for (File arquivo : arquivos) {
+            arquivo.delete();
+        }
+        metricas.registrar(FaseOrdenacao.MERGE_INTERMEDIARIO, inicio);
+        metricas.mesclagemConcluida(novoArquivoTemp.length());
+        return novoArquivoTemp;
+    }
+
+    // abre um buffer para cada run; se algum falhar, fecha os que já foram abertos
+    private List<BufferArquivoBinario> abrirBuffers(List<File> arquivos, int tamanhoBuffer,
+                                                    boolean leituraAntecipada) throws IOException {
+        List<BufferArquivoBinario> buffers = new ArrayList<BufferArquivoBinario>();
+        try {
+            for (File arquivo : arquivos) {
+                buffers.add(abrirBuffer(arquivo, tamanhoBuffer, leituraAntecipada));
+            }
+        } catch (IOException e) {
+            for (BufferArquivoBinario buffer : buffers) {
+                buffer.fechar();
+            }
+            throw e;
+        }
+        return buffers;
+    }
+
+    private BufferArquivoBinario abrirBuffer(File arquivo, int tamanhoBuffer,
+                                             boolean leituraAntecipada) throws IOException {
+        if (configuracao.mapearArquivos()) {
+            // o cache de páginas já faz a leitura antecipada dos arquivos mapeados
+            return BufferArquivoBinario.abrirMapeado(arquivo);
+        } else if (leituraAntecipada) {
+            return BufferArquivoBinario.abrirComLeituraAntecipada(arquivo, tamanhoBuffer, arena);
+        }
+        return new BufferArquivoBinario(arquivo, tamanhoBuffer, arena);
+    }
+
+    // memória de heap dos buffers de leitura de runs (os mapeados ficam fora do heap)
+    private long memoriaBuffers(int runs, int tamanhoBuffer, boolean leituraAntecipada) {
+        if (configuracao.mapearArquivos()) return 0;
+        return runs * PlanejadorMerge.memoriaPorRun(tamanhoBuffer, leituraAntecipada);
+    }
+
+    /**
+     * Chaves da ordenação em memória, no array do tipo que o algoritmo de bloco usa: int[]
+     * para chaves INT (metade da memória e o QuickSortThreeWay paralelo), long[] para as
+     * outras. Só o armazenamento e a ordenação dependem do tipo; a leitura, a agregação e a
+     * escrita em ordenarEmMemoria são as mesmas.
+     */
+    private abstract static class ChavesEmMemoria {
+        abstract int bytesPorElemento();
+
+        // novo array com a capacidade pedida, preservando o início
+        abstract void redimensionar(int capacidade);
+
+        abstract void definir(int indice, long valor);
+
+        abstract long valor(int indice);
+
+        // ordena o array inteiro (do tamanho exato depois de lerChaves)
+        abstract void ordenar(boolean radix, int threads);
+
+        static final class Inteiros extends ChavesEmMemoria {
+            private int[] numeros = new int[0];
+
+            int bytesPorElemento() {
+                return Integer.BYTES;
+            }
+
+            void redimensionar(int capacidade) {
+                numeros = Arrays.copyOf(numeros, capacidade);
+            }
+
+            void definir(int indice, long valor) {
+                numeros[indice] = (int) valor;
+            }
+
+            long valor(int indice) {
+                return numeros[indice];
+            }
+
+            void ordenar(boolean radix, int threads) {
+                if (radix) {
+                    OrdenacaoRadix.ordenar(numeros, 0, numeros.length, threads);
+                } else {
+                    QuickSortThreeWay.quickSort3Way(numeros, threads);
+                }
+            }
+        }
+
+        static final class Longos extends ChavesEmMemoria {
+            private long[] chaves = new long[0];
+
+            int bytesPorElemento() {
+                return Long.BYTES;
+            }
+
+            void redimensionar(int capacidade) {
+                chaves = Arrays.copyOf(chaves, capacidade);
+            }
+
+            void definir(int indice, long valor) {
+                chaves[indice] = valor;
+            }
+
+            long valor(int indice) {
+                return chaves[indice];
+            }
+
+            void ordenar(boolean radix, int threads) {
+                if (radix) {
+                    OrdenacaoRadix.ordenar(chaves, 0, chaves.length, threads);
+                } else {
+                    QuickSortThreeWay.ordenar(chaves, 0, chaves.length);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Ponto de entrada da ordenação como biblioteca.
+ *
+ * Exemplo:
+ * <pre>
+ *   ExternalSorter ordenador = ExternalSorter.builder()
+ *           .memoriaMaxima(256L * 1024 * 1024)
+ *           .diretorioTemporario(new File("/tmp/ordenacao"))
+ *           .threads(4)
+ *           .tipoChave(TipoChave.DOUBLE)
+ *           .formatoSaida(FormatoArquivo.LINHAS)
+ *           .build();
+ *   ResultadoOrdenacao resultado = ordenador.ordenar(entrada, saida);
+ * </pre>
+ *
+ * Todo o estado de uma ordenação (métricas, orçamento de memória, runs temporários) pertence à chamada,
+ * então a mesma instância pode ordenar vários arquivos ao mesmo tempo em threads diferentes.
+ * Os CLIs ExternalSort e QuickSortThreeWay são apenas traduções de argumentos para este builder.
+ */
+public final class ExternalSorter {
+    private final ConfiguracaoOrdenacao configuracao;
+
+    private ExternalSorter(ConfiguracaoOrdenacao configuracao) {
+        this.configuracao = configuracao;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public ConfiguracaoOrdenacao configuracao() {
+        return configuracao;
+    }
+
+    /**
+     * Ordenação externa: runs ordenados em arquivos temporários e merge (ou, se o intervalo
+     * de valores for pequeno, contagem direto para a saída)
+     *
+     * @param entrada arquivo a ser ordenado
+     * @param saida arquivo de saída (sobrescrito)
+     */
+    public ResultadoOrdenacao ordenar(File entrada, File saida) throws IOException {
+        return new ExecucaoOrdenacao(configuracao).ordenar(entrada, saida);
+    }
+
+    /**
+     * Só os k menores valores da entrada, em ordem crescente. Se k valores cabem no orçamento
+     * de memória, uma única passada com um heap limitado basta, sem runs temporários;
+     * senão a entrada é ordenada externamente e o merge para no k-ésimo valor.
+     *
+     * @param k quantidade de valores gravados (menos, se a entrada tiver menos)
+     */
+    public ResultadoOrdenacao ordenarMenores(File entrada, File saida, long k) throws IOException {
+        if (k < 1) {
+            throw new IllegalArgumentException("k inválido: " + k);
+        }
+        return new ExecucaoOrdenacao(configuracao).ordenarMenores(entrada, saida, k);
+    }
+
+    /**
+     * Ordenação externa com a saída consumida sob demanda, sem arquivo de saída: os runs são
+     * formados e os passos intermediários do merge são feitos aqui, e o passo final avança a
+     * cada valor pedido ao iterador (ou ao stream() dele). Fechar o iterador antes do fim
+     * interrompe o merge e apaga os runs.
+     *
+     * <pre>
+     *   try (IteradorOrdenado valores = ordenador.iterar(entrada)) {
+     *       long primeiros = valores.stream().limit(1000).sum();
+     *   }
+     * </pre>
+     */
+    public IteradorOrdenado iterar(File entrada) throws IOException {
+        return new ExecucaoOrdenacao(configuracao).iterar(entrada);
+    }
+
+    /**
+     * Ordena registros (linhas de CSV ou de largura fixa, ou registros binários prefixados
+     * pelo tamanho) pelas colunas de chave do formato, gravando os registros inteiros na
+     * saída, no mesmo formato da entrada. A chave de cada registro é extraída uma única vez e
+     * as comparações usam os 8 primeiros bytes dela (ver FormatoRegistro e OrdenacaoRegistros);
+     * registros com chaves iguais ficam na ordem da entrada.
+     *
+     * <pre>
+     *   FormatoRegistro formato = FormatoRegistro.csv(',',
+     *           FormatoRegistro.campo(2, TipoChave.LONG), FormatoRegistro.campo(0, TipoChave.BYTES));
+     *   ordenador.ordenarRegistros(entrada, saida, formato);
+     * </pre>
+     *
+     * Da configuração valem o orçamento de memória, o diretório temporário, o fan-in, o
+     * ouvinte e o JMX; tipo de chave, formatos, agregação, threads, compressão e diretório
+     * de trabalho são das ordenações de números.
+     */
+    public ResultadoOrdenacao ordenarRegistros(File entrada, File saida, FormatoRegistro formato) throws IOException {
+        if (formato == null) {
+            throw new IllegalArgumentException("formato não pode ser nulo.");
+        }
+        return new ExecucaoOrdenacao(configuracao).ordenarRegistros(entrada, saida, formato);
+    }
+
+    /**
+     * Ordena a entrada inteira em memória, sem runs temporários, com o algoritmo de bloco
+     * configurado (QuickSortThreeWay ou OrdenacaoRadix) usando threadsOrdenacao threads
+     *
+     * @throws IOException se a entrada estiver vazia ou não puder ser lida
+     */
+    public ResultadoOrdenacao ordenarEmMemoria(File entrada, File saida) throws IOException {
+        return new ExecucaoOrdenacao(configuracao).ordenarEmMemoria(entrada, saida);
+    }
+
+    /**
+     * Builder da configuração. Os valores padrão reproduzem o comportamento do ExternalSort
+     * sem opções.
+     */
+    public static final class Builder {
+        long memoriaMaxima = 0;
+        long memoriaMerge = 0;
+        File diretorioTemporario = null;
+        File diretorioTrabalho = null;
+        int fanIn = PlanejadorMerge.FAN_IN_PADRAO;
+        int threadsOrdenacao = 1;
+        int threadsMerge = 1;
+        boolean leituraAntecipada = true;
+        boolean mapearArquivos = false;
+        ConfiguracaoOrdenacao.AlgoritmoBloco algoritmoBloco = ConfiguracaoOrdenacao.AlgoritmoBloco.QUICKSORT;
+        ConfiguracaoOrdenacao.FormacaoRuns formacaoRuns = ConfiguracaoOrdenacao.FormacaoRuns.BLOCOS;
+        int limiteContagem = HistogramaContagem.LIMITE_PADRAO;
+        TipoChave tipoChave = TipoChave.LONG;
+        FormatoArquivo formatoEntrada = FormatoArquivo.TEXTO;
+        FormatoArquivo formatoSaida = FormatoArquivo.TEXTO;
+        boolean quebraLinhaFinal = false;
+        ConfiguracaoOrdenacao.Agregacao agregacao = ConfiguracaoOrdenacao.Agregacao.NENHUMA;
+        ConfiguracaoOrdenacao.CompressaoRuns compressaoRuns = ConfiguracaoOrdenacao.CompressaoRuns.ADAPTATIVA;
+        OuvinteOrdenacao ouvinte = null;
+        boolean registrarJmx = false;
+
+        private Builder() {
+        }
+
+        /** orçamento de memória para blocos e buffers, em bytes (0 = 40% do heap máximo) */
+        public Builder memoriaMaxima(long bytes) {
+            this.memoriaMaxima = exigir(bytes >= 0, bytes, "memoriaMaxima");
+            return this;
+        }
+
+        /** memória dos buffers de leitura do merge, em bytes (0 = a mesma parcela dos blocos) */
+        public Builder memoriaMerge(long bytes) {
+            this.memoriaMerge = exigir(bytes >= 0, bytes, "memoriaMerge");
+            return this;
+        }
+
+        public Builder diretorioTemporario(File diretorio) {
+            this.diretorioTemporario = diretorio;
+            return this;
+        }
+
+        /**
+         * Diretório durável da ordenação (criado se não existir): os runs ficam nele, cada etapa
+         * concluída é anotada em um manifesto e uma ordenação interrompida da mesma entrada
+         * continua da última etapa concluída (ver ManifestoOrdenacao). Cada ordenação em
+         * andamento precisa de um diretório próprio.
+         */
+        public Builder diretorioTrabalho(File diretorio) {
+            this.diretorioTrabalho = naoNulo(diretorio, "diretorioTrabalho");
+            return this;
+        }
+
+        /** máximo de runs abertos por mesclagem; acima disso o merge é feito em vários passos */
+        public Builder fanIn(int fanIn) {
+            this.fanIn = (int) exigir(fanIn >= 2, fanIn, "fanIn");
+            return this;
+        }
+
+        /** mesma quantidade de threads para a ordenação dos blocos e para o merge */
+        public Builder threads(int threads) {
+            return threadsOrdenacao(threads).threadsMerge(threads);
+        }
+
+        public Builder threadsOrdenacao(int threads) {
+            this.threadsOrdenacao = (int) exigir(threads >= 1, threads, "threadsOrdenacao");
+            return this;
+        }
+
+        /** mesclagens intermediárias simultâneas e partições do passo final do merge (ver MergeParticionado) */
+        public Builder threadsMerge(int threads) {
+            this.threadsMerge = (int) exigir(threads >= 1, threads, "threadsMerge");
+            return this;
+        }
+
+        public Builder leituraAntecipada(boolean leituraAntecipada) {
+            this.leituraAntecipada = leituraAntecipada;
+            return this;
+        }
+
+        public Builder mapearArquivos(boolean mapearArquivos) {
+            this.mapearArquivos = mapearArquivos;
+            return this;
+        }
+
+        public Builder algoritmoBloco(ConfiguracaoOrdenacao.AlgoritmoBloco algoritmo) {
+            this.algoritmoBloco = naoNulo(algoritmo, "algoritmoBloco");
+            return this;
+        }
+
+        public Builder formacaoRuns(ConfiguracaoOrdenacao.FormacaoRuns formacao) {
+            this.formacaoRuns = naoNulo(formacao, "formacaoRuns");
+            return this;
+        }
+
+        /** tamanho máximo do intervalo de valores ordenado por contagem (0 desliga) */
+        public Builder limiteContagem(int limite) {
+            this.limiteContagem = (int) exigir(limite >= 0, limite, "limiteContagem");
+            return this;
+        }
+
+        public Builder tipoChave(TipoChave tipo) {
+            this.tipoChave = naoNulo(tipo, "tipoChave");
+            return this;
+        }
+
+        public Builder formatoEntrada(FormatoArquivo formato) {
+            this.formatoEntrada = naoNulo(formato, "formatoEntrada");
+            return this;
+        }
+
+        public Builder formatoSaida(FormatoArquivo formato) {
+            this.formatoSaida = naoNulo(formato, "formatoSaida");
+            return this;
+        }
+
+        /**
+         * Termina a saída TEXTO com System.lineSeparator(), mesmo vazia (LINHAS já termina cada
+         * valor com uma quebra de linha; BINARIO não muda)
+         */
+        public Builder quebraLinhaFinal(boolean quebraLinhaFinal) {
+            this.quebraLinhaFinal = quebraLinhaFinal;
+            return this;
+        }
+
+        /**
+         * Combina os valores repetidos: DISTINTOS grava cada valor uma vez e CONTAGEM grava cada
+         * valor com a quantidade de ocorrências. As repetições já são combinadas em cada run e
+         * em cada mesclagem, então os runs e o merge encolhem junto com a cardinalidade.
+         */
+        public Builder agregacao(ConfiguracaoOrdenacao.Agregacao agregacao) {
+            this.agregacao = naoNulo(agregacao, "agregacao");
+            return this;
+        }
+
+        /**
+         * Codificação dos runs temporários: ADAPTATIVA (padrão) comprime em blocos e mede o
+         * primeiro run; se ele não ficou abaixo de 3/4 do tamanho sem compressão, os runs
+         * seguintes são gravados com largura fixa
+         */
+        public Builder compressaoRuns(ConfiguracaoOrdenacao.CompressaoRuns compressao) {
+            this.compressaoRuns = naoNulo(compressao, "compressaoRuns");
+            return this;
+        }
+
+        /** recebe as fases e o progresso de cada ordenação (ver OuvinteOrdenacao) */
+        public Builder ouvinte(OuvinteOrdenacao ouvinte) {
+            this.ouvinte = naoNulo(ouvinte, "ouvinte");
+            return this;
+        }
+
+        /**
+         * Registra as métricas de cada ordenação como MXBean (ExternalSorter:type=Ordenacao,id=N)
+         * enquanto ela executa
+         */
+        public Builder registrarJmx(boolean registrarJmx) {
+            this.registrarJmx = registrarJmx;
+            return this;
+        }
+
+        public ExternalSorter build() {
+            if (diretorioTemporario != null && !diretorioTemporario.isDirectory()) {
+                throw new IllegalArgumentException("diretório temporário inexistente: " + diretorioTemporario);
+            }
+            return new ExternalSorter(new ConfiguracaoOrdenacao(this));
+        }
+
+        private static long exigir(boolean condicao, long valor, String nome) {
+            if (!condicao) {
+                throw new IllegalArgumentException(nome + " inválido: " + valor);
+            }
+            return valor;
+        }
+
+        private static <T> T naoNulo(T valor, String nome) {
+            if (valor == null) {
+                throw new IllegalArgumentException(nome + " não pode ser nulo.");
+            }
+            return valor;
+        }
+    }
+}
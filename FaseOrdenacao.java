@@ -0,0 +1,22 @@
+/**
+ * Fases em que o tempo de uma ordenação é medido (MetricasOrdenacao).
+ *
+ * O tempo de cada fase é somado entre as threads: com a formação dos runs em pipeline ou
+ * mesclagens intermediárias em paralelo, a soma das fases passa do tempo total.
+ */
+public enum FaseOrdenacao {
+    /** histograma da contagem (leitura e contagem dos valores) */
+    CONTAGEM,
+    /** leitura e conversão da entrada para os blocos (ou para o array da ordenação em memória) */
+    LEITURA,
+    /** ordenação dos blocos em memória; na seleção por substituição, toda a formação dos runs */
+    ORDENACAO,
+    /** gravação dos runs temporários */
+    GRAVACAO_RUNS,
+    /** passos intermediários do merge */
+    MERGE_INTERMEDIARIO,
+    /** passo final do merge, até o arquivo de saída */
+    MERGE_FINAL,
+    /** gravação da saída sem merge (contagem concluída ou ordenação em memória) */
+    ESCRITA_SAIDA
+}
@@ -0,0 +1,30 @@
+import java.io.*;
+
+/**
+ * Origem de valores já ordenados consumida pelo merge (ver ArvorePerdedores).
+ * Segue o mesmo contrato de peek/remover do BufferArquivoBinario.
+ */
+interface FonteRunOrdenada extends Closeable {
+
+    /**
+     * @return true se não há mais valores
+     */
+    boolean vazio();
+
+    /**
+     * @return o próximo valor sem consumi-lo (só é válido se não estiver vazio)
+     */
+    long lerProxima();
+
+    /**
+     * @return quantas ocorrências o próximo valor representa (mais de uma nos runs com contagens)
+     */
+    default long contagem() {
+        return 1;
+    }
+
+    /**
+     * @return o próximo valor e já avança para o seguinte
+     */
+    long remover() throws IOException;
+}
@@ -0,0 +1,20 @@
+/**
+ * Formatos de entrada e saída do ExternalSorter.
+ *
+ * Na entrada, TEXTO e LINHAS são lidos do mesmo jeito (qualquer combinação de vírgula,
+ * espaço, tabulação e quebra de linha separa os valores); a diferença está só na saída.
+ */
+public enum FormatoArquivo {
+    /** valores separados por ", " (formato do GerarDadosRefac) */
+    TEXTO(", "),
+    /** um valor por linha */
+    LINHAS("\n"),
+    /** valores crus em little-endian, com a largura do tipo de chave, sem separadores */
+    BINARIO(null);
+
+    final String separador;
+
+    FormatoArquivo(String separador) {
+        this.separador = separador;
+    }
+}
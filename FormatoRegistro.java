@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Formato da entrada e da saída da ordenação de registros (ExternalSorter.ordenarRegistros):
+ * como o arquivo é dividido em registros e quais trechos de cada registro formam a chave.
+ *
+ *  - CSV: um registro por linha, campos separados por um caractere; um campo entre aspas
+ *    pode conter o separador ("" dentro dele é uma aspa), mas não quebras de linha
+ *  - LARGURA_FIXA: um registro por linha, colunas em posições fixas de bytes
+ *  - PREFIXADO: registros binários, cada um precedido do tamanho em 4 bytes little-endian
+ *
+ * A saída tem o mesmo formato da entrada, com os registros intactos. Nas linhas, o "\r" de
+ * um final "\r\n" não faz parte do registro nem da chave, e toda linha da saída termina com
+ * o final da primeira linha da entrada ("\n" ou "\r\n").
+ *
+ * A chave é extraída de cada registro uma única vez e guardada normalizada: bytes cuja ordem
+ * lexicográfica sem sinal é a ordem das colunas, comparadas na ordem em que foram declaradas.
+ * Colunas numéricas (TipoChave INT, LONG e DOUBLE) viram 8 bytes big-endian da chave do tipo
+ * com o bit de sinal invertido; colunas BYTES entram como estão, de qualquer tamanho, e, se
+ * não forem a última, com 0x00 escapado como 0x00 0xFF e terminadas por 0x00 0x00 (assim uma
+ * coluna menor não invade a seguinte). Os primeiros 8 bytes da chave normalizada, como um
+ * long (prefixo), resolvem a maior parte das comparações sem olhar o resto.
+ */
+public final class FormatoRegistro {
+
+    /** como a entrada é dividida em registros */
+    public enum Enquadramento {
+        CSV,          // linhas com campos separados
+        LARGURA_FIXA, // linhas com colunas em posições fixas
+        PREFIXADO     // tamanho em 4 bytes little-endian + bytes do registro
+    }
+
+    /**
+     * Uma coluna da chave: um campo do CSV (campo) ou um trecho de bytes do registro (trecho)
+     */
+    public static final class Coluna {
+        final int campo;   // índice do campo no CSV (-1 nos trechos)
+        final int inicio;  // primeiro byte do trecho no registro
+        final int tamanho; // bytes do trecho (até o fim do registro, se ele for menor)
+        final TipoChave tipo;
+
+        private Coluna(int campo, int inicio, int tamanho, TipoChave tipo) {
+            if (tipo == null) {
+                throw new IllegalArgumentException("tipo da coluna não pode ser nulo.");
+            }
+            this.campo = campo;
+            this.inicio = inicio;
+            this.tamanho = tamanho;
+            this.tipo = tipo;
+        }
+    }
+
+    private static final int LARGURA_NUMERICA = Long.BYTES; // bytes de uma coluna numérica normalizada
+
+    private final Enquadramento enquadramento;
+    private final byte separador;
+    private final Coluna[] colunas;
+
+    private FormatoRegistro(Enquadramento enquadramento, char separador, Coluna[] colunas) {
+        if (colunas.length == 0) {
+            throw new IllegalArgumentException("a chave precisa de ao menos uma coluna.");
+        }
+        for (Coluna coluna : colunas) {
+            if ((coluna.campo >= 0) != (enquadramento == Enquadramento.CSV)) {
+                throw new IllegalArgumentException(enquadramento == Enquadramento.CSV
+                        ? "colunas de CSV são campos, não trechos." : "colunas de " + enquadramento + " são trechos, não campos.");
+            }
+            if (enquadramento == Enquadramento.PREFIXADO && coluna.tipo != TipoChave.BYTES
+                    && coluna.tamanho != coluna.tipo.largura) {
+                throw new IllegalArgumentException("coluna " + coluna.tipo + " de registro binário precisa de "
+                        + coluna.tipo.largura + " bytes: " + coluna.tamanho);
+            }
+        }
+        this.enquadramento = enquadramento;
+        this.separador = (byte) separador;
+        this.colunas = colunas.clone();
+    }
+
+    /**
+     * Linhas com campos separados por separador (um caractere ASCII)
+     *
+     * @param chave campos da chave (ver campo)
+     */
+    public static FormatoRegistro csv(char separador, Coluna... chave) {
+        if (separador > 0x7F || separador == '\n' || separador == '"') {
+            throw new IllegalArgumentException("separador inválido: " + separador);
+        }
+        return new FormatoRegistro(Enquadramento.CSV, separador, chave);
+    }
+
+    /**
+     * Linhas com colunas em posições fixas
+     *
+     * @param chave trechos da chave (ver trecho), em texto
+     */
+    public static FormatoRegistro larguraFixa(Coluna... chave) {
+        return new FormatoRegistro(Enquadramento.LARGURA_FIXA, '\0', chave);
+    }
+
+    /**
+     * Registros binários precedidos do tamanho
+     *
+     * @param chave trechos da chave (ver trecho); as colunas numéricas são little-endian
+     *              com a largura do tipo
+     */
+    public static FormatoRegistro prefixado(Coluna... chave) {
+        return new FormatoRegistro(Enquadramento.PREFIXADO, '\0', chave);
+    }
+
+    /**
+     * Campo de índice indice (a partir de 0) de um registro CSV
+     */
+    public static Coluna campo(int indice, TipoChave tipo) {
+        if (indice < 0) {
+            throw new IllegalArgumentException("campo inválido: " + indice);
+        }
+        return new Coluna(indice, 0, 0, tipo);
+    }
+
+    /**
+     * Bytes [inicio, inicio + tamanho) do registro (espaços em volta de um número são ignorados)
+     */
+    public static Coluna trecho(int inicio, int tamanho, TipoChave tipo) {
+        if (inicio < 0 || tamanho < 1) {
+            throw new IllegalArgumentException("trecho inválido: " + inicio + "+" + tamanho);
+        }
+        return new Coluna(-1, inicio, tamanho, tipo);
+    }
+
+    public Enquadramento enquadramento() {
+        return enquadramento;
+    }
+
+    /** CSV e LARGURA_FIXA: um registro por linha */
+    boolean emLinhas() {
+        return enquadramento != Enquadramento.PREFIXADO;
+    }
+
+    /**
+     * Maior chave normalizada possível para um registro do tamanho informado (o espaço que
+     * normalizar pode ocupar)
+     */
+    int tamanhoMaximoChave(int tamanhoRegistro) {
+        long maximo = 0;
+        for (int c = 0; c < colunas.length; c++) {
+            if (colunas[c].tipo != TipoChave.BYTES) {
+                maximo += LARGURA_NUMERICA;
+            } else {
+                maximo += c == colunas.length - 1 ? tamanhoRegistro : 2L * tamanhoRegistro + 2;
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 8, maximo);
+    }
+
+    /**
+     * Extrai a chave normalizada do registro para destino
+     *
+     * @param destino precisa ter tamanhoMaximoChave(tamanho) bytes livres a partir de posicao
+     * @return posição seguinte ao último byte da chave
+     * @throws IOException se uma coluna numérica faltar ou não for um número
+     */
+    int normalizar(byte[] registro, int inicio, int tamanho, byte[] destino, int posicao) throws IOException {
+        int fimRegistro = inicio + tamanho;
+        for (int c = 0; c < colunas.length; c++) {
+            Coluna coluna = colunas[c];
+            boolean ultima = c == colunas.length - 1;
+            int de, ate;
+            if (coluna.campo >= 0) {
+                long trecho = campo(registro, inicio, fimRegistro, coluna.campo);
+                de = (int) (trecho >>> 32);
+                ate = (int) trecho;
+            } else {
+                de = (int) Math.min(fimRegistro, (long) inicio + coluna.inicio);
+                ate = (int) Math.min(fimRegistro, (long) de + coluna.tamanho);
+            }
+            // um campo entre aspas: o conteúdo fica sem elas
+            boolean aspas = coluna.campo >= 0 && ate - de >= 2 && registro[de] == '"' && registro[ate - 1] == '"';
+            if (aspas) {
+                de++;
+                ate--;
+            }
+
+            if (coluna.tipo == TipoChave.BYTES) {
+                posicao = copiarBytes(registro, de, ate, aspas, ultima, destino, posicao);
+                continue;
+            }
+            long chave;
+            if (enquadramento == Enquadramento.PREFIXADO) {
+                if (ate - de < coluna.tipo.largura) {
+                    throw new IOException("registro sem a coluna " + (c + 1) + " da chave.");
+                }
+                long bits = 0;
+                for (int i = 0; i < coluna.tipo.largura; i++) {
+                    bits |= (registro[de + i] & 0xFFL) << (8 * i);
+                }
+                chave = coluna.tipo.deBinario(bits);
+            } else {
+                chave = numero(registro, de, ate, coluna.tipo, c + 1);
+            }
+            long normalizada = chave ^ Long.MIN_VALUE;
+            for (int i = 0; i < LARGURA_NUMERICA; i++) {
+                destino[posicao++] = (byte) (normalizada >>> (56 - 8 * i));
+            }
+        }
+        return posicao;
+    }
+
+    /**
+     * Início e fim (inicio << 32 | fim) do campo de índice indice; vazio no fim do registro
+     * se ele tiver menos campos
+     */
+    private long campo(byte[] registro, int inicio, int fimRegistro, int indice) {
+        int posicao = inicio;
+        for (int campo = 0; ; campo++) {
+            int fim = posicao;
+            boolean comAspas = posicao < fimRegistro && registro[posicao] == '"';
+            boolean dentroDeAspas = false;
+            while (fim < fimRegistro && (dentroDeAspas || registro[fim] != separador)) {
+                if (comAspas && registro[fim] == '"') dentroDeAspas = !dentroDeAspas; // "" fecha e reabre
+                fim++;
+            }
+            if (campo == indice) return (long) posicao << 32 | fim;
+            if (fim == fimRegistro) return (long) fimRegistro << 32 | fimRegistro;
+            posicao = fim + 1;
+        }
+    }
+
+    // coluna BYTES: os bytes como estão, sem as aspas duplicadas e, se não for a última, escapados e terminados
+    private static int copiarBytes(byte[] registro, int de, int ate, boolean aspas, boolean ultima,
+                                   byte[] destino, int posicao) {
+        for (int i = de; i < ate; i++) {
+            byte b = registro[i];
+            if (aspas && b == '"' && i + 1 < ate && registro[i + 1] == '"') i++;
+            destino[posicao++] = b;
+            if (b == 0 && !ultima) destino[posicao++] = (byte) 0xFF;
+        }
+        if (!ultima) {
+            destino[posicao++] = 0;
+            destino[posicao++] = 0;
+        }
+        return posicao;
+    }
+
+    // número em texto, com espaços em volta, na chave do tipo
+    private static long numero(byte[] registro, int de, int ate, TipoChave tipo, int coluna) throws IOException {
+        while (de < ate && (registro[de] == ' ' || registro[de] == '\t')) de++;
+        while (ate > de && (registro[ate - 1] == ' ' || registro[ate - 1] == '\t')) ate--;
+        if (de == ate) {
+            throw new IOException("registro sem a coluna " + coluna + " da chave.");
+        }
+        try {
+            return tipo.deTexto(registro, de, ate);
+        } catch (IOException e) {
+            throw new IOException("número malformado na coluna " + coluna + " da chave: "
+                    + new String(registro, de, ate - de, StandardCharsets.ISO_8859_1), e);
+        }
+    }
+
+    /**
+     * Os primeiros 8 bytes da chave normalizada (completados com zeros) como long com sinal:
+     * a ordem dos prefixos é a ordem sem sinal desses bytes
+     */
+    static long prefixo(byte[] chave, int inicio, int tamanho) {
+        long prefixo = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            prefixo = (prefixo << 8) | (i < tamanho ? chave[inicio + i] & 0xFF : 0);
+        }
+        return prefixo ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Ordem de duas chaves normalizadas (lexicográfica sem sinal)
+     */
+    static int compararChaves(byte[] a, int inicioA, int tamanhoA, byte[] b, int inicioB, int tamanhoB) {
+        return Arrays.compareUnsigned(a, inicioA, inicioA + tamanhoA, b, inicioB, inicioB + tamanhoB);
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Geração de runs em pipeline, para sobrepor CPU e disco:
+ *
+ *   leitura (thread chamadora) -> ordenação (pool com N threads) -> escrita (1 thread)
+ *
+ * Os blocos (long[]) circulam por uma fila limitada de blocos livres: a leitura só
+ * começa a preencher um bloco depois que a escrita devolveu algum, então a memória fica
+ * presa em no máximo blocosEmVoo blocos, independente da velocidade de cada estágio.
+ * Cada bloco é reservado no orçamento da execução antes de ser alocado.
+ */
+class GeradorRunsParalelo {
+
+    /**
+     * Bloco em trânsito pelo pipeline
+     */
+    private static class Bloco {
+        final long[] valores;
+        int quantidade;
+        long inicio; // trecho da entrada lido no bloco (para o manifesto)
+        long fim;
+
+        Bloco(int capacidade) {
+            this.valores = new long[capacidade];
+        }
+    }
+
+    /**
+     * Quantidade de blocos em memória ao mesmo tempo para o número de threads de ordenação:
+     * um bloco para cada thread, mais um sendo lido e um sendo gravado.
+     */
+    public static int blocosEmVoo(int threadsOrdenacao) {
+        return threadsOrdenacao + 2;
+    }
+
+    /**
+     * Lê a entrada até o fim e gera os runs ordenados usando o pipeline
+     *
+     * @param leitor leitor da entrada (não é fechado aqui)
+     * @param capacidadeBloco quantidade de números por bloco
+     *                        (ExecucaoOrdenacao.capacidadeDoBloco com blocosEmVoo blocos)
+     * @param threadsOrdenacao quantidade de threads que ordenam blocos em paralelo
+     * @param execucao ordenação que ordena e salva cada bloco
+     * @return arquivos temporários na ordem em que os blocos foram lidos
+     */
+    public static List<File> gerar(LeitorNumerosStreaming leitor, int capacidadeBloco,
+                                   int threadsOrdenacao, ExecucaoOrdenacao execucao) throws IOException {
+        int totalBlocos = blocosEmVoo(threadsOrdenacao);
+        BlockingQueue<Bloco> livres = new ArrayBlockingQueue<>(totalBlocos);
+        AtomicReference<Throwable> falha = new AtomicReference<>();
+        int blocosCriados = 0;
+        long bytesPorBloco = (long) capacidadeBloco * execucao.bytesPorElementoBloco();
+
+        ExecutorService ordenadores = Executors.newFixedThreadPool(threadsOrdenacao, fabricaThreads("ordenador"));
+        ExecutorService escritor = Executors.newSingleThreadExecutor(fabricaThreads("escritor-runs"));
+        List<CompletableFuture<File>> runs = new ArrayList<>();
+
+        try {
+            // cada bloco começa onde o anterior terminou (os separadores entre eles ficam no anterior)
+            long fimBloco = leitor.bytesConsumidos();
+            while (leitor.temProximo()) {
+                // Reaproveita um bloco devolvido pela escrita; só aloca enquanto não atingiu o limite
+                Bloco bloco = livres.poll();
+                if (bloco == null && blocosCriados < totalBlocos) {
+                    execucao.reservar(bytesPorBloco, "os blocos de ordenação");
+                    blocosCriados++;
+                    bloco = new Bloco(capacidadeBloco);
+                } else if (bloco == null) {
+                    bloco = livres.take();
+                }
+                if (falha.get() != null) {
+                    throw causaComoIOException(new CompletionException(falha.get()));
+                }
+
+                long inicio = System.nanoTime();
+                bloco.inicio = fimBloco;
+                int quantidade = 0;
+                while (quantidade < bloco.valores.length && leitor.temProximo()) {
+                    bloco.valores[quantidade++] = leitor.proximo();
+                }
+                bloco.quantidade = quantidade;
+                bloco.fim = fimBloco = leitor.bytesConsumidos();
+                execucao.metricas().registrar(FaseOrdenacao.LEITURA, inicio);
+                execucao.metricas().leitura(fimBloco);
+
+                final Bloco emVoo = bloco;
+                CompletableFuture<File> run = CompletableFuture
+                        .runAsync(() -> execucao.ordenarBloco(emVoo.valores, emVoo.quantidade), ordenadores)
+                        .thenApplyAsync(nada -> salvar(emVoo, execucao), escritor);
+                run.whenComplete((arquivoRun, erro) -> {
+                    if (erro != null) falha.compareAndSet(null, erro);
+                    livres.offer(emVoo); // devolve o bloco ao pool, mesmo em caso de erro
+                });
+                runs.add(run);
+            }
+
+            List<File> arquivos = new ArrayList<>(runs.size());
+            for (CompletableFuture<File> run : runs) {
+                arquivos.add(run.join());
+            }
+            return arquivos;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("geração de runs interrompida.");
+        } catch (CompletionException e) {
+            throw causaComoIOException(e);
+        } finally {
+            // numa falha, tarefas ainda em andamento usam os blocos e criam runs: a reserva só é
+            // devolvida (e o chamador só apaga os temporários) depois que as duas filas pararam
+            encerrar(ordenadores);
+            encerrar(escritor);
+            execucao.liberar(blocosCriados * bytesPorBloco);
+        }
+    }
+
+    // estágio de escrita: grava o bloco já ordenado em um run temporário
+    private static File salvar(Bloco bloco, ExecucaoOrdenacao execucao) {
+        try {
+            return execucao.salvarRun(bloco.valores, bloco.quantidade, bloco.inicio, bloco.fim);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static IOException causaComoIOException(CompletionException e) {
+        Throwable causa = e.getCause();
+        while (causa instanceof CompletionException && causa.getCause() != null) {
+            causa = causa.getCause();
+        }
+        if (causa instanceof UncheckedIOException) return ((UncheckedIOException) causa).getCause();
+        if (causa instanceof IOException) return (IOException) causa;
+        if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+        if (causa instanceof Error) throw (Error) causa;
+        return new IOException(causa);
+    }
+
+    /**
+     * Cancela as tarefas pendentes do pool e espera as que já começaram terminarem. Uma
+     * interrupção durante a espera não a encurta: ela é refeita no fim, para o chamador.
+     */
+    static void encerrar(ExecutorService pool) {
+        pool.shutdownNow();
+        boolean interrompida = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.MINUTES)) break;
+            } catch (InterruptedException e) {
+                interrompida = true;
+            }
+        }
+        if (interrompida) Thread.currentThread().interrupt();
+    }
+
+    static ThreadFactory fabricaThreads(String nome) {
+        AtomicInteger contador = new AtomicInteger();
+        return tarefa -> {
+            Thread thread = new Thread(tarefa, nome + "-" + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Ordenação por contagem para entradas com intervalo pequeno de valores
+ * (como os 0-9 gerados pelo GerarDadosRefac).
+ *
+ * Em uma única passada pela entrada o histograma conta as ocorrências de cada valor e,
+ * ao mesmo tempo, detecta o intervalo: o vetor de contagens cresce conforme aparecem novos
+ * mínimos e máximos, até o limite de posições informado. Se a entrada inteira couber,
+ * a saída ordenada sai direto das contagens, sem runs temporários nem merge: O(n) de I/O
+ * e O(intervalo) de memória.
+ *
+ * Se algum valor estourar o limite, a contagem para ali: o valor é devolvido ao leitor
+ * e o que já foi contado vira o primeiro run (já está ordenado), então nada é relido.
+ */
+class HistogramaContagem {
+    public static final int LIMITE_PADRAO = 1 << 20; // 1M posições (8MB de contagens)
+
+    private final int limite;   // máximo de posições do vetor de contagens
+    private long[] contagens = new long[0];
+    private long base;          // valor correspondente a contagens[0]
+    private long minimo;
+    private long maximo;
+    private long quantidade;
+
+    public HistogramaContagem(int limite) {
+        this.limite = Math.max(1, limite);
+    }
+
+    /**
+     * Conta os valores da entrada até o fim ou até o primeiro valor que não cabe no limite
+     * (que é devolvido ao leitor, para a próxima fase continuar dali)
+     *
+     * @return o histograma; se leitor.temProximo() ainda for true, a contagem foi interrompida
+     */
+    public static HistogramaContagem contar(LeitorNumerosStreaming leitor, int limite) throws IOException {
+        HistogramaContagem histograma = new HistogramaContagem(limite);
+        while (leitor.temProximo()) {
+            long valor = leitor.proximo();
+            if (!histograma.adicionar(valor)) {
+                leitor.devolver(valor);
+                break;
+            }
+        }
+        return histograma;
+    }
+
+    /**
+     * @return false (sem alterar nada) se o valor deixaria o intervalo maior que o limite
+     */
+    public boolean adicionar(long valor) {
+        // valor >= base antes da subtração: assim a diferença, vista sem sinal, nunca dá a volta
+        if (quantidade > 0 && valor >= base && Long.compareUnsigned(valor - base, contagens.length) < 0) {
+            contagens[(int) (valor - base)]++;
+            quantidade++;
+            if (valor < minimo) minimo = valor;
+            if (valor > maximo) maximo = valor;
+            return true;
+        }
+
+        long novoMinimo = quantidade == 0 ? valor : Math.min(minimo, valor);
+        long novoMaximo = quantidade == 0 ? valor : Math.max(maximo, valor);
+        // comparação sem sinal: a diferença pode passar de Long.MAX_VALUE
+        if (Long.compareUnsigned(novoMaximo - novoMinimo, limite) >= 0) {
+            return false;
+        }
+        crescer(novoMinimo, novoMaximo, valor < base);
+
+        contagens[(int) (valor - base)]++;
+        quantidade++;
+        minimo = novoMinimo;
+        maximo = novoMaximo;
+        return true;
+    }
+
+    /**
+     * Realoca o vetor de contagens para cobrir [novoMinimo, novoMaximo], dobrando de tamanho
+     * (até o limite) para que o crescimento saia amortizado. A folga fica do lado que cresceu.
+     */
+    private void crescer(long novoMinimo, long novoMaximo, boolean paraBaixo) {
+        int necessario = (int) (novoMaximo - novoMinimo + 1);
+        int novoTamanho = (int) Math.min(limite, Math.max(necessario, Math.max(16L, 2L * contagens.length)));
+        long novaBase = novoMinimo;
+        if (paraBaixo) {
+            long folga = novoTamanho - necessario;
+            novaBase = novoMinimo - folga;
+            if (novaBase > novoMinimo) novaBase = novoMinimo; // estouro perto de Long.MIN_VALUE
+        }
+
+        long[] novas = new long[novoTamanho];
+        if (quantidade > 0) {
+            int deslocamento = (int) (base - novaBase);
+            int usado = (int) (maximo - base + 1);
+            System.arraycopy(contagens, (int) (minimo - base), novas,
+                    deslocamento + (int) (minimo - base), usado - (int) (minimo - base));
+        }
+        contagens = novas;
+        base = novaBase;
+    }
+
+    public long quantidade() {
+        return quantidade;
+    }
+
+    public long minimo() {
+        return minimo;
+    }
+
+    public long maximo() {
+        return maximo;
+    }
+
+    /** memória do vetor de contagens, em bytes */
+    public long memoria() {
+        return (long) contagens.length * Long.BYTES;
+    }
+
+    /**
+     * Escreve a saída ordenada (cada valor é convertido para texto uma única vez), com as
+     * repetições combinadas conforme a agregação
+     *
+     * @return quantidade de valores (ou de pares valor/contagem) escritos
+     */
+    public long gravar(EscritorSaida escritor, ConfiguracaoOrdenacao.Agregacao agregacao) throws IOException {
+        if (agregacao == ConfiguracaoOrdenacao.Agregacao.NENHUMA) {
+            for (int i = 0; i < contagens.length; i++) {
+                escritor.escrever(base + i, contagens[i]);
+            }
+            return quantidade;
+        }
+        long distintos = 0;
+        for (int i = 0; i < contagens.length; i++) {
+            if (contagens[i] == 0) continue;
+            if (agregacao == ConfiguracaoOrdenacao.Agregacao.CONTAGEM) {
+                escritor.escreverContagem(base + i, contagens[i]);
+            } else {
+                escritor.escrever(base + i);
+            }
+            distintos++;
+        }
+        return distintos;
+    }
+
+    /**
+     * Grava o que já foi contado como um run ordenado (usado quando a contagem foi interrompida)
+     *
+     * @param arquivoRun destino do run
+     * @param mapeado se o run é gravado através de arquivos mapeados em memória
+     * @param agregacao como as repetições são combinadas no run
+     * @param codec codificação do run (escolhida para minimo() e maximo())
+     * @param arena de onde vem o buffer de escrita
+     */
+    public void gravarRun(File arquivoRun, boolean mapeado, ConfiguracaoOrdenacao.Agregacao agregacao,
+                          CodecRun codec, ArenaBuffers arena) throws IOException {
+        try (EscritorRun escritor = new EscritorRun(arquivoRun, codec, minimo, maximo, mapeado, agregacao, arena)) {
+            for (int i = 0; i < contagens.length; i++) {
+                if (contagens[i] > 0) escritor.escrever(base + i, contagens[i]);
+            }
+        }
+    }
+
+    /**
+     * Os valores contados, em ordem, como fonte de um merge (usado pelo IteradorOrdenado
+     * quando a contagem cobre a entrada inteira)
+     *
+     * @param agrupada cada valor sai uma única vez, com as ocorrências em contagem()
+     */
+    public FonteRunOrdenada fonte(boolean agrupada) {
+        return new FonteRunOrdenada() {
+            private int posicao = -1;
+            private long restantes; // repetições que ainda faltam do valor atual
+
+            {
+                avancar();
+            }
+
+            private void avancar() {
+                while (restantes == 0 && ++posicao < contagens.length) {
+                    restantes = contagens[posicao];
+                }
+            }
+
+            @Override
+            public boolean vazio() {
+                return restantes == 0;
+            }
+
+            @Override
+            public long lerProxima() {
+                return base + posicao;
+            }
+
+            @Override
+            public long contagem() {
+                return agrupada ? restantes : 1;
+            }
+
+            @Override
+            public long remover() {
+                long valor = base + posicao;
+                restantes = agrupada ? 0 : restantes - 1;
+                avancar();
+                return valor;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Caminho rápido para ordenação em memória (QuickSortThreeWay): se o intervalo de valores
+     * do array couber no limite e não for maior que o próprio array, ordena por contagem.
+     *
+     * @return false se o array não foi alterado (intervalo grande demais)
+     */
+    public static boolean ordenarSeCouber(int[] arr, int limite) {
+        if (arr.length < 2) return true;
+        int minimo = arr[0], maximo = arr[0];
+        for (int valor : arr) {
+            if (valor < minimo) minimo = valor;
+            if (valor > maximo) maximo = valor;
+        }
+        long intervalo = (long) maximo - minimo + 1;
+        if (intervalo > limite || intervalo > arr.length) return false;
+
+        int[] contagens = new int[(int) intervalo];
+        for (int valor : arr) {
+            contagens[valor - minimo]++;
+        }
+        int posicao = 0;
+        for (int i = 0; i < contagens.length; i++) {
+            Arrays.fill(arr, posicao, posicao + contagens[i], minimo + i);
+            posicao += contagens[i];
+        }
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Índice esparso gravado pelo EscritorRun no fim de cada run (CabecalhoRun.FLAG_INDICE).
+ *
+ * A cada INTERVALO valores o escritor anota um ponto de acesso: o valor, a posição no arquivo
+ * onde a codificação dele começa, o valor anterior (base dos codecs com delta) e quantos
+ * valores vêm antes dele. Com isso um run comprimido pode ser lido a partir do meio
+ * (BufferArquivoBinario.abrirNoPonto) e as chaves dos pontos formam uma amostra uniforme
+ * do run, da qual o MergeParticionado tira os separadores das partições.
+ *
+ * Formato, logo depois do último valor (little-endian):
+ * <pre>
+ *   n x (long chave, long posicao, long anterior, long indice)
+ *   int n
+ *   int marcador "ESI1"
+ * </pre>
+ */
+final class IndiceRun {
+    static final int INTERVALO = 8192; // múltiplo de CodecRun.VALORES_POR_BLOCO: cada ponto abre um bloco
+    static final int MARCADOR = 0x31495345; // "ESI1" lido em little-endian
+    static final int BYTES_POR_PONTO = 4 * Long.BYTES;
+    static final int TAMANHO_RODAPE = 2 * Integer.BYTES;
+
+    final CabecalhoRun cabecalho;
+    final long[] chaves;
+    final long[] posicoes;
+    final long[] anteriores;
+    final long[] indices;
+
+    private IndiceRun(CabecalhoRun cabecalho, int pontos) {
+        this.cabecalho = cabecalho;
+        this.chaves = new long[pontos];
+        this.posicoes = new long[pontos];
+        this.anteriores = new long[pontos];
+        this.indices = new long[pontos];
+    }
+
+    /**
+     * Lê o cabeçalho e o índice de um run
+     *
+     * @return o índice, ou null se o run não tiver um
+     */
+    static IndiceRun ler(File arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            CabecalhoRun cabecalho = CabecalhoRun.ler(lerCompleto(canal, 0, CabecalhoRun.TAMANHO, arquivo));
+            if ((cabecalho.flags & CabecalhoRun.FLAG_INDICE) == 0) return null;
+
+            long tamanho = canal.size();
+            ByteBuffer rodape = lerCompleto(canal, tamanho - TAMANHO_RODAPE, TAMANHO_RODAPE, arquivo);
+            int pontos = rodape.getInt();
+            if (rodape.getInt() != MARCADOR || pontos < 0
+                    || (long) pontos * BYTES_POR_PONTO > tamanho - CabecalhoRun.TAMANHO - TAMANHO_RODAPE) {
+                throw new IOException("índice de run inválido: " + arquivo);
+            }
+
+            IndiceRun indice = new IndiceRun(cabecalho, pontos);
+            ByteBuffer dados = lerCompleto(canal, tamanho - TAMANHO_RODAPE - (long) pontos * BYTES_POR_PONTO,
+                    pontos * BYTES_POR_PONTO, arquivo);
+            for (int i = 0; i < pontos; i++) {
+                indice.chaves[i] = dados.getLong();
+                indice.posicoes[i] = dados.getLong();
+                indice.anteriores[i] = dados.getLong();
+                indice.indices[i] = dados.getLong();
+            }
+            return indice;
+        }
+    }
+
+    private static ByteBuffer lerCompleto(FileChannel canal, long posicao, int bytes, File arquivo) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (posicao < 0 || canal.read(buffer, posicao + buffer.position()) < 0) {
+                throw new EOFException("run truncado: " + arquivo);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    int pontos() {
+        return chaves.length;
+    }
+
+    /**
+     * Último ponto cuja chave é menor que a informada: lendo a partir dele, nenhum valor
+     * maior ou igual à chave fica para trás
+     *
+     * @return índice do ponto, ou -1 se o run precisa ser lido do início
+     */
+    int pontoAntes(long chave) {
+        int inicio = 0, fim = chaves.length - 1, resposta = -1;
+        while (inicio <= fim) {
+            int meio = (inicio + fim) >>> 1;
+            if (chaves[meio] < chave) {
+                resposta = meio;
+                inicio = meio + 1;
+            } else {
+                fim = meio - 1;
+            }
+        }
+        return resposta;
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Saída ordenada sob demanda (ExternalSorter.iterar): cada nextLong() retira o próximo valor
+ * do merge final, sem gravar o arquivo de saída. Quem consome pode parar a qualquer momento;
+ * close() fecha os runs, apaga os temporários e libera a memória reservada.
+ *
+ * Os valores são as chaves internas do TipoChave configurado: para INT e LONG, o próprio
+ * número; para os outros tipos, texto(chave) devolve o valor como ele apareceria na saída.
+ * Com agregação cada valor sai uma única vez e contagem() dá as ocorrências dele.
+ *
+ * Quando o último valor é retirado os recursos são liberados sozinhos, mas um consumo
+ * interrompido precisa de close() (ou de try-with-resources). Erros de leitura dos runs
+ * chegam como UncheckedIOException. Não é seguro para uso por várias threads.
+ */
+public final class IteradorOrdenado implements PrimitiveIterator.OfLong, Closeable {
+
+    /** o que a ordenação faz quando o iterador é fechado */
+    interface Fechamento {
+        void fechar(long retirados) throws IOException;
+    }
+
+    private final ArvorePerdedores arvore;
+    private final TipoChave tipo;
+    private final boolean agrupar;
+    private final MetricasOrdenacao metricas;
+    private final Fechamento fechamento;
+    private long retirados;
+    private long contagem = 1; // ocorrências do último valor retirado
+    private boolean fechado;
+
+    IteradorOrdenado(ArvorePerdedores arvore, TipoChave tipo, boolean agrupar, MetricasOrdenacao metricas,
+                     Fechamento fechamento) {
+        this.arvore = arvore;
+        this.tipo = tipo;
+        this.agrupar = agrupar;
+        this.metricas = metricas;
+        this.fechamento = fechamento;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (fechado) return false;
+        if (!arvore.vazia()) return true;
+        fecharSemExcecao();
+        return false;
+    }
+
+    @Override
+    public long nextLong() {
+        if (!hasNext()) throw new NoSuchElementException();
+        try {
+            long valor;
+            if (agrupar) {
+                valor = arvore.removerAgrupado();
+                contagem = arvore.contagemRemovida();
+            } else {
+                valor = arvore.remover();
+            }
+            if ((++retirados & MetricasOrdenacao.MASCARA_PROGRESSO) == 0) {
+                metricas.gravados(retirados);
+            }
+            return valor;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Os valores restantes como stream sequencial e ordenado; fechar o stream fecha o iterador
+     */
+    public LongStream stream() {
+        Spliterator.OfLong valores = Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL);
+        return StreamSupport.longStream(valores, false).onClose(this::fecharSemExcecao);
+    }
+
+    /** valores retirados até agora */
+    public long retirados() {
+        return retirados;
+    }
+
+    /**
+     * Ocorrências na entrada do último valor retirado (1 sem agregação)
+     */
+    public long contagem() {
+        return contagem;
+    }
+
+    /**
+     * Representação em texto de uma chave, igual à do formato de saída TEXTO
+     */
+    public String texto(long chave) {
+        return tipo.formatar(chave);
+    }
+
+    public MetricasOrdenacao metricas() {
+        return metricas;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fechado) return;
+        fechado = true;
+        try {
+            arvore.close();
+        } finally {
+            fechamento.fechar(retirados);
+        }
+    }
+
+    private void fecharSemExcecao() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tokenizador de números inteiros separados por vírgula que lê a entrada em pedaços,
+ * direto de um canal ({@link ReadableByteChannel}) para um {@link ByteBuffer}.
+ *
+ * Diferente de readLine() + split(", "), nunca mantém a entrada inteira em memória:
+ * o consumo de heap fica limitado ao tamanho do buffer de leitura, independente do
+ * tamanho do arquivo. Os dígitos são convertidos direto dos bytes ASCII, sem passar
+ * por decodificação de charset nem por objetos String.
+ *
+ * No modo mapeado ({@link #abrirMapeado}) o arquivo é mapeado em janelas com FileChannel.map
+ * e os dígitos são lidos direto do MappedByteBuffer, sem cópia para um buffer intermediário:
+ * o cache de páginas do sistema operacional faz o papel do buffer.
+ *
+ * Gramática do texto: cada número é um sinal opcional ('+' ou '-') seguido de dígitos
+ * decimais (INT e LONG) ou o token que o DOUBLE e o BYTES aceitam; todo token é convertido
+ * por TipoChave.deTexto.
+ * Entre dois números vale qualquer sequência de espaços, tabulações e quebras de linha com
+ * no máximo uma vírgula; duas vírgulas seguidas (ou uma vírgula antes do primeiro número)
+ * são um número vazio e a leitura falha com IOException, como o Integer.parseInt("") do
+ * antigo split(", "). Uma vírgula depois do último número é aceita.
+ *
+ * O leitor devolve chaves no formato interno do {@link TipoChave} escolhido na abertura
+ * (por padrão LONG, o próprio número). No formato {@link FormatoArquivo#BINARIO} não há
+ * tokens: cada valor ocupa a largura do tipo, em little-endian.
+ */
+class LeitorNumerosStreaming implements Closeable {
+    public static final int TAMANHO_BUFFER_PADRAO = 64 * 1024;        // 64KB por leitura do canal
+    public static final int TAMANHO_JANELA_MAPEADA = 64 * 1024 * 1024; // 64MB por janela mapeada
+    static final int TAMANHO_MAXIMO_TOKEN = 64;                        // tokens convertidos por TipoChave.deTexto
+
+    private final ReadableByteChannel canal; // origem dos bytes
+    private ByteBuffer buffer;               // janela atual da entrada
+    private boolean fimDoCanal;              // indica se o canal já foi totalmente consumido
+    private final boolean mapeado;           // janelas mapeadas em vez de leituras no buffer
+    private long posicaoMapeamento;          // início da próxima janela a mapear
+    private long bytesCarregados;            // bytes já trazidos do canal para o buffer
+    private boolean temDevolvido;            // há um número devolvido esperando a próxima leitura
+    private long devolvido;
+    private long inicioUltimo;               // posição do início do último valor lido
+    private long inicioDevolvido;            // posição do início do número devolvido
+    private TipoChave tipo = TipoChave.LONG; // conversão de cada valor para a chave
+    private boolean binario;                 // valores crus em vez de texto
+    private final byte[] token = new byte[TAMANHO_MAXIMO_TOKEN]; // bytes do token atual
+    private boolean virgulaPendente = true;  // vírgula desde o último número (no início vale como uma)
+
+    public LeitorNumerosStreaming(ReadableByteChannel canal, int tamanhoBuffer) {
+        this.canal = canal;
+        this.buffer = ByteBuffer.allocate(tamanhoBuffer);
+        this.buffer.flip(); // começa vazio, o primeiro acesso dispara a leitura
+        this.mapeado = false;
+    }
+
+    private LeitorNumerosStreaming(FileChannel canal) {
+        this.canal = canal;
+        this.buffer = ByteBuffer.allocate(0); // começa vazio, o primeiro acesso mapeia a primeira janela
+        this.mapeado = true;
+    }
+
+    /**
+     * Abre o arquivo para leitura sequencial com o buffer padrão
+     */
+    public static LeitorNumerosStreaming abrir(File arquivo) throws IOException {
+        FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ);
+        return new LeitorNumerosStreaming(canal, TAMANHO_BUFFER_PADRAO);
+    }
+
+    /**
+     * Abre o arquivo no modo mapeado em memória
+     */
+    public static LeitorNumerosStreaming abrirMapeado(File arquivo) throws IOException {
+        return new LeitorNumerosStreaming(FileChannel.open(arquivo.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * Abre o arquivo no modo escolhido
+     */
+    public static LeitorNumerosStreaming abrir(File arquivo, boolean mapeado) throws IOException {
+        return mapeado ? abrirMapeado(arquivo) : abrir(arquivo);
+    }
+
+    /**
+     * Abre o arquivo no modo escolhido, convertendo cada valor para o tipo de chave informado
+     *
+     * @param formato formato da entrada (TEXTO e LINHAS são lidos da mesma forma)
+     */
+    public static LeitorNumerosStreaming abrir(File arquivo, boolean mapeado, TipoChave tipo,
+                                               FormatoArquivo formato) throws IOException {
+        LeitorNumerosStreaming leitor = abrir(arquivo, mapeado);
+        leitor.tipo = tipo;
+        leitor.binario = formato == FormatoArquivo.BINARIO;
+        return leitor;
+    }
+
+    /**
+     * Começa a leitura na posição informada em vez do início do arquivo (só antes da
+     * primeira leitura). A posição precisa estar entre dois valores, como as devolvidas por
+     * {@link #bytesConsumidos()}.
+     */
+    public void posicionar(long posicao) throws IOException {
+        if (mapeado) {
+            posicaoMapeamento = posicao;
+        } else if (canal instanceof FileChannel) {
+            ((FileChannel) canal).position(posicao);
+        } else {
+            throw new IOException("a entrada não permite posicionar a leitura.");
+        }
+        bytesCarregados = posicao;
+        virgulaPendente = false; // a posição fica logo depois de um número
+    }
+
+    /**
+     * Garante que existem bytes disponíveis no buffer, lendo o próximo pedaço do canal se preciso
+     *
+     * @return false se a entrada terminou
+     */
+    private boolean garantirDados() throws IOException {
+        if (buffer.hasRemaining()) return true;
+        if (fimDoCanal) return false;
+        if (mapeado) return mapearProximaJanela();
+
+        buffer.clear();
+        int lidos = 0;
+        while (lidos == 0) {
+            lidos = canal.read(buffer);
+        }
+        buffer.flip();
+        if (lidos < 0) {
+            fimDoCanal = true;
+            return false;
+        }
+        bytesCarregados += lidos;
+        return true;
+    }
+
+    // troca a janela atual (já consumida) pela seguinte; a anterior é liberada pelo GC
+    private boolean mapearProximaJanela() throws IOException {
+        FileChannel arquivo = (FileChannel) canal;
+        long tamanhoJanela = Math.min(TAMANHO_JANELA_MAPEADA, arquivo.size() - posicaoMapeamento);
+        if (tamanhoJanela <= 0) {
+            fimDoCanal = true;
+            return false;
+        }
+        buffer = arquivo.map(FileChannel.MapMode.READ_ONLY, posicaoMapeamento, tamanhoJanela);
+        posicaoMapeamento += tamanhoJanela;
+        bytesCarregados += tamanhoJanela;
+        return true;
+    }
+
+    private static boolean separador(byte b) {
+        return b == ',' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * Avança sobre os separadores e indica se ainda há algum número na entrada
+     *
+     * @throws IOException se houver duas vírgulas sem um número entre elas
+     */
+    public boolean temProximo() throws IOException {
+        if (temDevolvido) return true;
+        if (binario) return garantirDados();
+        while (garantirDados()) {
+            byte b = buffer.get(buffer.position());
+            if (!separador(b)) {
+                return true;
+            }
+            if (b == ',') {
+                if (virgulaPendente) {
+                    throw new IOException("número malformado na entrada: valor vazio antes da vírgula.");
+                }
+                virgulaPendente = true;
+            }
+            buffer.position(buffer.position() + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Lê o próximo valor da entrada, já convertido para a chave do tipo do leitor
+     *
+     * @return a chave lida (para INT e LONG, o próprio número)
+     */
+    public long proximo() throws IOException {
+        if (temDevolvido) {
+            temDevolvido = false;
+            return devolvido;
+        }
+        if (!temProximo()) {
+            throw new EOFException("fim da entrada.");
+        }
+        inicioUltimo = bytesCarregados - buffer.remaining();
+        virgulaPendente = false;
+        if (binario) {
+            return tipo.deBinario(lerBinario(tipo.largura));
+        }
+        return tipo.deTexto(token, 0, lerToken());
+    }
+
+    // copia o token atual para o array token e devolve o tamanho
+    private int lerToken() throws IOException {
+        int tamanho = 0;
+        while (garantirDados()) {
+            byte b = buffer.get(buffer.position());
+            if (separador(b)) break;
+            if (tamanho == token.length) {
+                throw new IOException("valor com mais de " + TAMANHO_MAXIMO_TOKEN + " bytes na entrada.");
+            }
+            token[tamanho++] = b;
+            buffer.position(buffer.position() + 1);
+        }
+        return tamanho;
+    }
+
+    // lê um valor cru de largura bytes em little-endian (pode atravessar o fim do buffer)
+    private long lerBinario(int largura) throws IOException {
+        if (buffer.remaining() >= largura) {
+            return largura == Integer.BYTES
+                    ? Integer.reverseBytes(buffer.getInt())
+                    : Long.reverseBytes(buffer.getLong());
+        }
+        long bits = 0;
+        for (int i = 0; i < largura; i++) {
+            if (!garantirDados()) {
+                throw new EOFException("valor binário incompleto no fim da entrada.");
+            }
+            bits |= (buffer.get() & 0xFFL) << (8 * i);
+        }
+        return largura == Integer.BYTES ? (int) bits : bits;
+    }
+
+    /**
+     * Devolve um número já lido: ele será o próximo retornado por {@link #proximo()}.
+     * Permite que uma fase interrompa a leitura e outra continue do mesmo ponto.
+     */
+    public void devolver(long valor) {
+        if (temDevolvido) {
+            throw new IllegalStateException("já existe um número devolvido.");
+        }
+        devolvido = valor;
+        inicioDevolvido = inicioUltimo;
+        temDevolvido = true;
+    }
+
+    /**
+     * Bytes da entrada já consumidos (para o progresso da leitura; não conta os bytes
+     * carregados no buffer e ainda não lidos nem um número devolvido). A posição fica
+     * sempre entre dois valores, então também serve para {@link #posicionar}.
+     */
+    public long bytesConsumidos() {
+        if (temDevolvido) return inicioDevolvido;
+        return bytesCarregados - buffer.remaining();
+    }
+
+    public void close() throws IOException {
+        canal.close();
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Divide a entrada da ordenação de registros em registros (ver FormatoRegistro), lendo em
+ * pedaços de um FileChannel como o LeitorNumerosStreaming.
+ *
+ * Cada registro é exposto sem cópia, como um trecho do buffer (dados, inicio, tamanho), válido
+ * até a próxima chamada a proximo(). Um registro maior que o buffer faz o buffer dobrar.
+ *
+ * Nas linhas o registro não inclui o final de linha; o da primeira linha ("\n" ou "\r\n")
+ * fica em terminador(), para a saída terminar as linhas do mesmo jeito.
+ */
+class LeitorRegistros implements Closeable {
+    static final byte[] LF = {'\n'};
+    static final byte[] CRLF = {'\r', '\n'};
+
+    private final FileChannel canal;
+    private final boolean emLinhas;
+    private ByteBuffer buffer;   // em modo de leitura: position() é o início do próximo registro
+    private boolean fimDoCanal;
+    private long bytesCarregados;
+    private int inicio;          // registro atual no array do buffer
+    private int tamanho;
+    private byte[] terminador;   // final da primeira linha (null até ela terminar)
+
+    LeitorRegistros(File arquivo, FormatoRegistro formato) throws IOException {
+        this.canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ);
+        this.emLinhas = formato.emLinhas();
+        this.buffer = ByteBuffer.allocate(LeitorNumerosStreaming.TAMANHO_BUFFER_PADRAO).order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.flip(); // começa vazio, a primeira leitura carrega o primeiro pedaço
+    }
+
+    /**
+     * Avança para o próximo registro
+     *
+     * @return false se a entrada terminou
+     * @throws IOException se o último registro binário estiver incompleto
+     */
+    boolean proximo() throws IOException {
+        return emLinhas ? proximaLinha() : proximoPrefixado();
+    }
+
+    // uma linha sem o "\n" (e sem o "\r" antes dele); a última pode não ter "\n"
+    private boolean proximaLinha() throws IOException {
+        int procurados = 0; // bytes a partir de position() já sabidamente sem "\n"
+        while (true) {
+            byte[] dados = buffer.array();
+            int de = buffer.position();
+            for (int i = de + procurados; i < buffer.limit(); i++) {
+                if (dados[i] == '\n') {
+                    buffer.position(i + 1);
+                    boolean crlf = i > de && dados[i - 1] == '\r';
+                    if (terminador == null) terminador = crlf ? CRLF : LF;
+                    return registro(de, crlf ? i - 1 : i);
+                }
+            }
+            procurados = buffer.remaining();
+            if (!carregar()) {
+                // carregar pode ter movido os bytes restantes para o início do buffer
+                if (!buffer.hasRemaining()) return false;
+                int ultima = buffer.position();
+                buffer.position(buffer.limit());
+                int fim = buffer.array()[buffer.limit() - 1] == '\r' ? buffer.limit() - 1 : buffer.limit();
+                return registro(ultima, Math.max(ultima, fim));
+            }
+        }
+    }
+
+    private boolean proximoPrefixado() throws IOException {
+        if (!garantir(Integer.BYTES)) {
+            if (!buffer.hasRemaining()) return false;
+            throw new IOException("registro incompleto no fim da entrada.");
+        }
+        int tamanhoRegistro = buffer.getInt(buffer.position());
+        if (tamanhoRegistro < 0 || tamanhoRegistro > Integer.MAX_VALUE - 16) {
+            throw new IOException("tamanho de registro inválido: " + tamanhoRegistro);
+        }
+        if (!garantir(Integer.BYTES + tamanhoRegistro)) {
+            throw new IOException("registro incompleto no fim da entrada.");
+        }
+        int de = buffer.position() + Integer.BYTES;
+        buffer.position(de + tamanhoRegistro);
+        return registro(de, de + tamanhoRegistro);
+    }
+
+    private boolean registro(int de, int ate) {
+        inicio = de;
+        tamanho = ate - de;
+        return true;
+    }
+
+    // garante bytes disponíveis a partir de position(); false se a entrada acabar antes
+    private boolean garantir(int bytes) throws IOException {
+        while (buffer.remaining() < bytes) {
+            if (!carregar()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Traz mais um pedaço do canal, preservando os bytes ainda não consumidos (movidos para o
+     * início do buffer, que dobra se estiver cheio)
+     *
+     * @return false se o canal já terminou
+     */
+    private boolean carregar() throws IOException {
+        if (fimDoCanal) return false;
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            ByteBuffer maior = ByteBuffer.allocate(buffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            maior.put(buffer);
+            buffer = maior;
+        }
+        int lidos = 0;
+        while (lidos == 0) {
+            lidos = canal.read(buffer);
+        }
+        buffer.flip();
+        if (lidos < 0) {
+            fimDoCanal = true;
+            return false;
+        }
+        bytesCarregados += lidos;
+        return true;
+    }
+
+    /**
+     * Final de linha da entrada: o da primeira linha terminada, ou "\n" se nenhuma terminou
+     */
+    byte[] terminador() {
+        return terminador != null ? terminador : LF;
+    }
+
+    /** array onde está o registro atual */
+    byte[] dados() {
+        return buffer.array();
+    }
+
+    int inicio() {
+        return inicio;
+    }
+
+    int tamanho() {
+        return tamanho;
+    }
+
+    /** bytes da entrada até o fim do registro atual */
+    long bytesConsumidos() {
+        return bytesCarregados - buffer.remaining();
+    }
+
+    public void close() throws IOException {
+        canal.close();
+    }
+}
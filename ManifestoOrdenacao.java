@@ -0,0 +1,388 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Diretório de trabalho durável de uma ordenação (ExternalSorter.Builder.diretorioTrabalho):
+ * os runs ficam nele em vez do diretório temporário e cada etapa concluída é anotada em um
+ * manifesto, para que uma ordenação interrompida (queda do processo, falta de disco) continue
+ * de onde parou em vez de reler a entrada do começo.
+ *
+ * O manifesto é um arquivo de texto só de acréscimos, uma linha por evento:
+ * <pre>
+ *   versao 1
+ *   entrada TAMANHO MODIFICACAO TIPO FORMATO AGREGACAO CAMINHO
+ *   run ARQUIVO INICIO FIM QUANTIDADE BYTES CRC
+ *   formacao
+ *   mesclagem ARQUIVO QUANTIDADE BYTES CRC ENTRADA1/ENTRADA2/...
+ * </pre>
+ * Cada run é gravado em disco (force) e tem o CRC32C calculado antes de a linha ser acrescentada,
+ * e a linha também é gravada em disco antes de a etapa seguinte apagar alguma coisa. Uma linha
+ * sem quebra no final (queda no meio da escrita) é ignorada. INICIO e FIM são as posições da
+ * entrada lidas pelo bloco do run; os runs da seleção por substituição não correspondem a um
+ * trecho da entrada e são gravados com -1, valendo só depois da linha formacao.
+ *
+ * Na abertura o manifesto é validado: se a entrada (caminho, tamanho, data de modificação),
+ * o tipo de chave, o formato ou a agregação mudaram, tudo é descartado. Cada run vivo (não consumido por
+ * uma mesclagem) precisa existir com o tamanho e o CRC anotados. Antes da formação terminar,
+ * a retomada continua depois da maior sequência de runs contíguos válidos a partir do início
+ * da entrada; depois, um run inválido só é contornado se ainda não houve mesclagens (senão
+ * recomeça do zero). O manifesto é então reescrito só com o estado válido (arquivo novo
+ * trocado com ATOMIC_MOVE) e os runs que ele não cita são apagados.
+ *
+ * O diretório pertence à ordenação: uma trava impede dois processos de usá-lo ao mesmo tempo,
+ * e ao final de uma ordenação bem-sucedida os runs e o manifesto são apagados.
+ */
+class ManifestoOrdenacao implements Closeable {
+    static final int VERSAO = 1;
+    static final String NOME_MANIFESTO = "manifesto.txt";
+    static final String NOME_TRAVA = "manifesto.trava";
+    static final String SUFIXO_RUN = "run";
+    private static final int TAMANHO_BUFFER_CRC = 64 * 1024;
+
+    /** run anotado no manifesto */
+    private static final class Run {
+        final String nome;
+        final long inicio;     // posição da entrada onde o bloco começa (-1 = sem trecho)
+        final long fim;
+        final long quantidade;
+        final long bytes;
+        final long crc;
+
+        Run(String nome, long inicio, long fim, long quantidade, long bytes, long crc) {
+            this.nome = nome;
+            this.inicio = inicio;
+            this.fim = fim;
+            this.quantidade = quantidade;
+            this.bytes = bytes;
+            this.crc = crc;
+        }
+    }
+
+    private final File diretorio;
+    private final FileChannel canalTrava;
+    private final FileLock trava;
+    private final ArenaBuffers arena;                             // buffer do CRC dos runs
+    private final Map<String, Run> runs = new LinkedHashMap<>(); // runs vivos, na ordem do manifesto
+    private FileChannel canal;                                    // manifesto, aberto para acréscimos
+    private boolean formacaoConcluida;
+    private boolean concluida;
+    private long posicaoRetomada;
+    private int runsRetomados;
+    private long elementosRetomados;
+
+    private ManifestoOrdenacao(File diretorio, FileChannel canalTrava, FileLock trava, ArenaBuffers arena) {
+        this.diretorio = diretorio;
+        this.arena = arena;
+        this.canalTrava = canalTrava;
+        this.trava = trava;
+    }
+
+    /**
+     * Abre (criando se preciso) o diretório de trabalho da ordenação da entrada, validando
+     * e retomando um manifesto que já exista
+     *
+     * @param arena de onde vem o buffer do CRC dos runs
+     * @throws IOException se o diretório não puder ser criado ou já estiver em uso
+     */
+    static ManifestoOrdenacao abrir(File diretorio, File entrada, ConfiguracaoOrdenacao configuracao,
+                                    ArenaBuffers arena) throws IOException {
+        Files.createDirectories(diretorio.toPath());
+        FileChannel canalTrava = FileChannel.open(new File(diretorio, NOME_TRAVA).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock trava;
+        try {
+            trava = canalTrava.tryLock();
+        } catch (IOException | RuntimeException e) {
+            canalTrava.close();
+            throw e;
+        }
+        if (trava == null) {
+            canalTrava.close();
+            throw new IOException("diretório de trabalho em uso por outra ordenação: " + diretorio);
+        }
+
+        ManifestoOrdenacao manifesto = new ManifestoOrdenacao(diretorio, canalTrava, trava, arena);
+        try {
+            String cabecalho = cabecalho(entrada, configuracao);
+            File arquivo = new File(diretorio, NOME_MANIFESTO);
+            if (arquivo.exists() && !manifesto.retomar(arquivo, cabecalho)) {
+                manifesto.runs.clear();
+                manifesto.formacaoConcluida = false;
+                manifesto.posicaoRetomada = 0;
+            }
+            manifesto.reescrever(cabecalho);
+            manifesto.apagarNaoCitados();
+        } catch (IOException | RuntimeException e) {
+            manifesto.close();
+            throw e;
+        }
+        return manifesto;
+    }
+
+    // identifica a entrada e o que muda o conteúdo dos runs
+    private static String cabecalho(File entrada, ConfiguracaoOrdenacao configuracao) {
+        return "versao " + VERSAO + "\n"
+                + "entrada " + entrada.length() + " " + entrada.lastModified() + " "
+                + configuracao.tipoChave() + " " + configuracao.formatoEntrada() + " "
+                + configuracao.agregacao() + " "
+                + entrada.getAbsolutePath() + "\n";
+    }
+
+    /**
+     * Lê o manifesto existente e monta o estado válido
+     *
+     * @return false se ele é de outra entrada ou não pode mais ser aproveitado
+     */
+    private boolean retomar(File arquivo, String cabecalho) throws IOException {
+        String conteudo = new String(Files.readAllBytes(arquivo.toPath()), StandardCharsets.UTF_8);
+        if (!conteudo.startsWith(cabecalho)) return false;
+
+        Map<String, Run> iniciais = new LinkedHashMap<>();
+        Map<String, Run> mesclados = new LinkedHashMap<>();
+        Set<String> consumidos = new HashSet<>();
+        boolean formacao = false;
+        // só linhas completas: a última pode ter sido cortada por uma queda no meio da escrita
+        int fimLinhas = conteudo.lastIndexOf('\n') + 1;
+        for (String linha : conteudo.substring(cabecalho.length(), fimLinhas).split("\n")) {
+            String[] campos = linha.split(" ");
+            try {
+                switch (campos[0]) {
+                    case "run":
+                        iniciais.put(campos[1], new Run(campos[1], Long.parseLong(campos[2]), Long.parseLong(campos[3]),
+                                Long.parseLong(campos[4]), Long.parseLong(campos[5]), Long.parseLong(campos[6])));
+                        break;
+                    case "formacao":
+                        formacao = true;
+                        break;
+                    case "mesclagem":
+                        mesclados.put(campos[1], new Run(campos[1], -1, -1,
+                                Long.parseLong(campos[2]), Long.parseLong(campos[3]), Long.parseLong(campos[4])));
+                        consumidos.addAll(Arrays.asList(campos[5].split("/")));
+                        break;
+                    case "":
+                        break;
+                    default:
+                        return false;
+                }
+            } catch (RuntimeException e) {
+                return false; // linha malformada: o manifesto não é confiável
+            }
+        }
+
+        Map<String, Run> vivos = new LinkedHashMap<>(iniciais);
+        vivos.putAll(mesclados);
+        vivos.keySet().removeAll(consumidos);
+        boolean todosValidos = true;
+        for (Iterator<Run> it = vivos.values().iterator(); it.hasNext(); ) {
+            if (!valido(it.next())) {
+                it.remove();
+                todosValidos = false;
+            }
+        }
+
+        if (formacao && todosValidos) {
+            runs.putAll(vivos);
+            formacaoConcluida = true;
+        } else if (!mesclados.isEmpty()) {
+            return false; // um run que já foi mesclado não pode ser refeito sem reler tudo
+        } else {
+            // a maior sequência contígua de blocos desde o início da entrada
+            List<Run> porPosicao = new ArrayList<>();
+            for (Run run : vivos.values()) {
+                if (run.inicio >= 0) porPosicao.add(run);
+            }
+            porPosicao.sort(Comparator.comparingLong(run -> run.inicio));
+            for (Run run : porPosicao) {
+                if (run.inicio != posicaoRetomada) break;
+                runs.put(run.nome, run);
+                posicaoRetomada = run.fim;
+            }
+        }
+        for (Run run : runs.values()) {
+            runsRetomados++;
+            elementosRetomados += run.quantidade;
+        }
+        return true;
+    }
+
+    private boolean valido(Run run) throws IOException {
+        File arquivo = new File(diretorio, run.nome);
+        return arquivo.isFile() && arquivo.length() == run.bytes && crc(arquivo, false) == run.crc;
+    }
+
+    // grava o manifesto só com o estado válido, substituindo o anterior de uma vez
+    private void reescrever(String cabecalho) throws IOException {
+        StringBuilder conteudo = new StringBuilder(cabecalho);
+        for (Run run : runs.values()) {
+            conteudo.append(linhaRun(run));
+        }
+        if (formacaoConcluida) conteudo.append("formacao\n");
+
+        File arquivo = new File(diretorio, NOME_MANIFESTO);
+        File novo = new File(diretorio, NOME_MANIFESTO + ".novo");
+        try (FileChannel saida = FileChannel.open(novo.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            escreverTudo(saida, conteudo.toString());
+            saida.force(true);
+        }
+        Files.move(novo.toPath(), arquivo.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        sincronizarDiretorio();
+        canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // apaga os runs de tentativas anteriores que o manifesto não cita (incompletos ou já consumidos)
+    private void apagarNaoCitados() {
+        File[] arquivos = diretorio.listFiles((dir, nome) -> nome.endsWith(SUFIXO_RUN) && !runs.containsKey(nome));
+        if (arquivos == null) return;
+        for (File arquivo : arquivos) {
+            arquivo.delete();
+        }
+    }
+
+    /** se os runs iniciais já estão todos no manifesto (a entrada não precisa ser lida) */
+    boolean formacaoConcluida() {
+        return formacaoConcluida;
+    }
+
+    /** posição da entrada onde a formação de runs continua */
+    long posicaoRetomada() {
+        return posicaoRetomada;
+    }
+
+    /** runs vivos aproveitados de uma execução anterior */
+    List<File> runs() {
+        List<File> arquivos = new ArrayList<>(runs.size());
+        for (String nome : runs.keySet()) {
+            arquivos.add(new File(diretorio, nome));
+        }
+        return arquivos;
+    }
+
+    int runsRetomados() {
+        return runsRetomados;
+    }
+
+    long elementosRetomados() {
+        return elementosRetomados;
+    }
+
+    /**
+     * Novo arquivo de run no diretório de trabalho (não é apagado na saída da JVM)
+     */
+    File criarArquivo(String prefixo) throws IOException {
+        return File.createTempFile(prefixo, SUFIXO_RUN, diretorio);
+    }
+
+    /**
+     * Anota um run inicial já fechado
+     *
+     * @param inicio posição da entrada onde o bloco do run começa (-1 se não corresponde a um trecho)
+     * @param fim posição da entrada logo depois do último valor do bloco
+     */
+    void registrarRun(File arquivo, long inicio, long fim, long quantidade) throws IOException {
+        long crc = crc(arquivo, true);
+        acrescentar(linhaRun(new Run(arquivo.getName(), inicio, fim, quantidade, arquivo.length(), crc)));
+    }
+
+    /** todos os runs iniciais foram anotados */
+    void registrarFormacao() throws IOException {
+        acrescentar("formacao\n");
+    }
+
+    /**
+     * Anota uma mesclagem intermediária já fechada; só depois disso as entradas podem ser apagadas
+     */
+    void registrarMesclagem(File arquivo, List<File> entradas, long quantidade) throws IOException {
+        long crc = crc(arquivo, true);
+        StringJoiner nomes = new StringJoiner("/");
+        for (File entrada : entradas) {
+            nomes.add(entrada.getName());
+        }
+        acrescentar("mesclagem " + arquivo.getName() + " " + quantidade + " " + arquivo.length() + " "
+                + crc + " " + nomes + "\n");
+    }
+
+    private static String linhaRun(Run run) {
+        return "run " + run.nome + " " + run.inicio + " " + run.fim + " " + run.quantidade + " "
+                + run.bytes + " " + run.crc + "\n";
+    }
+
+    // as linhas vêm do escritor de runs e das threads do merge
+    private synchronized void acrescentar(String linha) throws IOException {
+        escreverTudo(canal, linha);
+        canal.force(true);
+    }
+
+    /**
+     * A ordenação terminou com sucesso: apaga os runs que restaram e o manifesto
+     */
+    void concluir() throws IOException {
+        canal.close();
+        for (File arquivo : runs()) {
+            arquivo.delete();
+        }
+        runs.clear();
+        apagarNaoCitados();
+        Files.deleteIfExists(new File(diretorio, NOME_MANIFESTO).toPath());
+        concluida = true;
+    }
+
+    /**
+     * Libera o diretório; depois de uma falha os runs e o manifesto ficam para a próxima tentativa
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (canal != null) canal.close();
+        } finally {
+            trava.release();
+            canalTrava.close();
+            if (concluida) new File(diretorio, NOME_TRAVA).delete();
+        }
+    }
+
+    /**
+     * CRC32C do arquivo inteiro (com cabeçalho)
+     *
+     * @param gravar força antes a gravação do arquivo em disco
+     */
+    private long crc(File arquivo, boolean gravar) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = arena.obter(TAMANHO_BUFFER_CRC);
+        try (FileChannel entrada = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            if (gravar) entrada.force(true);
+            while (entrada.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            arena.devolver(buffer);
+        }
+        return crc.getValue();
+    }
+
+    private static void escreverTudo(FileChannel canal, String texto) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(texto.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            canal.write(bytes);
+        }
+    }
+
+    // grava em disco a entrada do manifesto no diretório (nem todo sistema permite abrir diretórios)
+    private void sincronizarDiretorio() {
+        try (FileChannel canalDiretorio = FileChannel.open(diretorio.toPath(), StandardOpenOption.READ)) {
+            canalDiretorio.force(true);
+        } catch (IOException e) {
+            // melhor esforço: o ATOMIC_MOVE já garante que o manifesto é o antigo ou o novo
+        }
+    }
+}
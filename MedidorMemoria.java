@@ -0,0 +1,121 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mede o pico de uso do heap durante uma ordenação.
+ *
+ * Entre duas coletas de lixo o heap só cresce, então o uso de cada coleta logo antes dela
+ * acontecer (recebido por notificação dos GarbageCollectorMXBean) é um máximo local real,
+ * e não uma amostra que pode cair logo depois de uma coleta como totalMemory - freeMemory.
+ * Fora das coletas, amostrar() soma o uso atual dos pools de heap (MemoryPoolMXBean).
+ *
+ * As mesmas notificações somam a duração das pausas de GC; os ciclos concorrentes (que
+ * rodam junto com a aplicação) ficam de fora.
+ *
+ * Os valores são do heap inteiro da JVM: com várias ordenações ao mesmo tempo, cada uma vê
+ * também a memória e as coletas das outras.
+ */
+class MedidorMemoria implements AutoCloseable {
+    private final List<MemoryPoolMXBean> poolsHeap = new ArrayList<>();
+    private final Set<String> nomesPoolsHeap = new HashSet<>();
+    private final List<NotificationEmitter> emissores = new ArrayList<>();
+    private final AtomicLong pico = new AtomicLong();
+    private final AtomicLong pausasMillis = new AtomicLong();
+    private final AtomicLong coletas = new AtomicLong();
+    private final NotificationListener ouvinte = this::aoColetar;
+
+    MedidorMemoria() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                poolsHeap.add(pool);
+                nomesPoolsHeap.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean coletor : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (coletor instanceof NotificationEmitter) {
+                NotificationEmitter emissor = (NotificationEmitter) coletor;
+                emissor.addNotificationListener(ouvinte, null, null);
+                emissores.add(emissor);
+            }
+        }
+        amostrar();
+    }
+
+    // uso do heap logo antes de cada coleta
+    private void aoColetar(Notification notificacao, Object contexto) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notificacao.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notificacao.getUserData());
+        long antes = 0;
+        for (Map.Entry<String, MemoryUsage> uso : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+            if (nomesPoolsHeap.contains(uso.getKey())) {
+                antes += uso.getValue().getUsed();
+            }
+        }
+        pico.accumulateAndGet(antes, Math::max);
+
+        if (!concorrente(info)) {
+            pausasMillis.addAndGet(info.getGcInfo().getDuration());
+            coletas.incrementAndGet();
+        }
+    }
+
+    private static boolean concorrente(GarbageCollectionNotificationInfo info) {
+        return "end of GC cycle".equals(info.getGcAction()) || info.getGcName().contains("Concurrent")
+                || info.getGcName().endsWith("Cycles");
+    }
+
+    /**
+     * Registra o uso atual do heap (as coletas no meio da ordenação já chegam por notificação)
+     */
+    void amostrar() {
+        long usado = 0;
+        for (MemoryPoolMXBean pool : poolsHeap) {
+            usado += pool.getUsage().getUsed();
+        }
+        pico.accumulateAndGet(usado, Math::max);
+    }
+
+    /** maior uso do heap observado, em bytes */
+    long pico() {
+        return pico.get();
+    }
+
+    /** soma das pausas de GC desde a criação, em milissegundos */
+    long pausasMillis() {
+        return pausasMillis.get();
+    }
+
+    long coletas() {
+        return coletas.get();
+    }
+
+    @Override
+    public void close() {
+        amostrar();
+        for (NotificationEmitter emissor : emissores) {
+            try {
+                emissor.removeNotificationListener(ouvinte);
+            } catch (javax.management.ListenerNotFoundException e) {
+                // já removido
+            }
+        }
+    }
+}
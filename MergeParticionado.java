@@ -0,0 +1,216 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passo final do merge dividido por intervalos de valores, para que ele também use as
+ * threads do merge em vez de uma só árvore de perdedores:
+ *
+ *   separadores s1 < s2 < ... < s(P-1)  ->  partição i mescla os valores de [s(i), s(i+1))
+ *
+ * Os separadores são quantis das chaves dos índices dos runs (IndiceRun), que formam uma
+ * amostra uniforme de todos os valores sem precisar ler os runs. Cada partição abre todos os
+ * runs no ponto do índice anterior ao seu início (busca binária no índice, já que os runs
+ * comprimidos não permitem busca direta nos valores), descarta o pouco que sobra antes do
+ * início e para no separador seguinte. As partições são disjuntas e crescentes, então as
+ * repetições de um valor (e a agregação delas) caem sempre na mesma partição.
+ *
+ * A primeira partição grava direto no arquivo de saída e as outras em segmentos temporários,
+ * que no fim são acrescentados à saída em ordem, com FileChannel.transferTo.
+ */
+class MergeParticionado {
+
+    /**
+     * Fonte que entrega só os valores de [inicio, fim) de outra fonte ordenada
+     */
+    static final class FonteIntervalo implements FonteRunOrdenada {
+        private final FonteRunOrdenada fonte;
+        private final long fim;
+        private final boolean limitada; // a última partição vai até o fim do run
+
+        /**
+         * @param fim limite superior exclusivo, usado só se limitada
+         */
+        FonteIntervalo(FonteRunOrdenada fonte, long inicio, long fim, boolean limitada) throws IOException {
+            this.fonte = fonte;
+            this.fim = fim;
+            this.limitada = limitada;
+            while (!fonte.vazio() && fonte.lerProxima() < inicio) {
+                fonte.remover();
+            }
+        }
+
+        public boolean vazio() {
+            return fonte.vazio() || (limitada && fonte.lerProxima() >= fim);
+        }
+
+        public long lerProxima() {
+            return fonte.lerProxima();
+        }
+
+        @Override
+        public long contagem() {
+            return fonte.contagem();
+        }
+
+        public long remover() throws IOException {
+            return fonte.remover();
+        }
+
+        public void close() throws IOException {
+            fonte.close();
+        }
+    }
+
+    /**
+     * Lê o índice de cada run
+     *
+     * @return os índices, na ordem dos runs, ou null se algum run não tiver índice
+     *         (por exemplo, retomado de um diretório de trabalho de uma versão anterior)
+     */
+    static List<IndiceRun> lerIndices(List<File> runs) throws IOException {
+        List<IndiceRun> indices = new ArrayList<>(runs.size());
+        for (File run : runs) {
+            IndiceRun indice = IndiceRun.ler(run);
+            if (indice == null) return null;
+            indices.add(indice);
+        }
+        return indices;
+    }
+
+    /**
+     * Escolhe até particoes-1 separadores como quantis das chaves de todos os índices.
+     * Cada ponto representa IndiceRun.INTERVALO valores do seu run, então as partições
+     * ficam com quantidades parecidas de valores.
+     *
+     * @return separadores em ordem crescente e sem repetições; vazio se não houver amostras
+     *         suficientes para dividir
+     */
+    static long[] separadores(List<IndiceRun> indices, int particoes) {
+        int total = 0;
+        for (IndiceRun indice : indices) {
+            total += indice.pontos();
+        }
+        if (particoes < 2 || total < 2) return new long[0];
+
+        long[] amostra = new long[total];
+        int preenchidos = 0;
+        for (IndiceRun indice : indices) {
+            System.arraycopy(indice.chaves, 0, amostra, preenchidos, indice.pontos());
+            preenchidos += indice.pontos();
+        }
+        Arrays.sort(amostra);
+
+        long[] separadores = new long[particoes - 1];
+        int quantidade = 0;
+        for (int i = 1; i < particoes; i++) {
+            long candidato = amostra[(int) ((long) i * total / particoes)];
+            // um separador igual ao menor valor só criaria uma partição vazia
+            if (candidato > amostra[0] && (quantidade == 0 || candidato > separadores[quantidade - 1])) {
+                separadores[quantidade++] = candidato;
+            }
+        }
+        return Arrays.copyOf(separadores, quantidade);
+    }
+
+    /**
+     * Mescla os runs no arquivo de saída com uma partição por intervalo entre separadores
+     *
+     * @param runs runs do passo final (não são apagados aqui)
+     * @param indices índice de cada run (ver lerIndices)
+     * @param separadores limites entre as partições (ver separadores)
+     * @param planejador define o buffer de cada run, dividido entre as partições simultâneas
+     * @param execucao ordenação que mescla cada partição (ExecucaoOrdenacao.mesclarParticao)
+     * @return número total de valores gravados
+     */
+    static long mesclar(List<File> runs, List<IndiceRun> indices, long[] separadores, File saida,
+                        PlanejadorMerge planejador, ExecucaoOrdenacao execucao) throws IOException {
+        int particoes = separadores.length + 1;
+        int tamanhoBuffer = planejador.tamanhoBuffer(runs.size(), particoes);
+        AtomicLong gravados = new AtomicLong();
+
+        File[] segmentos = new File[particoes];
+        segmentos[0] = saida;
+        List<CompletableFuture<Long>> resultados = new ArrayList<>(particoes);
+        ExecutorService executor = Executors.newFixedThreadPool(particoes,
+                GeradorRunsParalelo.fabricaThreads("merge-final"));
+        try {
+            for (int p = 1; p < particoes; p++) {
+                segmentos[p] = execucao.criarArquivoTemporario("segmento");
+            }
+            for (int p = 0; p < particoes; p++) {
+                long inicio = p == 0 ? Long.MIN_VALUE : separadores[p - 1];
+                long fim = p == particoes - 1 ? Long.MAX_VALUE : separadores[p];
+                boolean ultima = p == particoes - 1;
+                File segmento = segmentos[p];
+                resultados.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return execucao.mesclarParticao(runs, indices, inicio, fim, ultima, segmento,
+                                tamanhoBuffer, planejador.leituraAntecipada(), gravados);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+
+            long quantidade = 0;
+            try {
+                for (CompletableFuture<Long> resultado : resultados) {
+                    quantidade += resultado.join();
+                }
+            } catch (CompletionException e) {
+                throw GeradorRunsParalelo.causaComoIOException(e);
+            }
+
+            concatenar(saida, Arrays.asList(segmentos).subList(1, particoes), execucao.formatoSaida(),
+                    execucao.terminadorSaida());
+            return quantidade;
+        } finally {
+            // os segmentos só são apagados depois que nenhuma partição pode mais gravar neles
+            GeradorRunsParalelo.encerrar(executor);
+            for (int p = 1; p < particoes; p++) {
+                if (segmentos[p] != null) segmentos[p].delete();
+            }
+        }
+    }
+
+    /**
+     * Acrescenta os segmentos ao fim da saída. No TEXTO cada segmento começa sem separador,
+     * então ", " é inserido antes de cada segmento não vazio que não seja o primeiro conteúdo;
+     * LINHAS já termina cada segmento com uma quebra de linha e BINARIO não tem separadores.
+     * Os segmentos são gravados sem o terminador da saída, que entra depois do último.
+     */
+    static void concatenar(File saida, List<File> segmentos, FormatoArquivo formato, byte[] terminador)
+            throws IOException {
+        ByteBuffer separador = formato == FormatoArquivo.TEXTO
+                ? ByteBuffer.wrap(formato.separador.getBytes(StandardCharsets.ISO_8859_1)) : null;
+        try (FileChannel destino = FileChannel.open(saida.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            boolean temConteudo = destino.size() > 0;
+            for (File segmento : segmentos) {
+                try (FileChannel origem = FileChannel.open(segmento.toPath(), StandardOpenOption.READ)) {
+                    long tamanho = origem.size();
+                    if (tamanho == 0) continue;
+                    if (separador != null && temConteudo) {
+                        separador.rewind();
+                        while (separador.hasRemaining()) {
+                            destino.write(separador);
+                        }
+                    }
+                    for (long transferidos = 0; transferidos < tamanho; ) {
+                        transferidos += origem.transferTo(transferidos, tamanho - transferidos, destino);
+                    }
+                    temConteudo = true;
+                }
+            }
+            ByteBuffer fim = ByteBuffer.wrap(terminador);
+            while (fim.hasRemaining()) {
+                destino.write(fim);
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Métricas de uma ordenação: tempo por fase, bytes e elementos lidos e gravados, runs,
+ * passos e fan-in do merge, pausas de GC, memória e reaproveitamento dos buffers (ArenaBuffers).
+ *
+ * Os contadores são atualizados por bloco, por run ou a cada INTERVALO_PROGRESSO valores,
+ * nunca por valor, para não pesar nos laços de leitura e de merge. As mesmas métricas são
+ * entregues ao OuvinteOrdenacao, expostas por JMX (MetricasOrdenacaoMXBean) e devolvidas no
+ * ResultadoOrdenacao; paraJson() serializa um retrato delas.
+ */
+public final class MetricasOrdenacao implements MetricasOrdenacaoMXBean {
+    /** a cada quantos valores gravados no merge final o progresso é atualizado (potência de 2) */
+    public static final int INTERVALO_PROGRESSO = 1 << 20;
+    static final long MASCARA_PROGRESSO = INTERVALO_PROGRESSO - 1;
+
+    private static final OuvinteOrdenacao SEM_OUVINTE = new OuvinteOrdenacao() {
+    };
+
+    private final OuvinteOrdenacao ouvinte;
+    private final MedidorMemoria medidor;
+    private final ArenaBuffers arena;
+    private volatile long tamanhoEntrada;
+    private final long inicio = System.nanoTime();
+    private volatile long fim;
+    private volatile FaseOrdenacao faseAtual;
+
+    private final AtomicLongArray nanosPorFase = new AtomicLongArray(FaseOrdenacao.values().length);
+    private final AtomicLong bytesLidos = new AtomicLong();
+    private final AtomicLong bytesDerramados = new AtomicLong();
+    private final AtomicLong elementosLidos = new AtomicLong();
+    private final AtomicLong elementosGravados = new AtomicLong();
+    private final AtomicInteger runsIniciais = new AtomicInteger();
+    private volatile int runsRetomados;
+    private final AtomicInteger mesclagens = new AtomicInteger();
+    private volatile long bytesEscritos;
+    private volatile int mesclagensPlanejadas;
+    private volatile int passosMerge;
+    private volatile int fanIn;
+
+    MetricasOrdenacao(OuvinteOrdenacao ouvinte, MedidorMemoria medidor, ArenaBuffers arena) {
+        this.ouvinte = ouvinte != null ? ouvinte : SEM_OUVINTE;
+        this.medidor = medidor;
+        this.arena = arena;
+    }
+
+    /** tamanho do arquivo de entrada, em bytes (base do progresso da leitura) */
+    void entrada(long bytes) {
+        this.tamanhoEntrada = bytes;
+    }
+
+    void iniciarFase(FaseOrdenacao fase) {
+        faseAtual = fase;
+        ouvinte.faseIniciada(fase, this);
+    }
+
+    /**
+     * Soma à fase o tempo decorrido desde inicio (obtido de System.nanoTime())
+     */
+    void registrar(FaseOrdenacao fase, long inicio) {
+        nanosPorFase.addAndGet(fase.ordinal(), System.nanoTime() - inicio);
+    }
+
+    /** posição da leitura da entrada, em bytes */
+    void leitura(long bytesConsumidos) {
+        bytesLidos.accumulateAndGet(bytesConsumidos, Math::max);
+    }
+
+    /** valores lidos da entrada que não passaram por runGravado (contagem e ordenação em memória) */
+    void elementosLidos(long elementos) {
+        elementosLidos.addAndGet(elementos);
+    }
+
+    void runGravado(long bytes, long elementos) {
+        runsIniciais.incrementAndGet();
+        bytesDerramados.addAndGet(bytes);
+        elementosLidos.addAndGet(elementos);
+        ouvinte.progresso(this);
+    }
+
+    /** runs aproveitados do diretório de trabalho de uma execução anterior (ver ManifestoOrdenacao) */
+    void retomada(int runs, long elementos, long posicaoEntrada) {
+        this.runsRetomados = runs;
+        elementosLidos.addAndGet(elementos);
+        leitura(posicaoEntrada);
+    }
+
+    void planoMerge(int passos, int fanIn, int mesclagensIntermediarias) {
+        this.passosMerge = passos;
+        this.fanIn = fanIn;
+        this.mesclagensPlanejadas = mesclagensIntermediarias;
+    }
+
+    void mesclagemConcluida(long bytes) {
+        mesclagens.incrementAndGet();
+        bytesDerramados.addAndGet(bytes);
+        ouvinte.progresso(this);
+    }
+
+    void gravados(long elementos) {
+        elementosGravados.set(elementos);
+        ouvinte.progresso(this);
+    }
+
+    void concluir(long elementos, long bytesEscritos) {
+        this.elementosGravados.set(elementos);
+        this.bytesEscritos = bytesEscritos;
+        this.fim = System.nanoTime();
+        ouvinte.concluida(this);
+    }
+
+    @Override
+    public String getFaseAtual() {
+        FaseOrdenacao fase = faseAtual;
+        return fase == null ? "" : fase.name();
+    }
+
+    @Override
+    public double getProgresso() {
+        FaseOrdenacao fase = faseAtual;
+        if (fase == null) return 0;
+        switch (fase) {
+            case MERGE_INTERMEDIARIO:
+                return fracao(mesclagens.get(), mesclagensPlanejadas);
+            case MERGE_FINAL:
+            case ESCRITA_SAIDA:
+                return fracao(elementosGravados.get(), elementosLidos.get());
+            default:
+                return fracao(bytesLidos.get(), tamanhoEntrada);
+        }
+    }
+
+    private static double fracao(long parte, long total) {
+        return total <= 0 ? -1 : Math.min(1.0, (double) parte / total);
+    }
+
+    @Override
+    public long getTempoTotalMillis() {
+        long ate = fim != 0 ? fim : System.nanoTime();
+        return (ate - inicio) / 1_000_000;
+    }
+
+    @Override
+    public Map<String, Long> getTempoPorFaseMillis() {
+        Map<String, Long> tempos = new LinkedHashMap<>();
+        for (FaseOrdenacao fase : FaseOrdenacao.values()) {
+            tempos.put(fase.name(), nanosPorFase.get(fase.ordinal()) / 1_000_000);
+        }
+        return tempos;
+    }
+
+    /** tempo somado de uma fase, em nanossegundos */
+    public long tempoNanos(FaseOrdenacao fase) {
+        return nanosPorFase.get(fase.ordinal());
+    }
+
+    @Override
+    public long getBytesLidos() {
+        return bytesLidos.get();
+    }
+
+    @Override
+    public long getBytesEscritos() {
+        return bytesEscritos;
+    }
+
+    /** bytes gravados em runs temporários, inclusive os dos passos intermediários do merge */
+    @Override
+    public long getBytesDerramados() {
+        return bytesDerramados.get();
+    }
+
+    @Override
+    public long getElementosLidos() {
+        return elementosLidos.get();
+    }
+
+    @Override
+    public long getElementosGravados() {
+        return elementosGravados.get();
+    }
+
+    @Override
+    public double getElementosPorSegundo() {
+        long millis = Math.max(1, getTempoTotalMillis());
+        return elementosLidos.get() * 1000.0 / millis;
+    }
+
+    @Override
+    public int getRunsIniciais() {
+        return runsIniciais.get();
+    }
+
+    @Override
+    public int getRunsRetomados() {
+        return runsRetomados;
+    }
+
+    @Override
+    public int getMesclagensIntermediarias() {
+        return mesclagens.get();
+    }
+
+    @Override
+    public int getPassosMerge() {
+        return passosMerge;
+    }
+
+    @Override
+    public int getFanIn() {
+        return fanIn;
+    }
+
+    @Override
+    public long getPausasGcMillis() {
+        return medidor.pausasMillis();
+    }
+
+    @Override
+    public long getColetasGc() {
+        return medidor.coletas();
+    }
+
+    @Override
+    public long getMemoriaMaximaUtilizada() {
+        return medidor.pico();
+    }
+
+    @Override
+    public long getBuffersAlocados() {
+        return arena.alocados();
+    }
+
+    @Override
+    public long getBuffersReaproveitados() {
+        return arena.reaproveitados();
+    }
+
+    /**
+     * Retrato atual das métricas em JSON (um objeto, sem quebras de linha)
+     */
+    public String paraJson() {
+        StringBuilder json = new StringBuilder("{");
+        campo(json, "faseAtual", '"' + getFaseAtual() + '"');
+        campo(json, "tempoTotalMillis", getTempoTotalMillis());
+        StringBuilder fases = new StringBuilder("{");
+        for (Map.Entry<String, Long> tempo : getTempoPorFaseMillis().entrySet()) {
+            campo(fases, tempo.getKey(), tempo.getValue());
+        }
+        campo(json, "tempoPorFaseMillis", fases.append('}'));
+        campo(json, "bytesLidos", getBytesLidos());
+        campo(json, "bytesEscritos", getBytesEscritos());
+        campo(json, "bytesDerramados", getBytesDerramados());
+        campo(json, "elementosLidos", getElementosLidos());
+        campo(json, "elementosGravados", getElementosGravados());
+        campo(json, "elementosPorSegundo", String.format(Locale.ROOT, "%.1f", getElementosPorSegundo()));
+        campo(json, "runsIniciais", getRunsIniciais());
+        campo(json, "runsRetomados", getRunsRetomados());
+        campo(json, "mesclagensIntermediarias", getMesclagensIntermediarias());
+        campo(json, "passosMerge", getPassosMerge());
+        campo(json, "fanIn", getFanIn());
+        campo(json, "pausasGcMillis", getPausasGcMillis());
+        campo(json, "coletasGc", getColetasGc());
+        campo(json, "memoriaMaximaUtilizada", getMemoriaMaximaUtilizada());
+        campo(json, "buffersAlocados", getBuffersAlocados());
+        campo(json, "buffersReaproveitados", getBuffersReaproveitados());
+        return json.append('}').toString();
+    }
+
+    private static void campo(StringBuilder json, String nome, Object valor) {
+        if (json.length() > 1) json.append(',');
+        json.append('"').append(nome).append("\":").append(valor);
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.Map;
+
+/**
+ * Interface JMX das métricas de uma ordenação (ExternalSorter.Builder.registrarJmx).
+ * Os atributos são lidos ao vivo, durante a ordenação.
+ */
+public interface MetricasOrdenacaoMXBean {
+
+    String getFaseAtual();
+
+    /** fração estimada concluída da fase atual, de 0 a 1 (-1 se desconhecida) */
+    double getProgresso();
+
+    long getTempoTotalMillis();
+
+    /** tempo somado de cada fase (entre todas as threads), em milissegundos */
+    Map<String, Long> getTempoPorFaseMillis();
+
+    long getBytesLidos();
+
+    long getBytesEscritos();
+
+    long getBytesDerramados();
+
+    long getElementosLidos();
+
+    long getElementosGravados();
+
+    double getElementosPorSegundo();
+
+    int getRunsIniciais();
+
+    /** runs de uma execução interrompida aproveitados do diretório de trabalho */
+    int getRunsRetomados();
+
+    int getMesclagensIntermediarias();
+
+    int getPassosMerge();
+
+    int getFanIn();
+
+    long getPausasGcMillis();
+
+    long getColetasGc();
+
+    long getMemoriaMaximaUtilizada();
+
+    /** buffers de run e auxiliares do radix que precisaram de alocação nova */
+    long getBuffersAlocados();
+
+    /** buffers de run e auxiliares do radix reaproveitados de um uso anterior (ArenaBuffers) */
+    long getBuffersReaproveitados();
+}
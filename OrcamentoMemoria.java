@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Orçamento de memória de uma ordenação, em bytes, no lugar da estimativa por
+ * Runtime.freeMemory() (que oscila conforme o momento da última coleta de lixo).
+ *
+ * O total vem da configuração (memoriaMaxima) ou, sem ela, de uma fração fixa do heap
+ * máximo (-Xmx), que não muda durante a execução. Dele saem três parcelas:
+ *  - entrada/saída: buffers fixos do tokenizador, do arquivo de saída e dos escritores de run
+ *    (um por thread de merge, que no passo final paralelo são os escritores dos segmentos)
+ *  - runs: blocos (ou heap da seleção por substituição, ou histograma) da formação dos runs
+ *  - merge: buffers de leitura dos runs (a formação dos runs e o merge não acontecem ao mesmo
+ *    tempo, então as duas parcelas podem usar o mesmo espaço)
+ *
+ * As alocações grandes são reservadas antes de acontecerem (reservar/liberar): se uma delas
+ * não couber, a ordenação falha com IOException em vez de OutOfMemoryError.
+ */
+class OrcamentoMemoria {
+    static final double FRACAO_PADRAO = 0.4;             // sem orçamento configurado: 40% do -Xmx
+    static final long MINIMO_PARA_RUNS = 64 * 1024;      // menor parcela útil para blocos e merge
+
+    private final long total;
+    private final long entradaSaida;
+    private final long merge;
+    private final AtomicLong reservado = new AtomicLong();
+    private final AtomicLong picoReservado = new AtomicLong();
+
+    OrcamentoMemoria(ConfiguracaoOrdenacao configuracao) throws IOException {
+        this.total = configuracao.memoriaMaxima() > 0
+                ? configuracao.memoriaMaxima()
+                : (long) (Runtime.getRuntime().maxMemory() * FRACAO_PADRAO);
+
+        // no modo mapeado a leitura e a escrita dos runs usam o cache de páginas, fora do heap
+        boolean mapeado = configuracao.mapearArquivos();
+        // os segmentos do passo final paralelo (um por thread além da saída) usam a parcela dos
+        // escritores de run, que já terminaram; com mmap só eles ocupam o heap
+        int escritoresRun = Math.max(1, configuracao.threadsMerge());
+        this.entradaSaida = (mapeado ? 0 : LeitorNumerosStreaming.TAMANHO_BUFFER_PADRAO)
+                + EscritorSaida.TAMANHO_BUFFER
+                + (mapeado ? (long) (escritoresRun - 1) * EscritorSaida.TAMANHO_BUFFER
+                           : (long) escritoresRun * EscritorRun.TAMANHO_BUFFER);
+
+        if (total - entradaSaida < MINIMO_PARA_RUNS) {
+            throw new IOException(String.format("orçamento de memória pequeno demais: %d bytes (mínimo %d).",
+                    total, entradaSaida + MINIMO_PARA_RUNS));
+        }
+        this.merge = configuracao.memoriaMerge() > 0
+                ? Math.min(configuracao.memoriaMerge(), paraRuns())
+                : paraRuns();
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /** bytes disponíveis para a formação dos runs */
+    public long paraRuns() {
+        return total - entradaSaida;
+    }
+
+    /** bytes disponíveis para os buffers de leitura do merge */
+    public long paraMerge() {
+        return merge;
+    }
+
+    /**
+     * Reserva bytes do orçamento antes de uma alocação
+     *
+     * @param finalidade descrição usada na mensagem de erro
+     * @throws IOException se a reserva passar do total
+     */
+    public void reservar(long bytes, String finalidade) throws IOException {
+        long atual = reservado.addAndGet(bytes);
+        if (atual > total) {
+            reservado.addAndGet(-bytes);
+            throw new IOException(String.format(
+                    "orçamento de memória insuficiente para %s: %.2fMB pedidos, %.2fMB livres de %.2fMB.",
+                    finalidade, bytes / (1024.0 * 1024), (total - atual + bytes) / (1024.0 * 1024),
+                    total / (1024.0 * 1024)));
+        }
+        picoReservado.accumulateAndGet(atual, Math::max);
+    }
+
+    public void liberar(long bytes) {
+        reservado.addAndGet(-bytes);
+    }
+
+    /** maior quantidade de bytes reservada ao mesmo tempo */
+    public long picoReservado() {
+        return picoReservado.get();
+    }
+}
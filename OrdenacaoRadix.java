@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Ordenação radix LSD (dígito menos significativo primeiro) para int[] e long[],
+ * alternativa sem comparações ao QuickSortThreeWay.
+ *
+ * Cada chave é dividida em dígitos de BITS_POR_DIGITO bits (3 passadas para int, 6 para long).
+ * Antes das passadas, uma única leitura do array monta o histograma de todos os dígitos ao
+ * mesmo tempo. Com isso:
+ *  - dígitos iguais em todos os valores (ex.: os bits altos de números pequenos) são pulados
+ *  - com mais de uma thread, cada uma conta um pedaço do array e os histogramas são somados
+ *
+ * O sinal é tratado invertendo o bit mais alto na extração do dígito, de modo que os negativos
+ * fiquem antes dos positivos. Cada passada é estável e distribui os valores entre o array e um
+ * auxiliar do mesmo tamanho, então a memória extra é O(n).
+ *
+ * Complexidade: O(d * (n + 2^BITS_POR_DIGITO)), com d = quantidade de dígitos não constantes.
+ */
+class OrdenacaoRadix {
+    static final int BITS_POR_DIGITO = 11;
+    static final int TAMANHO_DIGITO = 1 << BITS_POR_DIGITO; // 2048 posições: o histograma cabe no cache L1
+    static final int MASCARA_DIGITO = TAMANHO_DIGITO - 1;
+    static final int LIMIAR_RADIX = 1 << 12;       // abaixo disso o Arrays.sort é mais rápido
+    static final int LIMIAR_PARALELO = 1 << 16;    // abaixo disso não compensa dividir o histograma
+
+    private static final int DIGITOS_INT = (Integer.SIZE + BITS_POR_DIGITO - 1) / BITS_POR_DIGITO;
+    private static final int DIGITOS_LONG = (Long.SIZE + BITS_POR_DIGITO - 1) / BITS_POR_DIGITO;
+
+    public static void ordenar(int[] arr) {
+        ordenar(arr, 0, arr.length, 1);
+    }
+
+    /**
+     * Ordena in-place o intervalo [inicio, fim)
+     *
+     * @param threads quantidade de threads que montam o histograma (1 = sequencial)
+     */
+    public static void ordenar(int[] arr, int inicio, int fim, int threads) {
+        int n = fim - inicio;
+        if (n < LIMIAR_RADIX) {
+            Arrays.sort(arr, inicio, fim);
+            return;
+        }
+
+        int[][] contagens = histogramas(n, threads, (de, ate) -> contar(arr, inicio + de, inicio + ate));
+        int[] auxiliar = new int[n];
+        int[] origem = arr, destino = auxiliar;
+        int inicioOrigem = inicio, inicioDestino = 0;
+
+        for (int d = 0; d < DIGITOS_INT; d++) {
+            int[] posicoes = posicoes(contagens[d], n);
+            if (posicoes == null) continue; // dígito constante: a passada não mudaria nada
+
+            int deslocamento = d * BITS_POR_DIGITO;
+            for (int i = inicioOrigem, limite = inicioOrigem + n; i < limite; i++) {
+                int valor = origem[i];
+                int digito = ((valor ^ Integer.MIN_VALUE) >>> deslocamento) & MASCARA_DIGITO;
+                destino[inicioDestino + posicoes[digito]++] = valor;
+            }
+
+            int[] troca = origem; origem = destino; destino = troca;
+            int trocaInicio = inicioOrigem; inicioOrigem = inicioDestino; inicioDestino = trocaInicio;
+        }
+
+        // número ímpar de passadas: o resultado ficou no auxiliar
+        if (origem != arr) {
+            System.arraycopy(origem, inicioOrigem, arr, inicio, n);
+        }
+    }
+
+    public static void ordenar(long[] arr, int inicio, int fim) {
+        ordenar(arr, inicio, fim, 1);
+    }
+
+    /**
+     * Ordena in-place o intervalo [inicio, fim)
+     *
+     * @param threads quantidade de threads que montam o histograma (1 = sequencial)
+     */
+    public static void ordenar(long[] arr, int inicio, int fim, int threads) {
+        ordenar(arr, inicio, fim, threads, null);
+    }
+
+    /**
+     * Ordena in-place o intervalo [inicio, fim) usando um auxiliar fornecido por quem chama
+     * (reaproveitado entre blocos, ver ArenaBuffers)
+     *
+     * @param auxiliar array com ao menos fim - inicio posições
+     */
+    public static void ordenar(long[] arr, int inicio, int fim, long[] auxiliar) {
+        ordenar(arr, inicio, fim, 1, auxiliar);
+    }
+
+    private static void ordenar(long[] arr, int inicio, int fim, int threads, long[] auxiliarRecebido) {
+        int n = fim - inicio;
+        if (n < LIMIAR_RADIX) {
+            Arrays.sort(arr, inicio, fim);
+            return;
+        }
+
+        int[][] contagens = histogramas(n, threads, (de, ate) -> contar(arr, inicio + de, inicio + ate));
+        long[] auxiliar = auxiliarRecebido != null ? auxiliarRecebido : new long[n];
+        long[] origem = arr, destino = auxiliar;
+        int inicioOrigem = inicio, inicioDestino = 0;
+
+        for (int d = 0; d < DIGITOS_LONG; d++) {
+            int[] posicoes = posicoes(contagens[d], n);
+            if (posicoes == null) continue; // dígito constante: a passada não mudaria nada
+
+            int deslocamento = d * BITS_POR_DIGITO;
+            for (int i = inicioOrigem, limite = inicioOrigem + n; i < limite; i++) {
+                long valor = origem[i];
+                int digito = (int) ((valor ^ Long.MIN_VALUE) >>> deslocamento) & MASCARA_DIGITO;
+                destino[inicioDestino + posicoes[digito]++] = valor;
+            }
+
+            long[] troca = origem; origem = destino; destino = troca;
+            int trocaInicio = inicioOrigem; inicioOrigem = inicioDestino; inicioDestino = trocaInicio;
+        }
+
+        // número ímpar de passadas: o resultado ficou no auxiliar
+        if (origem != arr) {
+            System.arraycopy(origem, inicioOrigem, arr, inicio, n);
+        }
+    }
+
+    // histograma de todos os dígitos do trecho [de, ate) em uma única leitura
+    private static int[][] contar(int[] arr, int de, int ate) {
+        int[][] contagens = new int[DIGITOS_INT][TAMANHO_DIGITO];
+        for (int i = de; i < ate; i++) {
+            int chave = arr[i] ^ Integer.MIN_VALUE;
+            for (int d = 0; d < DIGITOS_INT; d++) {
+                contagens[d][(chave >>> (d * BITS_POR_DIGITO)) & MASCARA_DIGITO]++;
+            }
+        }
+        return contagens;
+    }
+
+    private static int[][] contar(long[] arr, int de, int ate) {
+        int[][] contagens = new int[DIGITOS_LONG][TAMANHO_DIGITO];
+        for (int i = de; i < ate; i++) {
+            long chave = arr[i] ^ Long.MIN_VALUE;
+            for (int d = 0; d < DIGITOS_LONG; d++) {
+                contagens[d][(int) (chave >>> (d * BITS_POR_DIGITO)) & MASCARA_DIGITO]++;
+            }
+        }
+        return contagens;
+    }
+
+    // conta um trecho [de, ate), relativo ao início do intervalo ordenado
+    private interface Contador {
+        int[][] contar(int de, int ate);
+    }
+
+    /**
+     * Monta os histogramas, dividindo o array entre as threads quando ele é grande o bastante
+     */
+    private static int[][] histogramas(int n, int threads, Contador contador) {
+        if (threads <= 1 || n < LIMIAR_PARALELO) {
+            return contador.contar(0, n);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<int[][]>> partes = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                int de = (int) ((long) n * t / threads);
+                int ate = (int) ((long) n * (t + 1) / threads);
+                partes.add(pool.submit(() -> contador.contar(de, ate)));
+            }
+
+            int[][] total = partes.get(0).join();
+            for (int t = 1; t < partes.size(); t++) {
+                int[][] parcial = partes.get(t).join();
+                for (int d = 0; d < total.length; d++) {
+                    for (int b = 0; b < TAMANHO_DIGITO; b++) {
+                        total[d][b] += parcial[d][b];
+                    }
+                }
+            }
+            return total;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Converte as contagens de um dígito nas posições iniciais de cada valor do dígito
+     *
+     * @return null se todos os n valores têm o mesmo dígito (passada desnecessária)
+     */
+    private static int[] posicoes(int[] contagens, int n) {
+        int[] posicoes = new int[TAMANHO_DIGITO];
+        int soma = 0;
+        for (int b = 0; b < TAMANHO_DIGITO; b++) {
+            if (contagens[b] == n) return null;
+            posicoes[b] = soma;
+            soma += contagens[b];
+        }
+        return posicoes;
+    }
+}
@@ -0,0 +1,342 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Ordenação de registros com chave (ExternalSorter.ordenarRegistros): o mesmo fluxo de blocos,
+ * runs e merge das chaves long, com o registro inteiro viajando junto da chave.
+ *
+ * Cada registro lido (LeitorRegistros) tem a chave extraída e normalizada uma única vez
+ * (FormatoRegistro.normalizar) e é copiado para o bloco de dados já no formato de entrada de
+ * run (RunRegistros). A ordenação não move os registros: ela ordena pares (prefixo, ponteiro),
+ * dois arrays paralelos com os 8 primeiros bytes da chave como long e a posição da entrada no
+ * bloco. A maior parte das comparações é só entre os prefixos; a chave inteira só é lida
+ * quando eles empatam, e chaves iguais ficam na ordem da entrada (o ponteiro desempata).
+ *
+ * O merge usa a ArvorePerdedores com os prefixos como valores e a chave inteira, seguida da
+ * ordem dos runs, como Desempate, então a ordenação é estável. Os passos intermediários
+ * seguem o fan-in e os buffers do PlanejadorMerge, em uma thread.
+ *
+ * A memória dos runs do OrcamentoMemoria é reservada inteira: 1/3 para os pares e o resto
+ * para os dados, que crescem dobrando até esses limites. Um bloco termina quando uma das duas
+ * partes enche; se a entrada inteira couber em um bloco, a saída é gravada direto dele.
+ */
+class OrdenacaoRegistros {
+    static final int BYTES_POR_PAR = Long.BYTES + Integer.BYTES;
+    private static final int LIMITE_INSERCAO = 16;          // partições menores vão para a inserção
+    private static final int CAPACIDADE_INICIAL = 1 << 20;  // bytes de dados antes de crescer
+
+    private final FormatoRegistro formato;
+    private final ExecucaoOrdenacao execucao;
+    private final MetricasOrdenacao metricas;
+    private byte[] dados = new byte[0];     // entradas no formato de run
+    private long[] prefixos = new long[0];
+    private int[] ponteiros = new int[0];   // início de cada entrada em dados
+    private int maximoDados;
+    private int maximoPares;
+    private int quantidade;                 // pares do bloco atual
+    private int ocupados;                   // bytes de dados do bloco atual
+    private boolean pendente;               // o registro atual do leitor não coube no bloco anterior
+    private byte[] terminador = LeitorRegistros.LF; // final de linha da entrada, repetido na saída
+    private int runsIniciais;
+
+    OrdenacaoRegistros(FormatoRegistro formato, ExecucaoOrdenacao execucao) {
+        this.formato = formato;
+        this.execucao = execucao;
+        this.metricas = execucao.metricas();
+    }
+
+    int runsIniciais() {
+        return runsIniciais;
+    }
+
+    /**
+     * Ordena a entrada inteira na saída
+     *
+     * @param memoria bytes do orçamento para o bloco (pares e dados)
+     * @param planejador fan-in e buffers do merge
+     * @return número de registros gravados
+     */
+    long ordenar(File entrada, File saida, long memoria, PlanejadorMerge planejador) throws IOException {
+        List<File> runs = new ArrayList<File>();
+        maximoPares = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, memoria / 3 / BYTES_POR_PAR));
+        maximoDados = (int) Math.min(Integer.MAX_VALUE - 8, memoria - (long) maximoPares * BYTES_POR_PAR);
+        execucao.reservar(memoria, "o bloco de registros");
+        try (LeitorRegistros leitor = new LeitorRegistros(entrada, formato)) {
+            metricas.iniciarFase(FaseOrdenacao.LEITURA);
+            boolean fim = false;
+            while (!fim) {
+                long inicio = System.nanoTime();
+                fim = lerBloco(leitor);
+                terminador = leitor.terminador();
+                metricas.registrar(FaseOrdenacao.LEITURA, inicio);
+                metricas.leitura(leitor.bytesConsumidos());
+
+                inicio = System.nanoTime();
+                ordenarPares(0, quantidade - 1);
+                metricas.registrar(FaseOrdenacao.ORDENACAO, inicio);
+
+                if (fim && runs.isEmpty()) {
+                    // a entrada coube em um bloco: sem runs nem merge
+                    metricas.elementosLidos(quantidade);
+                    return gravarBloco(saida);
+                }
+                runs.add(salvarRun());
+            }
+        } finally {
+            dados = new byte[0];
+            prefixos = new long[0];
+            ponteiros = new int[0];
+            execucao.liberar(memoria);
+        }
+        return mesclar(runs, saida, planejador);
+    }
+
+    /**
+     * Lê registros para o bloco até ele encher ou a entrada acabar
+     *
+     * @return true se a entrada acabou
+     */
+    private boolean lerBloco(LeitorRegistros leitor) throws IOException {
+        quantidade = 0;
+        ocupados = 0;
+        while (pendente || leitor.proximo()) {
+            pendente = false;
+            if (!acrescentar(leitor.dados(), leitor.inicio(), leitor.tamanho())) {
+                if (quantidade == 0) {
+                    throw new IOException("registro maior que o bloco de ordenação: " + leitor.tamanho() + " bytes.");
+                }
+                pendente = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copia o registro para o bloco como entrada de run (cabeçalho, chave normalizada e
+     * registro) e acrescenta o par dele
+     *
+     * @return false se o bloco não tem espaço
+     */
+    private boolean acrescentar(byte[] registro, int inicio, int tamanho) throws IOException {
+        long necessario = (long) ocupados + RunRegistros.CABECALHO + formato.tamanhoMaximoChave(tamanho) + tamanho;
+        if (quantidade == prefixos.length && !crescerPares()) return false;
+        if (necessario > dados.length && !crescerDados(necessario)) return false;
+
+        int inicioChave = ocupados + RunRegistros.CABECALHO;
+        int fimChave = formato.normalizar(registro, inicio, tamanho, dados, inicioChave);
+        System.arraycopy(registro, inicio, dados, fimChave, tamanho);
+        RunRegistros.escreverInt(dados, ocupados, fimChave - inicioChave);
+        RunRegistros.escreverInt(dados, ocupados + Integer.BYTES, tamanho);
+
+        prefixos[quantidade] = FormatoRegistro.prefixo(dados, inicioChave, fimChave - inicioChave);
+        ponteiros[quantidade++] = ocupados;
+        ocupados = fimChave + tamanho;
+        return true;
+    }
+
+    private boolean crescerPares() {
+        if (prefixos.length >= maximoPares) return false;
+        int capacidade = (int) Math.min(maximoPares, Math.max(1024L, prefixos.length * 2L));
+        prefixos = Arrays.copyOf(prefixos, capacidade);
+        ponteiros = Arrays.copyOf(ponteiros, capacidade);
+        return true;
+    }
+
+    private boolean crescerDados(long necessario) {
+        if (necessario > maximoDados) return false;
+        long capacidade = Math.max(Math.min(CAPACIDADE_INICIAL, maximoDados), dados.length * 2L);
+        dados = Arrays.copyOf(dados, (int) Math.min(maximoDados, Math.max(capacidade, necessario)));
+        return true;
+    }
+
+    /**
+     * Quicksort dos pares [esquerda, direita] com mediana de três; a recursão vai para a
+     * partição menor, então a pilha fica em O(log n)
+     */
+    private void ordenarPares(int esquerda, int direita) {
+        while (direita - esquerda > LIMITE_INSERCAO) {
+            int meio = (esquerda + direita) >>> 1;
+            if (comparar(meio, esquerda) < 0) trocar(meio, esquerda);
+            if (comparar(direita, esquerda) < 0) trocar(direita, esquerda);
+            if (comparar(direita, meio) < 0) trocar(direita, meio);
+            // esquerda <= meio <= direita: o pivô fica em direita - 1 e as pontas servem de sentinela
+            int pivo = direita - 1;
+            trocar(meio, pivo);
+            int i = esquerda, j = pivo;
+            while (true) {
+                while (comparar(++i, pivo) < 0) { }
+                while (comparar(--j, pivo) > 0) { }
+                if (i >= j) break;
+                trocar(i, j);
+            }
+            trocar(i, pivo);
+            if (i - esquerda < direita - i) {
+                ordenarPares(esquerda, i - 1);
+                esquerda = i + 1;
+            } else {
+                ordenarPares(i + 1, direita);
+                direita = i - 1;
+            }
+        }
+        for (int i = esquerda + 1; i <= direita; i++) {
+            for (int j = i; j > esquerda && comparar(j, j - 1) < 0; j--) {
+                trocar(j, j - 1);
+            }
+        }
+    }
+
+    // prefixo, depois a chave inteira e, por fim, a posição no bloco (a ordem da entrada)
+    private int comparar(int a, int b) {
+        if (prefixos[a] != prefixos[b]) return prefixos[a] < prefixos[b] ? -1 : 1;
+        int pa = ponteiros[a], pb = ponteiros[b];
+        int comparacao = FormatoRegistro.compararChaves(dados, pa + RunRegistros.CABECALHO, RunRegistros.lerInt(dados, pa),
+                dados, pb + RunRegistros.CABECALHO, RunRegistros.lerInt(dados, pb));
+        return comparacao != 0 ? comparacao : Integer.compare(pa, pb);
+    }
+
+    private void trocar(int a, int b) {
+        long prefixo = prefixos[a];
+        prefixos[a] = prefixos[b];
+        prefixos[b] = prefixo;
+        int ponteiro = ponteiros[a];
+        ponteiros[a] = ponteiros[b];
+        ponteiros[b] = ponteiro;
+    }
+
+    // grava os registros do bloco ordenado direto na saída
+    private long gravarBloco(File saida) throws IOException {
+        metricas.iniciarFase(FaseOrdenacao.ESCRITA_SAIDA);
+        long inicio = System.nanoTime();
+        try (EscritorRegistros escritor = new EscritorRegistros(saida, formato, terminador)) {
+            for (int i = 0; i < quantidade; i++) {
+                int entrada = ponteiros[i];
+                escritor.escrever(dados, entrada + RunRegistros.CABECALHO + RunRegistros.lerInt(dados, entrada),
+                        RunRegistros.lerInt(dados, entrada + Integer.BYTES));
+            }
+        }
+        metricas.registrar(FaseOrdenacao.ESCRITA_SAIDA, inicio);
+        return quantidade;
+    }
+
+    private File salvarRun() throws IOException {
+        long inicio = System.nanoTime();
+        File run = execucao.criarArquivoTemporario("registros");
+        try (RunRegistros.Escritor escritor = new RunRegistros.Escritor(run, execucao.arena())) {
+            for (int i = 0; i < quantidade; i++) {
+                escritor.escrever(dados, ponteiros[i]);
+            }
+        }
+        runsIniciais++;
+        metricas.registrar(FaseOrdenacao.GRAVACAO_RUNS, inicio);
+        metricas.runGravado(run.length(), quantidade);
+        return run;
+    }
+
+    /**
+     * Passos intermediários até sobrarem no máximo fanIn runs e o passo final na saída
+     */
+    private long mesclar(List<File> runs, File saida, PlanejadorMerge planejador) throws IOException {
+        int fanIn = planejador.fanIn(runs.size());
+        int mesclagens = planejador.mesclagens(runs.size());
+        metricas.planoMerge(planejador.passos(runs.size()), fanIn, mesclagens);
+        if (mesclagens > 0) metricas.iniciarFase(FaseOrdenacao.MERGE_INTERMEDIARIO);
+        while (runs.size() > fanIn) {
+            runs = executarPasso(runs, fanIn, planejador);
+        }
+
+        metricas.iniciarFase(FaseOrdenacao.MERGE_FINAL);
+        long inicio = System.nanoTime();
+        int tamanhoBuffer = planejador.tamanhoBuffer(runs.size(), 1);
+        long reserva = (long) runs.size() * tamanhoBuffer;
+        execucao.reservar(reserva, "os buffers do merge");
+        long gravados = 0;
+        try {
+            List<RunRegistros.Leitor> fontes = abrir(runs, tamanhoBuffer);
+            try (ArvorePerdedores arvore = arvore(fontes);
+                 EscritorRegistros escritor = new EscritorRegistros(saida, formato, terminador)) {
+                while (!arvore.vazia()) {
+                    RunRegistros.Leitor fonte = fontes.get(arvore.fonteDaProxima());
+                    escritor.escrever(fonte.atual(), RunRegistros.CABECALHO + fonte.tamanhoChave(), fonte.tamanhoRegistro());
+                    arvore.remover();
+                    if ((++gravados & MetricasOrdenacao.MASCARA_PROGRESSO) == 0) metricas.gravados(gravados);
+                }
+            }
+        } finally {
+            execucao.liberar(reserva);
+        }
+        metricas.gravados(gravados);
+        metricas.registrar(FaseOrdenacao.MERGE_FINAL, inicio);
+        for (File run : runs) {
+            run.delete();
+        }
+        return gravados;
+    }
+
+    // um passo: grupos de tamanho equilibrado, cada um mesclado em um novo run (na ordem dos grupos)
+    private List<File> executarPasso(List<File> runs, int fanIn, PlanejadorMerge planejador) throws IOException {
+        int grupos = (runs.size() + fanIn - 1) / fanIn;
+        List<File> proximos = new ArrayList<File>(grupos);
+        int inicioGrupo = 0;
+        for (int g = 0; g < grupos; g++) {
+            int tamanhoGrupo = (runs.size() - inicioGrupo) / (grupos - g);
+            proximos.add(mesclarEmRun(runs.subList(inicioGrupo, inicioGrupo + tamanhoGrupo),
+                    planejador.tamanhoBuffer(tamanhoGrupo, 1)));
+            inicioGrupo += tamanhoGrupo;
+        }
+        return proximos;
+    }
+
+    private File mesclarEmRun(List<File> grupo, int tamanhoBuffer) throws IOException {
+        long inicio = System.nanoTime();
+        long reserva = (long) grupo.size() * tamanhoBuffer;
+        execucao.reservar(reserva, "os buffers de uma mesclagem intermediária");
+        File run;
+        try {
+            List<RunRegistros.Leitor> fontes = abrir(grupo, tamanhoBuffer);
+            try (ArvorePerdedores arvore = arvore(fontes)) {
+                run = execucao.criarArquivoTemporario("mesclagem");
+                try (RunRegistros.Escritor escritor = new RunRegistros.Escritor(run, execucao.arena())) {
+                    while (!arvore.vazia()) {
+                        escritor.escrever(fontes.get(arvore.fonteDaProxima()));
+                        arvore.remover();
+                    }
+                }
+            }
+        } finally {
+            execucao.liberar(reserva);
+        }
+        for (File arquivo : grupo) {
+            arquivo.delete();
+        }
+        metricas.registrar(FaseOrdenacao.MERGE_INTERMEDIARIO, inicio);
+        metricas.mesclagemConcluida(run.length());
+        return run;
+    }
+
+    // abre um leitor para cada run; se algum falhar, fecha os que já foram abertos
+    private List<RunRegistros.Leitor> abrir(List<File> runs, int tamanhoBuffer) throws IOException {
+        List<RunRegistros.Leitor> fontes = new ArrayList<RunRegistros.Leitor>();
+        try {
+            for (File run : runs) {
+                fontes.add(new RunRegistros.Leitor(run, tamanhoBuffer, execucao.arena()));
+            }
+        } catch (IOException e) {
+            for (RunRegistros.Leitor fonte : fontes) {
+                fonte.close();
+            }
+            throw e;
+        }
+        return fontes;
+    }
+
+    // prefixos iguais: a chave inteira e, se ela também empatar, o run mais antigo primeiro
+    private static ArvorePerdedores arvore(List<RunRegistros.Leitor> fontes) {
+        return new ArvorePerdedores(fontes, (a, b) -> {
+            RunRegistros.Leitor fa = fontes.get(a), fb = fontes.get(b);
+            int comparacao = FormatoRegistro.compararChaves(fa.atual(), RunRegistros.CABECALHO, fa.tamanhoChave(),
+                    fb.atual(), RunRegistros.CABECALHO, fb.tamanhoChave());
+            return comparacao != 0 ? comparacao < 0 : a < b;
+        });
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Acompanhamento de uma ordenação em andamento (ExternalSorter.Builder.ouvinte).
+ *
+ * Os métodos são chamados das threads da própria ordenação (inclusive das threads de
+ * escrita de runs e de merge), então precisam ser rápidos e seguros entre threads:
+ * enquanto um deles executa, a ordenação que o chamou fica parada.
+ */
+public interface OuvinteOrdenacao {
+
+    /** a ordenação entrou na fase informada */
+    default void faseIniciada(FaseOrdenacao fase, MetricasOrdenacao metricas) {
+    }
+
+    /**
+     * Progresso dentro da fase atual: chamado a cada run gravado, a cada mesclagem
+     * intermediária concluída e a cada MetricasOrdenacao.INTERVALO_PROGRESSO valores
+     * gravados no merge final
+     */
+    default void progresso(MetricasOrdenacao metricas) {
+    }
+
+    /** a ordenação terminou (também em caso de erro) */
+    default void concluida(MetricasOrdenacao metricas) {
+    }
+}
@@ -0,0 +1,195 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Planeja e executa o merge em vários passos quando há runs demais para um passo só.
+ *
+ * Recebe o fan-in máximo (quantos runs podem ficar abertos em uma mesclagem, o que limita os
+ * descritores de arquivo) e a memória total dos buffers de leitura do merge. A partir disso:
+ *  - calcula quantos passos são necessários: ceil(log_fanIn(runs))
+ *  - usa o menor fan-in que ainda resolve nesse número de passos, o que deixa buffers maiores
+ *  - divide a memória entre os runs abertos ao mesmo tempo, para leituras sequenciais grandes
+ *  - executa as mesclagens independentes de um mesmo passo em paralelo
+ *
+ * O fan-in e as threads são reduzidos quando nem os buffers mínimos de todos os runs abertos
+ * ao mesmo tempo cabem na memória do merge (ver memoriaPorRun), em vez de passar do orçamento.
+ *
+ * Os passos intermediários geram novos runs binários; o último passo fica com o chamador
+ * (ExecucaoOrdenacao.mesclarArquivosOrdenados), que grava o arquivo de saída, dividido em
+ * até threads partições pelo MergeParticionado.
+ */
+class PlanejadorMerge {
+    public static final int FAN_IN_PADRAO = 128;
+    static final int TAMANHO_MINIMO_BUFFER = 4 * 1024;          // 4KB por run aberto
+    static final int TAMANHO_MINIMO_ANTECIPADO = 2 * BufferArquivoBinario.TAMANHO_BUFFER_DECODIFICACAO; // 2 x 8KB
+    static final int TAMANHO_MAXIMO_BUFFER = 16 * 1024 * 1024;  // 16MB por run aberto
+
+    private final int fanInMaximo;
+    private final long memoriaMerge;
+    private final int threads;
+    private final boolean leituraAntecipada;
+
+    public PlanejadorMerge(int fanInMaximo, long memoriaMerge, int threads) {
+        this(fanInMaximo, memoriaMerge, threads, true);
+    }
+
+    /**
+     * @param fanInMaximo quantidade máxima de runs abertos por mesclagem (mínimo 2)
+     * @param memoriaMerge memória total, em bytes, dos buffers de leitura do merge
+     * @param threads quantidade de mesclagens intermediárias (e de partições do passo final)
+     *                executadas ao mesmo tempo
+     * @param leituraAntecipada se os runs são lidos com buffer duplo em segundo plano (CanalLeituraAntecipada)
+     */
+    public PlanejadorMerge(int fanInMaximo, long memoriaMerge, int threads, boolean leituraAntecipada) {
+        this.leituraAntecipada = leituraAntecipada;
+        this.memoriaMerge = Math.max(TAMANHO_MINIMO_BUFFER * 2L, memoriaMerge);
+
+        // quantos runs abertos ao mesmo tempo cabem com o menor buffer possível
+        long runsQueCabem = this.memoriaMerge / memoriaPorRun(tamanhoMinimo(leituraAntecipada), leituraAntecipada);
+        this.threads = (int) Math.max(1, Math.min(Math.max(1, threads), runsQueCabem / 2));
+        this.fanInMaximo = (int) Math.max(2, Math.min(fanInMaximo, runsQueCabem / this.threads));
+    }
+
+    /**
+     * Memória ocupada pela leitura de um run com o buffer informado (o que o ExecucaoOrdenacao
+     * reserva no orçamento por run aberto). Com leitura antecipada são os dois buffers do
+     * CanalLeituraAntecipada mais o buffer de decodificação; nos dois casos, mais o bloco
+     * decodificado do DELTA_BLOCOS.
+     */
+    static long memoriaPorRun(int tamanhoBuffer, boolean leituraAntecipada) {
+        long bloco = (long) CodecRun.VALORES_POR_BLOCO * Long.BYTES;
+        if (!leituraAntecipada) return Math.max(tamanhoBuffer, CabecalhoRun.TAMANHO) + bloco;
+        return 2L * Math.max(BufferArquivoBinario.TAMANHO_BUFFER_DECODIFICACAO, tamanhoBuffer / 2)
+                + BufferArquivoBinario.TAMANHO_BUFFER_DECODIFICACAO + bloco;
+    }
+
+    private static int tamanhoMinimo(boolean leituraAntecipada) {
+        return leituraAntecipada ? TAMANHO_MINIMO_ANTECIPADO : TAMANHO_MINIMO_BUFFER;
+    }
+
+    /**
+     * Mesclagens simultâneas que cabem na memória do merge (no passo final, as partições do
+     * MergeParticionado)
+     */
+    public int threads() {
+        return threads;
+    }
+
+    public boolean leituraAntecipada() {
+        return leituraAntecipada;
+    }
+
+    /**
+     * Quantidade de passos de merge para a quantidade de runs (0 se não há nada a mesclar)
+     */
+    public int passos(int runs) {
+        int passos = 0;
+        for (long alcance = 1; alcance < runs; alcance *= fanInMaximo) {
+            passos++;
+        }
+        return passos;
+    }
+
+    /**
+     * Menor fan-in que ainda mescla todos os runs no mesmo número de passos: ceil(runs^(1/passos))
+     */
+    public int fanIn(int runs) {
+        int passos = passos(runs);
+        if (passos <= 1) return Math.max(2, Math.min(runs, fanInMaximo));
+        int fanIn = (int) Math.ceil(Math.pow(runs, 1.0 / passos) - 1e-9);
+        while (Math.pow(fanIn, passos) < runs) fanIn++;
+        return Math.max(2, Math.min(fanIn, fanInMaximo));
+    }
+
+    /**
+     * Quantidade de mesclagens intermediárias que reduzir fará para a quantidade de runs
+     */
+    public int mesclagens(int runs) {
+        int fanIn = fanIn(runs);
+        int mesclagens = 0;
+        while (runs > fanIn) {
+            runs = (runs + fanIn - 1) / fanIn;
+            mesclagens += runs;
+        }
+        return mesclagens;
+    }
+
+    /**
+     * Tamanho do buffer de cada run quando há mesclagens simultâneas com runsPorMesclagem runs cada.
+     * Com leitura antecipada esse valor é dividido entre os dois buffers, e o buffer de
+     * decodificação já foi descontado da parte de cada run. O resultado é arredondado para
+     * baixo até uma potência de 2, uma classe de tamanho da ArenaBuffers: assim os buffers de
+     * uma mesclagem servem às seguintes mesmo com fan-in diferentes.
+     */
+    public int tamanhoBuffer(int runsPorMesclagem, int mesclagensSimultaneas) {
+        long porRun = memoriaMerge / ((long) Math.max(1, runsPorMesclagem) * Math.max(1, mesclagensSimultaneas));
+        if (leituraAntecipada) porRun -= BufferArquivoBinario.TAMANHO_BUFFER_DECODIFICACAO;
+        long tamanho = Math.max(tamanhoMinimo(leituraAntecipada), Math.min(TAMANHO_MAXIMO_BUFFER, porRun));
+        return Integer.highestOneBit((int) tamanho);
+    }
+
+    /**
+     * Executa os passos intermediários até sobrarem no máximo fanIn runs
+     *
+     * @param runs runs iniciais (são apagados depois de mesclados)
+     * @param execucao ordenação que mescla cada grupo em um novo run temporário
+     * @return runs que restam para o passo final
+     */
+    public List<File> reduzir(List<File> runs, ExecucaoOrdenacao execucao) throws IOException {
+        int fanIn = fanIn(runs.size());
+        if (runs.size() <= fanIn) return runs;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, tarefa -> {
+            Thread thread = new Thread(tarefa, "merge-intermediario");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<File> atuais = runs;
+            while (atuais.size() > fanIn) {
+                atuais = executarPasso(atuais, fanIn, executor, execucao);
+            }
+            return atuais;
+        } finally {
+            // numa falha, o chamador só apaga os runs depois que as mesclagens em andamento pararam
+            GeradorRunsParalelo.encerrar(executor);
+        }
+    }
+
+    /**
+     * Um passo: divide os runs em grupos de tamanho equilibrado (no máximo fanIn cada)
+     * e mescla cada grupo em um novo run
+     */
+    private List<File> executarPasso(List<File> runs, int fanIn, ExecutorService executor,
+                                     ExecucaoOrdenacao execucao) throws IOException {
+        int grupos = (runs.size() + fanIn - 1) / fanIn;
+        int simultaneas = Math.min(grupos, threads);
+        List<Future<File>> resultados = new ArrayList<>(grupos);
+
+        int inicio = 0;
+        for (int g = 0; g < grupos; g++) {
+            int tamanhoGrupo = (runs.size() - inicio) / (grupos - g);
+            List<File> grupo = new ArrayList<>(runs.subList(inicio, inicio + tamanhoGrupo));
+            int tamanhoBuffer = tamanhoBuffer(grupo.size(), simultaneas);
+            resultados.add(executor.submit(() -> execucao.mesclarEmRun(grupo, tamanhoBuffer, leituraAntecipada)));
+            inicio += tamanhoGrupo;
+        }
+
+        List<File> proximos = new ArrayList<>(grupos);
+        try {
+            for (Future<File> resultado : resultados) {
+                proximos.add(resultado.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("merge interrompido.");
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException) throw (IOException) causa;
+            if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+            throw new IOException(causa);
+        }
+        return proximos;
+    }
+}
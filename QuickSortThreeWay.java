@@ -1,5 +1,9 @@
 import java.io.*;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 @SuppressWarnings("SpellCheckingInspection")
 /**
@@ -16,71 +20,207 @@ import java.util.Random;
  *  - não possui estabilidade
  *  - faz ordenação in-place
  *  - diferente do QuickSort convencional, evita reordenação de elementos iguais ao pivô
+ *  - partições grandes são ordenadas em paralelo (fork/join)
+ *  - pivô pela mediana de três (ou ninther em trechos grandes), sem embaralhamento prévio
+ *  - trechos pequenos vão para o insertion sort; profundidade degenerada cai no heapsort
  *
  * Complexidade de tempo:
  *  - O(nlog(n)) - melhor caso
  *  - O(n log(n)) - caso médio
- *  - O(n²) - pior caso
+ *  - O(n log(n)) - pior caso (fallback para heapsort)
  **/
 public class QuickSortThreeWay {
-    private static long memoriaMaximaUtilizada = 0;
+    static final int LIMIAR_INSERCAO = 32;      // trechos menores vão para o insertion sort
+    static final int LIMIAR_NINTHER = 128;      // a partir daqui o pivô é a mediana de três medianas
+    static final int LIMIAR_PARALELO = 1 << 13; // trechos menores não compensam uma nova tarefa
+    static final double FRACAO_HEAP_EM_MEMORIA = 0.8; // orçamento padrão do main: a entrada inteira fica no heap
 
     /**
-     * Atualiza a memória máxima utilizada durante a execução
+     * Implementação da classe principal: fase de ordenação
+     **/
+
+    //aplicação do QuickSort Three-Way, com uma thread por processador
+    public static void quickSort3Way(int[] arr) {
+        quickSort3Way(arr, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads quantidade de threads do ForkJoinPool (1 = sequencial)
      */
-    private static void atualizarMemoriaUtilizada() {
-        long memoriaAtual = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-        if (memoriaAtual > memoriaMaximaUtilizada) {
-            memoriaMaximaUtilizada = memoriaAtual;
+    public static void quickSort3Way(int[] arr, int threads) {
+        // caminho rápido: intervalo de valores pequeno (ex.: 0-9) é ordenado por contagem em O(n)
+        if (HistogramaContagem.ordenarSeCouber(arr, HistogramaContagem.LIMITE_PADRAO)) return;
+
+        // acima de 2*log2(n) níveis a entrada é adversária para o pivô: o trecho cai no heapsort
+        int profundidadeMaxima = 2 * (32 - Integer.numberOfLeadingZeros(Math.max(1, arr.length)));
+        if (threads <= 1 || arr.length <= LIMIAR_PARALELO) {
+            sort(arr, 0, arr.length - 1, profundidadeMaxima);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new TarefaOrdenacao(arr, 0, arr.length - 1, profundidadeMaxima));
+            } finally {
+                pool.shutdown();
+            }
         }
     }
 
     /**
-     * Implementação da classe principal: fase de ordenação
-     **/
+     * Tarefa fork/join: particiona enquanto o trecho for grande, entregando a partição menor
+     * a uma nova tarefa e seguindo com a maior; o resto é ordenado sequencialmente.
+     */
+    private static final class TarefaOrdenacao extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] arr;
+        private final int low;
+        private final int high;
+        private final int profundidade;
+
+        TarefaOrdenacao(int[] arr, int low, int high, int profundidade) {
+            this.arr = arr;
+            this.low = low;
+            this.high = high;
+            this.profundidade = profundidade;
+        }
+
+        @Override
+        protected void compute() {
+            List<TarefaOrdenacao> filhas = new ArrayList<>();
+            int low = this.low;
+            int high = this.high;
+            int profundidade = this.profundidade;
+
+            while (high - low >= LIMIAR_PARALELO && profundidade > 0) {
+                profundidade--;
+                long limites = particionar(arr, low, high);
+                int lt = (int) (limites >>> 32);
+                int gt = (int) limites;
+
+                TarefaOrdenacao filha;
+                if (lt - low < high - gt) {
+                    filha = new TarefaOrdenacao(arr, low, lt - 1, profundidade);
+                    low = gt + 1;
+                } else {
+                    filha = new TarefaOrdenacao(arr, gt + 1, high, profundidade);
+                    high = lt - 1;
+                }
+                filha.fork();
+                filhas.add(filha);
+            }
+            sort(arr, low, high, profundidade);
 
-    // embaralha o array para evitar o pior caso O(n²)
-    private static void embaralhar(int[] arr) {
-        Random rand = new Random();
-        for (int i = arr.length - 1; i > 0; i--) {
-            int j = rand.nextInt(i + 1);
-            swap(arr, i, j); // função auxiliar
+            for (int i = filhas.size() - 1; i >= 0; i--) {
+                filhas.get(i).join();
+            }
         }
-        atualizarMemoriaUtilizada();
     }
 
-    //aplicação do QuickSort Three-Way
-    public static void quickSort3Way(int[] arr) {
-        embaralhar(arr);
-        sort(arr, 0, arr.length - 1);
+    // funçao principal de ordenação utilizando o Quick Sort Three-way (trecho [low, high])
+    private static void sort(int[] arr, int low, int high, int profundidade) {
+        while (high - low >= LIMIAR_INSERCAO) {
+            if (profundidade-- == 0) {
+                heapSort(arr, low, high);
+                return;
+            }
+
+            long limites = particionar(arr, low, high);
+            int lt = (int) (limites >>> 32);
+            int gt = (int) limites;
+
+            // recursão só na partição menor, a maior continua no laço (pilha O(log n))
+            if (lt - low < high - gt) {
+                sort(arr, low, lt - 1, profundidade);
+                low = gt + 1;
+            } else {
+                sort(arr, gt + 1, high, profundidade);
+                high = lt - 1;
+            }
+        }
+        insertionSort(arr, low, high);
     }
 
-    // funçao principal de ordenação utilizando o Quick Sort Three-way recursivamente
-    private static void sort(int[] arr, int low, int high) {
-        if (low >= high) return; // caso base: subarray com 0 ou 1 elemento
+    /**
+     * Partição three-way de Dijkstra em torno do pivô escolhido por escolherPivo
+     *
+     * @return lt (32 bits altos) e gt (32 bits baixos): [lt, gt] contém os iguais ao pivô
+     */
+    private static long particionar(int[] arr, int low, int high) {
+        swap(arr, low, escolherPivo(arr, low, high));
 
         int lt = low;        // indice de elementos menores que pivô
         int gt = high;       // indice de elementos maiores que o pivô
         int i = low + 1;     // indice que percorre o array
-        int pivot = arr[low]; // escolhe o pivô como primeiro elemento
+        int pivot = arr[low];
 
         while (i <= gt) {
             if (arr[i] < pivot) {
-                swap(arr, lt, i); // leva o elemento menor que o pivô para a esquerda
-                lt++;
-                i++;
+                swap(arr, lt++, i++); // leva o elemento menor que o pivô para a esquerda
             } else if (arr[i] > pivot) {
-                swap(arr, i, gt); // leva o elemento maior que o pivô para a direita
-                gt--;
+                swap(arr, i, gt--);   // leva o elemento maior que o pivô para a direita
             } else {
                 i++; // elemento igual ao pivô, apenas avança
             }
         }
-        atualizarMemoriaUtilizada();
+        return ((long) lt << 32) | (gt & 0xFFFFFFFFL);
+    }
+
+    // mediana de três; em trechos grandes, ninther de Tukey (mediana das medianas de três trios)
+    private static int escolherPivo(int[] arr, int low, int high) {
+        int meio = (low + high) >>> 1;
+        if (high - low < LIMIAR_NINTHER) {
+            return medianaDeTres(arr, low, meio, high);
+        }
+        int passo = (high - low) >>> 3;
+        return medianaDeTres(arr,
+                medianaDeTres(arr, low, low + passo, low + 2 * passo),
+                medianaDeTres(arr, meio - passo, meio, meio + passo),
+                medianaDeTres(arr, high - 2 * passo, high - passo, high));
+    }
+
+    // índice do valor mediano entre arr[i], arr[j] e arr[k]
+    private static int medianaDeTres(int[] arr, int i, int j, int k) {
+        return arr[i] < arr[j]
+                ? (arr[j] < arr[k] ? j : (arr[i] < arr[k] ? k : i))
+                : (arr[k] < arr[j] ? j : (arr[k] < arr[i] ? k : i));
+    }
+
+    private static void insertionSort(int[] arr, int low, int high) {
+        for (int i = low + 1; i <= high; i++) {
+            int valor = arr[i];
+            int j = i - 1;
+            while (j >= low && arr[j] > valor) {
+                arr[j + 1] = arr[j];
+                j--;
+            }
+            arr[j + 1] = valor;
+        }
+    }
+
+    // fallback O(n log n) garantido para o trecho [low, high]
+    private static void heapSort(int[] arr, int low, int high) {
+        int n = high - low + 1;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            descer(arr, low, i, n);
+        }
+        for (int fim = n - 1; fim > 0; fim--) {
+            swap(arr, low, low + fim);
+            descer(arr, low, 0, fim);
+        }
+    }
 
-        // recursão para subarrays menores e maiores
-        sort(arr, low, lt - 1);  // partição menor que o pivô
-        sort(arr, gt + 1, high); // partição maior que o pivô
+    // heap de máximo com raiz em arr[base]
+    private static void descer(int[] arr, int base, int i, int n) {
+        int valor = arr[base + i];
+        while (true) {
+            int filho = 2 * i + 1;
+            if (filho >= n) break;
+            if (filho + 1 < n && arr[base + filho + 1] > arr[base + filho]) filho++;
+            if (arr[base + filho] <= valor) break;
+            arr[base + i] = arr[base + filho];
+            i = filho;
+        }
+        arr[base + i] = valor;
     }
 
     // função auxiliar responsável por trocar os elementos de lugar dentro do array
@@ -91,83 +231,149 @@ public class QuickSortThreeWay {
     }
 
     /**
-     * Implementação da classe principal: gerenciamento dos arquivos de entrada e saída
-     **/
+     * Versão para long[] usada pela ExecucaoOrdenacao na geração dos runs: ordena in-place o
+     * intervalo [inicio, fim) sem o embaralhamento prévio, com o mesmo pivô (mediana de três ou
+     * ninther) e o mesmo corte para o insertion sort (LIMIAR_INSERCAO) da versão para int[].
+     * A recursão é feita sempre na partição menor.
+     * Se a profundidade passar de 2*log2(n) (entrada adversária para o pivô),
+     * o trecho restante cai no dual-pivot quicksort do Arrays.sort.
+     */
+    static void ordenar(long[] arr, int inicio, int fim) {
+        int profundidadeMaxima = 2 * (32 - Integer.numberOfLeadingZeros(Math.max(1, fim - inicio)));
+        sort(arr, inicio, fim - 1, profundidadeMaxima);
+    }
 
-    // função responsável por ler o arquivo de entrada
-    private static int[] lerNumerosDoArquivo(String caminho) throws IOException {
-        BufferedReader leitor = new BufferedReader(new FileReader(caminho));
-        String linha = leitor.readLine();
-        leitor.close();
+    private static void sort(long[] arr, int low, int high, int profundidade) {
+        while (high - low >= LIMIAR_INSERCAO) {
+            if (profundidade-- == 0) {
+                Arrays.sort(arr, low, high + 1);
+                return;
+            }
+
+            long limites = particionar(arr, low, high);
+            int lt = (int) (limites >>> 32);
+            int gt = (int) limites;
 
-        if (linha == null || linha.trim().isEmpty()) {
-            throw new IOException("arquivo vazio.");
+            // recursão só na partição menor, a maior continua no laço (pilha O(log n))
+            if (lt - low < high - gt) {
+                sort(arr, low, lt - 1, profundidade);
+                low = gt + 1;
+            } else {
+                sort(arr, gt + 1, high, profundidade);
+                high = lt - 1;
+            }
         }
+        insertionSort(arr, low, high);
+    }
 
-        String[] partes = linha.split(",\\s*");
+    // partição three-way de Dijkstra, como a de int[]: lt nos 32 bits altos e gt nos baixos
+    private static long particionar(long[] arr, int low, int high) {
+        swap(arr, low, escolherPivo(arr, low, high));
+
+        int lt = low;
+        int gt = high;
+        int i = low + 1;
+        long pivot = arr[low];
+
+        while (i <= gt) {
+            if (arr[i] < pivot) {
+                swap(arr, lt++, i++);
+            } else if (arr[i] > pivot) {
+                swap(arr, i, gt--);
+            } else {
+                i++;
+            }
+        }
+        return ((long) lt << 32) | (gt & 0xFFFFFFFFL);
+    }
 
-        int[] numeros = new int[partes.length]; // array local que receberá os valores contidos no arquivo de entrada
-        for (int i = 0; i < partes.length; i++) {
-            numeros[i] = Integer.parseInt(partes[i]);
+    private static int escolherPivo(long[] arr, int low, int high) {
+        int meio = (low + high) >>> 1;
+        if (high - low < LIMIAR_NINTHER) {
+            return medianaDeTres(arr, low, meio, high);
         }
-        atualizarMemoriaUtilizada();
-        return numeros;
+        int passo = (high - low) >>> 3;
+        return medianaDeTres(arr,
+                medianaDeTres(arr, low, low + passo, low + 2 * passo),
+                medianaDeTres(arr, meio - passo, meio, meio + passo),
+                medianaDeTres(arr, high - 2 * passo, high - passo, high));
     }
 
-    // função para escrever os números no arquivo de saída
-    private static void escreverNumerosNoArquivo(int[] numeros, String caminho) throws IOException {
-        BufferedWriter escritor = new BufferedWriter(new FileWriter(caminho));
+    // índice do valor mediano entre arr[i], arr[j] e arr[k]
+    private static int medianaDeTres(long[] arr, int i, int j, int k) {
+        return arr[i] < arr[j]
+                ? (arr[j] < arr[k] ? j : (arr[i] < arr[k] ? k : i))
+                : (arr[k] < arr[j] ? j : (arr[k] < arr[i] ? k : i));
+    }
 
-        for (int i = 0; i < numeros.length; i++) {
-            escritor.write(String.valueOf(numeros[i]));
-            if (i < numeros.length - 1) {
-                escritor.write(", ");
+    private static void insertionSort(long[] arr, int low, int high) {
+        for (int i = low + 1; i <= high; i++) {
+            long valor = arr[i];
+            int j = i - 1;
+            while (j >= low && arr[j] > valor) {
+                arr[j + 1] = arr[j];
+                j--;
             }
+            arr[j + 1] = valor;
         }
-        escritor.newLine();
-        escritor.close();
-        atualizarMemoriaUtilizada();
+    }
+
+    private static void swap(long[] arr, int i, int j) {
+        long temp = arr[i];
+        arr[i] = arr[j];
+        arr[j] = temp;
     }
 
     /**
-     * Implementação da classe principal: função main responsável por ordenar os dados
+     * Implementação da classe principal: função main responsável por ordenar os dados.
+     * A leitura, a ordenação em memória e a escrita ficam com o ExternalSorter
+     * (ordenarEmMemoria), com chaves int e este algoritmo (ou o radix, se pedido).
+     * Como a entrada inteira fica em memória, o orçamento padrão aqui é maior que o do
+     * ExternalSort: FRACAO_HEAP_EM_MEMORIA do heap máximo.
      **/
     public static void main(String[] args) {
-        if (args.length != 2) {
+        ExternalSorter.Builder builder = ExternalSorter.builder()
+                .tipoChave(TipoChave.INT)
+                .memoriaMaxima((long) (Runtime.getRuntime().maxMemory() * FRACAO_HEAP_EM_MEMORIA))
+                .threadsOrdenacao(Runtime.getRuntime().availableProcessors())
+                .quebraLinhaFinal(true); // a saída deste CLI sempre terminou com uma quebra de linha
+        List<String> posicionais = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--mmap")) {
+                builder.mapearArquivos(true); // lê a entrada mapeada em memória
+            } else if (arg.equals("--radix")) {
+                builder.algoritmoBloco(ConfiguracaoOrdenacao.AlgoritmoBloco.RADIX); // radix em vez do quicksort
+            } else if (arg.startsWith("--threads=")) {
+                builder.threadsOrdenacao(Math.max(1, Integer.parseInt(arg.substring("--threads=".length()))));
+            } else if (arg.startsWith("--memoria=")) {
+                builder.memoriaMaxima(Long.parseLong(arg.substring("--memoria=".length())) * 1024 * 1024);
+            } else {
+                posicionais.add(arg);
+            }
+        }
+
+        if (posicionais.size() != 2) {
             System.out.println("Argumentos inseridos de maneira errada.\n" +
-                    "uso correto: java QuickSortThreeWay arquivoEntrada.txt arquivoSaida.txt");
+                    "uso correto: java QuickSortThreeWay [--mmap] [--threads=N] [--radix] [--memoria=MB] arquivoEntrada.txt arquivoSaida.txt");
             return;
         }
 
-        String arquivoEntrada = args[0];
-        String arquivoSaida = args[1];
+        String arquivoEntrada = posicionais.get(0);
+        String arquivoSaida = posicionais.get(1);
 
         try {
-            // Marca o tempo de início
-            long inicio = System.currentTimeMillis();
-
-            // Lê os números do arquivo de entrada
-            int[] numeros = lerNumerosDoArquivo(arquivoEntrada);
-
-            // Ordena com QuickSort Three-Way
-            quickSort3Way(numeros);
-
-            // Escreve no arquivo de saída
-            escreverNumerosNoArquivo(numeros, arquivoSaida);
-
-            // Calcula tempo de execução
-            long fim = System.currentTimeMillis();
-            long tempoExecucao = fim - inicio;
+            ResultadoOrdenacao resultado = builder.build()
+                    .ordenarEmMemoria(new File(arquivoEntrada), new File(arquivoSaida));
 
             // Converte memória máxima utilizada para MB
-            double memoriaUtilizadaMB = memoriaMaximaUtilizada / (1024.0 * 1024.0);
+            double memoriaUtilizadaMB = resultado.memoriaMaximaUtilizada() / (1024.0 * 1024.0);
 
             System.out.println("Ordenação concluída. Resultado salvo em: " + arquivoSaida);
-            System.out.println("Tempo de execução: " + tempoExecucao + " ms");
+            System.out.println("Tempo de execução: " + resultado.tempoMillis() + " ms");
             System.out.printf("Memória máxima utilizada: %.2f MB%n", memoriaUtilizadaMB);
 
         } catch (IOException e) {
             System.out.println("Erro ao acessar arquivos: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+/**
+ * Estatísticas de uma ordenação feita pelo ExternalSorter
+ */
+public final class ResultadoOrdenacao {
+    private final long quantidade;
+    private final int runsIniciais;
+    private final long tempoMillis;
+    private final long memoriaMaximaUtilizada;
+    private final long orcamentoMemoria;
+    private final long memoriaReservadaMaxima;
+    private final MetricasOrdenacao metricas;
+
+    ResultadoOrdenacao(long quantidade, int runsIniciais, long tempoMillis, long memoriaMaximaUtilizada,
+                       long orcamentoMemoria, long memoriaReservadaMaxima, MetricasOrdenacao metricas) {
+        this.quantidade = quantidade;
+        this.runsIniciais = runsIniciais;
+        this.tempoMillis = tempoMillis;
+        this.memoriaMaximaUtilizada = memoriaMaximaUtilizada;
+        this.orcamentoMemoria = orcamentoMemoria;
+        this.memoriaReservadaMaxima = memoriaReservadaMaxima;
+        this.metricas = metricas;
+    }
+
+    /** quantidade de valores gravados na saída */
+    public long quantidade() {
+        return quantidade;
+    }
+
+    /** quantidade de arquivos temporários criados na formação dos runs (0 = ordenado em memória) */
+    public int runsIniciais() {
+        return runsIniciais;
+    }
+
+    public long tempoMillis() {
+        return tempoMillis;
+    }
+
+    /**
+     * Maior uso do heap observado durante a ordenação, em bytes (inclui o uso logo antes de
+     * cada coleta de lixo, ver MedidorMemoria)
+     */
+    public long memoriaMaximaUtilizada() {
+        return memoriaMaximaUtilizada;
+    }
+
+    /** orçamento de memória da ordenação, em bytes (ver OrcamentoMemoria) */
+    public long orcamentoMemoria() {
+        return orcamentoMemoria;
+    }
+
+    /** maior parte do orçamento reservada ao mesmo tempo, em bytes */
+    public long memoriaReservadaMaxima() {
+        return memoriaReservadaMaxima;
+    }
+
+    /** métricas detalhadas (tempo por fase, bytes, merge, GC) da ordenação concluída */
+    public MetricasOrdenacao metricas() {
+        return metricas;
+    }
+}
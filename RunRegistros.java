@@ -0,0 +1,209 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Formato dos runs da ordenação de registros: uma sequência de entradas
+ *
+ *   tamanho da chave (4 bytes LE) | tamanho do registro (4 bytes LE) | chave normalizada | registro
+ *
+ * sem cabeçalho (o fim do arquivo é o fim do run). A chave normalizada (FormatoRegistro)
+ * viaja com o registro, então as mesclagens comparam sem extrair a chave de novo. No bloco da
+ * OrdenacaoRegistros cada registro já fica nesse formato: gravar um run é copiar as entradas
+ * na ordem dos pares ordenados.
+ */
+final class RunRegistros {
+    static final int CABECALHO = 2 * Integer.BYTES;
+
+    private RunRegistros() {
+    }
+
+    static int lerInt(byte[] dados, int posicao) {
+        return (dados[posicao] & 0xFF) | (dados[posicao + 1] & 0xFF) << 8
+                | (dados[posicao + 2] & 0xFF) << 16 | (dados[posicao + 3] & 0xFF) << 24;
+    }
+
+    static void escreverInt(byte[] dados, int posicao, int valor) {
+        dados[posicao] = (byte) valor;
+        dados[posicao + 1] = (byte) (valor >>> 8);
+        dados[posicao + 2] = (byte) (valor >>> 16);
+        dados[posicao + 3] = (byte) (valor >>> 24);
+    }
+
+    /** bytes da entrada que começa em posicao, com o cabeçalho */
+    static int tamanhoEntrada(byte[] dados, int posicao) {
+        return CABECALHO + lerInt(dados, posicao) + lerInt(dados, posicao + Integer.BYTES);
+    }
+
+    /**
+     * Grava as entradas de um run, com o buffer obtido da arena
+     */
+    static final class Escritor implements Closeable {
+        private final FileChannel canal;
+        private final ArenaBuffers arena;
+        private final ByteBuffer buffer;
+        private long elementos;
+
+        Escritor(File arquivo, ArenaBuffers arena) throws IOException {
+            this.canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.arena = arena;
+            this.buffer = arena.obter(EscritorRun.TAMANHO_BUFFER);
+        }
+
+        /**
+         * Grava a entrada completa que começa em posicao
+         */
+        void escrever(byte[] dados, int posicao) throws IOException {
+            int tamanho = tamanhoEntrada(dados, posicao);
+            if (buffer.remaining() < tamanho) {
+                descarregar();
+            }
+            if (tamanho > buffer.capacity()) {
+                ByteBuffer direto = ByteBuffer.wrap(dados, posicao, tamanho);
+                while (direto.hasRemaining()) {
+                    canal.write(direto);
+                }
+            } else {
+                buffer.put(dados, posicao, tamanho);
+            }
+            elementos++;
+        }
+
+        /**
+         * Grava a entrada atual de um run em leitura (mesclagem intermediária)
+         */
+        void escrever(Leitor fonte) throws IOException {
+            escrever(fonte.atual(), 0);
+        }
+
+        long elementos() {
+            return elementos;
+        }
+
+        private void descarregar() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public void close() throws IOException {
+            if (!canal.isOpen()) return;
+            try {
+                descarregar();
+            } finally {
+                canal.close();
+                arena.devolver(buffer);
+            }
+        }
+    }
+
+    /**
+     * Lê as entradas de um run para o merge. O valor exposto à ArvorePerdedores é o prefixo
+     * da chave; a entrada inteira fica em atual() até a próxima chamada a remover().
+     */
+    static final class Leitor implements FonteRunOrdenada {
+        private final FileChannel canal;
+        private final ArenaBuffers arena;
+        private final ByteBuffer buffer; // em modo de leitura
+        private byte[] atual = new byte[256];
+        private long prefixo;
+        private boolean vazio;
+
+        Leitor(File arquivo, int tamanhoBuffer, ArenaBuffers arena) throws IOException {
+            this.canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ);
+            this.arena = arena;
+            this.buffer = arena.obter(tamanhoBuffer);
+            this.buffer.flip();
+            try {
+                avancar();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        // lê a próxima entrada para atual
+        private void avancar() throws IOException {
+            int lidos = ler(atual, 0, CABECALHO);
+            if (lidos == 0) {
+                vazio = true;
+                return;
+            }
+            if (lidos < CABECALHO) throw truncado();
+            int tamanhoChave = lerInt(atual, 0);
+            int tamanho = tamanhoEntrada(atual, 0);
+            if (tamanho > atual.length) {
+                byte[] maior = new byte[Math.max(tamanho, atual.length * 2)];
+                System.arraycopy(atual, 0, maior, 0, CABECALHO);
+                atual = maior;
+            }
+            if (ler(atual, CABECALHO, tamanho - CABECALHO) < tamanho - CABECALHO) throw truncado();
+            prefixo = FormatoRegistro.prefixo(atual, CABECALHO, tamanhoChave);
+        }
+
+        // copia até tamanho bytes do run; menos só no fim do arquivo
+        private int ler(byte[] destino, int posicao, int tamanho) throws IOException {
+            int copiados = 0;
+            while (copiados < tamanho) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int lidos = 0;
+                    while (lidos == 0) {
+                        lidos = canal.read(buffer);
+                    }
+                    buffer.flip();
+                    if (lidos < 0) break;
+                }
+                int parte = Math.min(tamanho - copiados, buffer.remaining());
+                buffer.get(destino, posicao + copiados, parte);
+                copiados += parte;
+            }
+            return copiados;
+        }
+
+        private IOException truncado() {
+            return new IOException("run de registros truncado.");
+        }
+
+        public boolean vazio() {
+            return vazio;
+        }
+
+        /** prefixo da chave da entrada atual */
+        public long lerProxima() {
+            return prefixo;
+        }
+
+        public long remover() throws IOException {
+            long removido = prefixo;
+            avancar();
+            return removido;
+        }
+
+        /** entrada atual (cabeçalho, chave e registro), a partir da posição 0 */
+        byte[] atual() {
+            return atual;
+        }
+
+        int tamanhoChave() {
+            return lerInt(atual, 0);
+        }
+
+        int tamanhoRegistro() {
+            return lerInt(atual, Integer.BYTES);
+        }
+
+        public void close() throws IOException {
+            if (!canal.isOpen()) return;
+            try {
+                canal.close();
+            } finally {
+                arena.devolver(buffer);
+            }
+        }
+    }
+}
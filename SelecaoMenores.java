@@ -0,0 +1,78 @@
+import java.io.*;
+
+/**
+ * Seleção dos K menores valores da entrada (top-K) em uma única passada, sem runs temporários.
+ *
+ * Mantém um heap de máximo com os K menores valores vistos até agora: um valor novo só entra
+ * se for menor que a raiz (o maior dos K), que é substituída. Com a entrada em ordem aleatória
+ * quase todos os valores são descartados por essa única comparação, então a passada custa
+ * pouco mais que a leitura. No fim o heap é ordenado como um bloco comum
+ * (ExecucaoOrdenacao.ordenarBloco).
+ */
+class SelecaoMenores {
+    private final long[] valores; // heap de máximo
+    private int tamanho;
+    private long lidos;           // valores lidos da entrada, inclusive os descartados
+
+    private SelecaoMenores(int capacidade) {
+        this.valores = new long[capacidade];
+    }
+
+    /**
+     * Lê a entrada inteira e devolve os K menores valores, ainda fora de ordem
+     *
+     * @param leitor entrada já aberta
+     * @param k quantidade de valores mantidos (cabe na memória: ver ExecucaoOrdenacao.ordenarMenores)
+     * @return o heap: as primeiras tamanho() posições de valores() são os menores valores, e
+     *         lidos() quantos valores a entrada tinha
+     */
+    static SelecaoMenores selecionar(LeitorNumerosStreaming leitor, int k) throws IOException {
+        SelecaoMenores heap = new SelecaoMenores(k);
+        long[] valores = heap.valores;
+
+        // carga inicial: os k primeiros valores viram o heap de uma vez
+        while (heap.tamanho < k && leitor.temProximo()) {
+            valores[heap.tamanho++] = leitor.proximo();
+        }
+        for (int i = heap.tamanho / 2 - 1; i >= 0; i--) {
+            heap.descer(i, valores[i]);
+        }
+        if (heap.tamanho == 0) return heap;
+
+        long lidos = heap.tamanho;
+        while (leitor.temProximo()) {
+            long valor = leitor.proximo();
+            lidos++;
+            if (valor < valores[0]) {
+                heap.descer(0, valor);
+            }
+        }
+        heap.lidos = lidos;
+        return heap;
+    }
+
+    long[] valores() {
+        return valores;
+    }
+
+    int tamanho() {
+        return tamanho;
+    }
+
+    long lidos() {
+        return lidos;
+    }
+
+    // coloca o valor na posição i e o desce até o lugar certo do heap de máximo
+    private void descer(int i, long valor) {
+        while (true) {
+            int filho = 2 * i + 1;
+            if (filho >= tamanho) break;
+            if (filho + 1 < tamanho && valores[filho + 1] > valores[filho]) filho++;
+            if (valores[filho] <= valor) break;
+            valores[i] = valores[filho];
+            i = filho;
+        }
+        valores[i] = valor;
+    }
+}
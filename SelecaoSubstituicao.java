@@ -0,0 +1,127 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Formação de runs por seleção por substituição (replacement selection), alternativa
+ * aos blocos de tamanho fixo do ExecucaoOrdenacao.ordenarEmLotes.
+ *
+ * Mantém um heap com tantos valores quanto cabem na memória. O menor valor sai para o run
+ * atual e é substituído pelo próximo da entrada: se o novo valor ainda pode entrar no run
+ * atual (é maior ou igual ao último gravado), fica marcado com o run atual; senão, fica
+ * marcado para o próximo run. O heap ordena primeiro pelo run e depois pelo valor.
+ *
+ * Com entrada aleatória os runs ficam, em média, com o dobro do tamanho da memória (metade
+ * dos runs dos blocos fixos); com entrada ordenada ou quase ordenada sai um único run e o
+ * merge se reduz a uma cópia.
+ */
+class SelecaoSubstituicao {
+    public static final int BYTES_POR_ELEMENTO = Long.BYTES + Integer.BYTES; // valor + número do run
+
+    private final long[] valores; // heap: valores
+    private final int[] runs;     // heap: run de destino de cada valor
+    private int tamanho;
+
+    private SelecaoSubstituicao(int capacidade) {
+        this.valores = new long[capacidade];
+        this.runs = new int[capacidade];
+    }
+
+    /**
+     * Lê a entrada inteira e grava os runs
+     *
+     * @param leitor entrada já aberta
+     * @param capacidade quantidade de valores mantidos em memória
+     * @param execucao ordenação dona dos runs temporários (diretório e modo mapeado)
+     * @return runs gerados, em ordem
+     */
+    public static List<File> gerar(LeitorNumerosStreaming leitor, int capacidade,
+                                   ExecucaoOrdenacao execucao) throws IOException {
+        SelecaoSubstituicao heap = new SelecaoSubstituicao(Math.max(1, capacidade));
+        List<File> arquivos = new ArrayList<File>();
+
+        // carga inicial: tudo pertence ao primeiro run
+        while (heap.tamanho < heap.valores.length && leitor.temProximo()) {
+            heap.valores[heap.tamanho++] = leitor.proximo();
+        }
+        for (int i = heap.tamanho / 2 - 1; i >= 0; i--) {
+            heap.descer(i);
+        }
+
+        int runAtual = 0;
+        EscritorRun escritor = null;
+        File arquivoAtual = null;
+        try {
+            while (heap.tamanho > 0) {
+                long menor = heap.valores[0];
+
+                // o topo já pertence ao próximo run: o run atual terminou
+                if (heap.runs[0] != runAtual) {
+                    fecharRun(escritor, arquivoAtual, leitor, execucao);
+                    escritor = null;
+                    runAtual = heap.runs[0];
+                }
+                if (escritor == null) {
+                    arquivoAtual = execucao.criarArquivoTemporario("selecaoSubstituicao");
+                    arquivos.add(arquivoAtual);
+                    // o máximo só é conhecido no fim: sem compressão vale a largura de 8 bytes,
+                    // e os codecs com delta dispensam conhecer o intervalo antes
+                    escritor = new EscritorRun(arquivoAtual, execucao.codecRun(menor, Long.MAX_VALUE), menor,
+                            Long.MAX_VALUE, execucao.mapearArquivos(), execucao.agregacao(), execucao.arena());
+                }
+                escritor.escrever(menor);
+
+                if (leitor.temProximo()) {
+                    long proximo = leitor.proximo();
+                    heap.valores[0] = proximo;
+                    heap.runs[0] = proximo >= menor ? runAtual : runAtual + 1;
+                } else {
+                    heap.tamanho--;
+                    heap.valores[0] = heap.valores[heap.tamanho];
+                    heap.runs[0] = heap.runs[heap.tamanho];
+                }
+                heap.descer(0);
+            }
+            if (escritor != null) {
+                EscritorRun ultimo = escritor;
+                escritor = null;
+                fecharRun(ultimo, arquivoAtual, leitor, execucao);
+            }
+        } finally {
+            if (escritor != null) escritor.close();
+        }
+        return arquivos;
+    }
+
+    // fecha o run atual e registra o run e a posição da leitura nas métricas e no manifesto
+    // (o heap mistura valores de trechos diferentes da entrada, então o run não tem posição)
+    private static void fecharRun(EscritorRun escritor, File arquivo, LeitorNumerosStreaming leitor,
+                                  ExecucaoOrdenacao execucao) throws IOException {
+        escritor.close();
+        execucao.medirCompressao(arquivo, escritor.minimo, escritor.anterior, escritor.quantidade());
+        execucao.registrarRun(arquivo, -1, -1, escritor.elementos());
+        execucao.metricas().leitura(leitor.bytesConsumidos());
+        execucao.metricas().runGravado(arquivo.length(), escritor.elementos());
+    }
+
+    // ordem do heap: primeiro o run, depois o valor
+    private boolean menor(int a, int b) {
+        if (runs[a] != runs[b]) return runs[a] < runs[b];
+        return valores[a] < valores[b];
+    }
+
+    private void descer(int i) {
+        long valor = valores[i];
+        int run = runs[i];
+        while (true) {
+            int filho = 2 * i + 1;
+            if (filho >= tamanho) break;
+            if (filho + 1 < tamanho && menor(filho + 1, filho)) filho++;
+            if (runs[filho] > run || (runs[filho] == run && valores[filho] >= valor)) break;
+            valores[i] = valores[filho];
+            runs[i] = runs[filho];
+            i = filho;
+        }
+        valores[i] = valor;
+        runs[i] = run;
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tipos de chave suportados pelo ExternalSorter.
+ *
+ * Internamente toda chave é um long cuja ordem (com sinal) é a ordem do tipo original, então
+ * blocos, runs, codecs e merge não mudam com o tipo: só a leitura da entrada
+ * (LeitorNumerosStreaming) e a escrita da saída (EscritorSaida) convertem de/para o tipo.
+ *
+ *  - INT e LONG: o próprio valor
+ *  - DOUBLE: bits IEEE 754 com os bits de magnitude invertidos nos negativos
+ *    (-0.0 fica antes de 0.0 e NaN depois de +Infinity, como em Double.compare)
+ *  - BYTES: até 8 bytes, alinhados à esquerda em big-endian e com o bit de sinal invertido,
+ *    o que dá a ordem lexicográfica sem sinal; chaves maiores são rejeitadas
+ */
+public enum TipoChave {
+    INT(Integer.BYTES) {
+        @Override
+        long deTexto(byte[] origem, int de, int ate) throws IOException {
+            long valor = decimal(origem, de, ate);
+            if ((int) valor != valor) {
+                throw new IOException("número fora do intervalo de int: " + valor);
+            }
+            return valor;
+        }
+
+        @Override
+        long deBinario(long bits) {
+            return (int) bits;
+        }
+    },
+
+    LONG(Long.BYTES),
+
+    DOUBLE(Long.BYTES) {
+        @Override
+        long deTexto(byte[] origem, int de, int ate) throws IOException {
+            try {
+                return codificarDouble(Double.parseDouble(new String(origem, de, ate - de, StandardCharsets.US_ASCII)));
+            } catch (NumberFormatException e) {
+                throw new IOException("número malformado na entrada: " + e.getMessage());
+            }
+        }
+
+        @Override
+        String formatar(long chave) {
+            return Double.toString(Double.longBitsToDouble(inverterNegativo(chave)));
+        }
+
+        @Override
+        int formatar(long chave, byte[] destino, int posicao) {
+            String texto = formatar(chave);
+            for (int i = 0; i < texto.length(); i++) {
+                destino[posicao++] = (byte) texto.charAt(i);
+            }
+            return posicao;
+        }
+
+        @Override
+        long deBinario(long bits) {
+            return codificarDouble(Double.longBitsToDouble(bits));
+        }
+
+        @Override
+        long paraBinario(long chave) {
+            return inverterNegativo(chave);
+        }
+    },
+
+    BYTES(Long.BYTES) {
+        @Override
+        long deTexto(byte[] origem, int de, int ate) throws IOException {
+            if (ate - de > Long.BYTES) {
+                throw new IOException("chave com mais de " + Long.BYTES + " bytes: "
+                        + new String(origem, de, ate - de, StandardCharsets.ISO_8859_1));
+            }
+            long chave = 0;
+            for (int i = de; i < de + Long.BYTES; i++) {
+                chave = (chave << 8) | (i < ate ? origem[i] & 0xFF : 0);
+            }
+            return chave ^ Long.MIN_VALUE;
+        }
+
+        @Override
+        String formatar(long chave) {
+            long bytes = chave ^ Long.MIN_VALUE;
+            byte[] texto = new byte[Long.BYTES];
+            int tamanho = 0;
+            while (tamanho < Long.BYTES && (bytes >>> (56 - 8 * tamanho) & 0xFF) != 0) {
+                texto[tamanho] = (byte) (bytes >>> (56 - 8 * tamanho));
+                tamanho++;
+            }
+            return new String(texto, 0, tamanho, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        int formatar(long chave, byte[] destino, int posicao) {
+            long bytes = chave ^ Long.MIN_VALUE;
+            for (int i = 0; i < Long.BYTES && (bytes >>> (56 - 8 * i) & 0xFF) != 0; i++) {
+                destino[posicao++] = (byte) (bytes >>> (56 - 8 * i));
+            }
+            return posicao;
+        }
+
+        @Override
+        long deBinario(long bits) {
+            return Long.reverseBytes(bits) ^ Long.MIN_VALUE; // bytes na ordem do arquivo
+        }
+
+        @Override
+        long paraBinario(long chave) {
+            return Long.reverseBytes(chave ^ Long.MIN_VALUE);
+        }
+    };
+
+    static final int TAMANHO_MAXIMO_TEXTO = 32; // maior formatar: Double.toString tem até 24 caracteres
+
+    /** bytes de cada valor no formato binário */
+    final int largura;
+
+    TipoChave(int largura) {
+        this.largura = largura;
+    }
+
+    /**
+     * Converte o token origem[de, ate) da entrada em texto na chave, sem copiá-lo
+     * (o LeitorNumerosStreaming passa o seu array token; o FormatoRegistro, o próprio registro).
+     * LONG é o próprio número decimal; INT o mesmo, limitado ao intervalo de int.
+     */
+    long deTexto(byte[] origem, int de, int ate) throws IOException {
+        return decimal(origem, de, ate);
+    }
+
+    /**
+     * Número decimal com sinal opcional ('+' ou '-') em origem[de, ate), convertido direto dos
+     * bytes ASCII. A conversão acumula em negativo (como em Long.parseLong) para detectar
+     * estouro sem custo extra e aceitar Long.MIN_VALUE.
+     */
+    static long decimal(byte[] origem, int de, int ate) throws IOException {
+        boolean negativo = de < ate && origem[de] == '-';
+        int i = negativo || (de < ate && origem[de] == '+') ? de + 1 : de;
+        if (i == ate) {
+            throw new IOException("número malformado na entrada: " + texto(origem, de, ate));
+        }
+        long limite = negativo ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplicadorMinimo = limite / 10;
+        long resultado = 0;
+        for (; i < ate; i++) {
+            int digito = origem[i] - '0';
+            if (digito < 0 || digito > 9) {
+                throw new IOException("caractere inválido na entrada: '" + (char) origem[i] + "'");
+            }
+            if (resultado < multiplicadorMinimo || resultado * 10 < limite + digito) {
+                throw new IOException("número fora do intervalo suportado: " + texto(origem, de, ate));
+            }
+            resultado = resultado * 10 - digito;
+        }
+        return negativo ? resultado : -resultado;
+    }
+
+    private static String texto(byte[] origem, int de, int ate) {
+        return new String(origem, de, ate - de, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Representação em texto da chave, no formato aceito pela entrada
+     */
+    String formatar(long chave) {
+        return Long.toString(chave);
+    }
+
+    /**
+     * Grava a mesma representação de formatar(chave) em destino, um byte por caractere
+     * (ISO-8859-1); INT, LONG e BYTES não criam uma String
+     *
+     * @param destino precisa ter TAMANHO_MAXIMO_TEXTO bytes livres a partir de posicao
+     * @return posição seguinte ao último byte gravado
+     */
+    int formatar(long chave, byte[] destino, int posicao) {
+        return formatarDecimal(chave, destino, posicao);
+    }
+
+    /**
+     * Dígitos decimais do valor (com o sinal), como Long.toString, direto em destino
+     *
+     * @return posição seguinte ao último dígito
+     */
+    static int formatarDecimal(long valor, byte[] destino, int posicao) {
+        if (valor < 0) {
+            destino[posicao++] = '-';
+        }
+        int digitos = 1;
+        for (long resto = valor / 10; resto != 0; resto /= 10) {
+            digitos++;
+        }
+        int fim = posicao + digitos;
+        // o resto com sinal evita o caso especial de Long.MIN_VALUE, que não tem oposto positivo
+        for (int i = fim - 1; i >= posicao; i--) {
+            destino[i] = (byte) ('0' + Math.abs(valor % 10));
+            valor /= 10;
+        }
+        return fim;
+    }
+
+    /**
+     * Converte os bits lidos (little-endian, com a largura do tipo) na chave
+     */
+    long deBinario(long bits) {
+        return bits;
+    }
+
+    /**
+     * Bits a gravar (little-endian, com a largura do tipo) para a chave
+     */
+    long paraBinario(long chave) {
+        return chave;
+    }
+
+    // NaN canônico (doubleToLongBits) e ordem total dos doubles como longs com sinal
+    private static long codificarDouble(double valor) {
+        return inverterNegativo(Double.doubleToLongBits(valor));
+    }
+
+    // a operação é a própria inversa: nos negativos inverte tudo menos o bit de sinal
+    private static long inverterNegativo(long bits) {
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,94 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Distribuições das entradas dos benchmarks. A semente é fixa, então cada combinação de
+ * parâmetros mede sempre a mesma entrada.
+ */
+public enum Distribuicao {
+    /** int uniforme em todo o intervalo */
+    UNIFORME {
+        @Override
+        int[] gerar(int quantidade, SplittableRandom aleatorio) {
+            return aleatorio.ints(quantidade).toArray();
+        }
+    },
+    /** dígitos de 0 a 9, como os arquivos do GerarDadosRefac */
+    DIGITOS {
+        @Override
+        int[] gerar(int quantidade, SplittableRandom aleatorio) {
+            return aleatorio.ints(quantidade, 0, 10).toArray();
+        }
+    },
+    ORDENADA {
+        @Override
+        int[] gerar(int quantidade, SplittableRandom aleatorio) {
+            int[] valores = UNIFORME.gerar(quantidade, aleatorio);
+            Arrays.sort(valores);
+            return valores;
+        }
+    },
+    REVERSA {
+        @Override
+        int[] gerar(int quantidade, SplittableRandom aleatorio) {
+            int[] valores = ORDENADA.gerar(quantidade, aleatorio);
+            for (int i = 0, j = valores.length - 1; i < j; i++, j--) {
+                int temp = valores[i];
+                valores[i] = valores[j];
+                valores[j] = temp;
+            }
+            return valores;
+        }
+    },
+    /** zipf (expoente 1.1) sobre VALORES_ZIPF valores: poucos valores muito repetidos e uma cauda longa */
+    ZIPF {
+        @Override
+        int[] gerar(int quantidade, SplittableRandom aleatorio) {
+            double[] acumulada = new double[VALORES_ZIPF];
+            double soma = 0;
+            for (int k = 0; k < VALORES_ZIPF; k++) {
+                soma += 1 / Math.pow(k + 1, EXPOENTE_ZIPF);
+                acumulada[k] = soma;
+            }
+            int[] valores = new int[quantidade];
+            for (int i = 0; i < quantidade; i++) {
+                int posicao = Arrays.binarySearch(acumulada, aleatorio.nextDouble() * soma);
+                int posto = posicao >= 0 ? posicao : -posicao - 1;
+                valores[i] = posto * 7919; // espalha os postos para a faixa não ficar contígua
+            }
+            return valores;
+        }
+    };
+
+    static final long SEMENTE = 20240601L;
+    static final int VALORES_ZIPF = 1 << 20;
+    static final double EXPOENTE_ZIPF = 1.1;
+
+    abstract int[] gerar(int quantidade, SplittableRandom aleatorio);
+
+    int[] gerar(int quantidade) {
+        return gerar(quantidade, new SplittableRandom(SEMENTE));
+    }
+
+    long[] gerarLongs(int quantidade) {
+        return Arrays.stream(gerar(quantidade)).asLongStream().toArray();
+    }
+
+    /**
+     * Grava os valores no formato de entrada padrão do ExternalSort (separados por ", ")
+     */
+    static void gravarTexto(int[] valores, File arquivo) throws IOException {
+        try (BufferedWriter escritor = new BufferedWriter(new FileWriter(arquivo), 1 << 16)) {
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) escritor.write(", ");
+                escritor.write(Integer.toString(valores[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formação dos runs (ExecucaoOrdenacao.ordenarEmLotes e alternativas) a partir de uma
+ * entrada em texto: leitura, ordenação dos blocos e gravação dos runs binários.
+ * O orçamento é fixo em ORCAMENTO_MB, para a entrada virar vários runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class FormacaoRunsBenchmark {
+    static final long ORCAMENTO_MB = 16;
+
+    /** Como os runs são formados */
+    public enum Estrategia {
+        BLOCOS("threadsOrdenacao", 1),
+        BLOCOS_PARALELO("threadsOrdenacao", Runtime.getRuntime().availableProcessors()),
+        BLOCOS_RADIX("algoritmoBloco", Interno.constante("ConfiguracaoOrdenacao$AlgoritmoBloco", "RADIX")),
+        SELECAO_SUBSTITUICAO("formacaoRuns",
+                Interno.constante("ConfiguracaoOrdenacao$FormacaoRuns", "SELECAO_SUBSTITUICAO"));
+
+        final String opcao;
+        final Object valor;
+
+        Estrategia(String opcao, Object valor) {
+            this.opcao = opcao;
+            this.valor = valor;
+        }
+    }
+
+    @Param({"UNIFORME", "DIGITOS", "ORDENADA", "REVERSA", "ZIPF"})
+    public Distribuicao distribuicao;
+
+    @Param({"1000000", "5000000"})
+    public int tamanho;
+
+    @Param({"BLOCOS", "BLOCOS_PARALELO", "BLOCOS_RADIX", "SELECAO_SUBSTITUICAO"})
+    public Estrategia estrategia;
+
+    private File diretorio;
+    private File entrada;
+    private Object execucao;
+    private List<File> runs;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Throwable {
+        diretorio = Temporarios.criarDiretorio("benchmark-runs");
+        entrada = new File(diretorio, "entrada.txt");
+        Distribuicao.gravarTexto(distribuicao.gerar(tamanho), entrada);
+
+        Object configuracao = Interno.configuracao(
+                "memoriaMaxima", ORCAMENTO_MB * 1024 * 1024,
+                "diretorioTemporario", diretorio,
+                estrategia.opcao, estrategia.valor);
+        execucao = Interno.execucao(configuracao);
+    }
+
+    @Benchmark
+    public List<File> formarRuns() throws Throwable {
+        Object leitor = Interno.abrirLeitor(entrada, false,
+                Interno.constante("TipoChave", "LONG"), Interno.constante("FormatoArquivo", "TEXTO"));
+        try {
+            runs = estrategia == Estrategia.SELECAO_SUBSTITUICAO
+                    ? Interno.ordenarEmLotesPorSelecao(execucao, leitor, entrada)
+                    : Interno.ordenarEmLotes(execucao, leitor, entrada);
+            return runs;
+        } finally {
+            Interno.fechar(leitor);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void apagarRuns() {
+        if (runs != null) {
+            for (File run : runs) {
+                run.delete();
+            }
+            runs = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void apagarDiretorio() {
+        Temporarios.apagar(diretorio);
+    }
+}
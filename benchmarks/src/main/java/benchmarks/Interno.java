@@ -0,0 +1,190 @@
+package benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Acesso às classes da ordenação a partir do pacote dos benchmarks.
+ *
+ * O código da ordenação fica no pacote padrão, que não pode ser importado de um pacote com
+ * nome (e o JMH não aceita benchmarks no pacote padrão). Cada método usado é resolvido uma
+ * vez por reflexão em um MethodHandle estático final, com os tipos da ordenação apagados
+ * para Object: o JIT trata esses handles como constantes e faz o inline da chamada, então
+ * o custo medido é o do método chamado.
+ */
+final class Interno {
+    private static final MethodHandle QUICKSORT = metodo("QuickSortThreeWay", "quickSort3Way", int[].class, int.class);
+    private static final MethodHandle RADIX = metodo("OrdenacaoRadix", "ordenar", int[].class, int.class, int.class, int.class);
+
+    private static final MethodHandle EXECUCAO = construtor("ExecucaoOrdenacao", classe("ConfiguracaoOrdenacao"));
+    private static final MethodHandle ORDENAR_EM_LOTES = metodo("ExecucaoOrdenacao", "ordenarEmLotes",
+            classe("LeitorNumerosStreaming"), File.class);
+    private static final MethodHandle ORDENAR_EM_LOTES_POR_SELECAO = metodo("ExecucaoOrdenacao", "ordenarEmLotesPorSelecao",
+            classe("LeitorNumerosStreaming"), File.class);
+    private static final MethodHandle MESCLAR = metodo("ExecucaoOrdenacao", "mesclarArquivosOrdenados",
+            List.class, File.class, classe("PlanejadorMerge"));
+    private static final MethodHandle PLANEJADOR = construtor("PlanejadorMerge", int.class, long.class, int.class, boolean.class);
+
+    private static final MethodHandle ABRIR_LEITOR = metodo("LeitorNumerosStreaming", "abrir",
+            File.class, boolean.class, classe("TipoChave"), classe("FormatoArquivo"));
+    private static final MethodHandle TEM_PROXIMO = metodo("LeitorNumerosStreaming", "temProximo");
+    private static final MethodHandle PROXIMO = metodo("LeitorNumerosStreaming", "proximo");
+    private static final MethodHandle FECHAR = metodo("java.io.Closeable", "close");
+
+    private static final MethodHandle ESCRITOR_SAIDA = construtor("EscritorSaida",
+            File.class, classe("TipoChave"), classe("FormatoArquivo"));
+    private static final MethodHandle ESCREVER_SAIDA = metodo("EscritorSaida", "escrever", long.class);
+    private static final MethodHandle GRAVAR_RUN = metodo("EscritorRun", "gravar", File.class, long[].class,
+            int.class, boolean.class, classe("ConfiguracaoOrdenacao$Agregacao"), classe("CodecRun"), classe("ArenaBuffers"));
+    private static final MethodHandle CODEC_RUN = metodo("ExecucaoOrdenacao", "codecRun", long.class, long.class);
+    private static final MethodHandle AGREGACAO = metodo("ExecucaoOrdenacao", "agregacao");
+    private static final MethodHandle ARENA = metodo("ExecucaoOrdenacao", "arena");
+    private static final MethodHandle ABRIR_RUN = construtor("BufferArquivoBinario",
+            File.class, int.class, classe("ArenaBuffers"));
+    private static final MethodHandle RUN_VAZIO = metodo("BufferArquivoBinario", "vazio");
+    private static final MethodHandle REMOVER_RUN = metodo("BufferArquivoBinario", "remover");
+
+    private Interno() {
+    }
+
+    static void quickSort3Way(int[] valores, int threads) throws Throwable {
+        QUICKSORT.invokeExact((Object) valores, threads);
+    }
+
+    static void radix(int[] valores, int threads) throws Throwable {
+        RADIX.invokeExact((Object) valores, 0, valores.length, threads);
+    }
+
+    /**
+     * Configuração montada pelo builder público do ExternalSorter
+     *
+     * @param opcoes pares nome do método do builder / argumento, ex.: "threads", 4
+     */
+    static Object configuracao(Object... opcoes) throws Exception {
+        Object builder = classe("ExternalSorter").getMethod("builder").invoke(null);
+        for (int i = 0; i < opcoes.length; i += 2) {
+            metodoPorNome(builder.getClass(), (String) opcoes[i]).invoke(builder, opcoes[i + 1]);
+        }
+        Object sorter = builder.getClass().getMethod("build").invoke(builder);
+        return sorter.getClass().getMethod("configuracao").invoke(sorter);
+    }
+
+    /** constante de um enum da ordenação, ex.: constante("TipoChave", "LONG") */
+    static Object constante(String enumeracao, String nome) {
+        for (Object constante : classe(enumeracao).getEnumConstants()) {
+            if (((Enum<?>) constante).name().equals(nome)) return constante;
+        }
+        throw new IllegalArgumentException(enumeracao + "." + nome);
+    }
+
+    static Object execucao(Object configuracao) throws Throwable {
+        return (Object) EXECUCAO.invokeExact(configuracao);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<File> ordenarEmLotes(Object execucao, Object leitor, File arquivo) throws Throwable {
+        return (List<File>) (Object) ORDENAR_EM_LOTES.invokeExact(execucao, leitor, (Object) arquivo);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<File> ordenarEmLotesPorSelecao(Object execucao, Object leitor, File arquivo) throws Throwable {
+        return (List<File>) (Object) ORDENAR_EM_LOTES_POR_SELECAO.invokeExact(execucao, leitor, (Object) arquivo);
+    }
+
+    static long mesclarArquivosOrdenados(Object execucao, List<File> runs, File saida, Object planejador) throws Throwable {
+        return (long) MESCLAR.invokeExact(execucao, (Object) runs, (Object) saida, planejador);
+    }
+
+    static Object planejador(int fanIn, long memoriaMerge, int threads, boolean leituraAntecipada) throws Throwable {
+        return (Object) PLANEJADOR.invokeExact(fanIn, memoriaMerge, threads, leituraAntecipada);
+    }
+
+    static Object abrirLeitor(File arquivo, boolean mapeado, Object tipo, Object formato) throws Throwable {
+        return (Object) ABRIR_LEITOR.invokeExact((Object) arquivo, mapeado, tipo, formato);
+    }
+
+    static boolean temProximo(Object leitor) throws Throwable {
+        return (boolean) TEM_PROXIMO.invokeExact(leitor);
+    }
+
+    static long proximo(Object leitor) throws Throwable {
+        return (long) PROXIMO.invokeExact(leitor);
+    }
+
+    static void fechar(Object recurso) throws Throwable {
+        FECHAR.invokeExact(recurso);
+    }
+
+    static Object escritorSaida(File arquivo, Object tipo, Object formato) throws Throwable {
+        return (Object) ESCRITOR_SAIDA.invokeExact((Object) arquivo, tipo, formato);
+    }
+
+    static void escrever(Object escritor, long valor) throws Throwable {
+        ESCREVER_SAIDA.invokeExact(escritor, valor);
+    }
+
+    /**
+     * Grava um bloco ordenado como a ordenação grava cada run: com o codec, a agregação e a
+     * arena da execução
+     */
+    static void gravarRun(Object execucao, File arquivo, long[] valores, int quantidade) throws Throwable {
+        Object codec = (Object) CODEC_RUN.invokeExact(execucao, valores[0], valores[quantidade - 1]);
+        long gravados = (long) GRAVAR_RUN.invokeExact((Object) arquivo, (Object) valores, quantidade, false,
+                (Object) AGREGACAO.invokeExact(execucao), codec, (Object) ARENA.invokeExact(execucao));
+    }
+
+    /** abre um run para leitura com o buffer vindo da arena da execução, como no merge */
+    static Object abrirRun(Object execucao, File arquivo, int tamanhoBuffer) throws Throwable {
+        return (Object) ABRIR_RUN.invokeExact((Object) arquivo, tamanhoBuffer, (Object) ARENA.invokeExact(execucao));
+    }
+
+    static boolean runVazio(Object run) throws Throwable {
+        return (boolean) RUN_VAZIO.invokeExact(run);
+    }
+
+    static long removerDoRun(Object run) throws Throwable {
+        return (long) REMOVER_RUN.invokeExact(run);
+    }
+
+    static Class<?> classe(String nome) {
+        try {
+            return Class.forName(nome);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("classe da ordenação não encontrada: " + nome, e);
+        }
+    }
+
+    // método estático ou de instância (a instância vira o primeiro parâmetro do handle)
+    private static MethodHandle metodo(String classe, String nome, Class<?>... parametros) {
+        try {
+            Method metodo = classe(classe).getDeclaredMethod(nome, parametros);
+            metodo.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(metodo);
+            return handle.asType(handle.type().erase());
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("método da ordenação não encontrado: " + classe + "." + nome, e);
+        }
+    }
+
+    private static MethodHandle construtor(String classe, Class<?>... parametros) {
+        try {
+            Constructor<?> construtor = classe(classe).getDeclaredConstructor(parametros);
+            construtor.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflectConstructor(construtor);
+            return handle.asType(handle.type().erase());
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("construtor da ordenação não encontrado: " + classe, e);
+        }
+    }
+
+    private static Method metodoPorNome(Class<?> classe, String nome) {
+        for (Method metodo : classe.getMethods()) {
+            if (metodo.getName().equals(nome) && metodo.getParameterCount() == 1) return metodo;
+        }
+        throw new IllegalArgumentException("opção do builder desconhecida: " + nome);
+    }
+}
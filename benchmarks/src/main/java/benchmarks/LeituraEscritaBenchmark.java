@@ -0,0 +1,125 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vazão da leitura e da escrita, sem ordenação: o tokenizador da entrada em texto
+ * (LeitorNumerosStreaming, com e sem mmap), a escrita da saída em texto (EscritorSaida)
+ * e a gravação e leitura de um run binário (EscritorRun / BufferArquivoBinario, com o
+ * codec e a arena de buffers de uma ExecucaoOrdenacao com a configuração padrão, como na
+ * formação dos runs e no merge).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class LeituraEscritaBenchmark {
+
+    @Param({"UNIFORME", "DIGITOS", "ORDENADA", "REVERSA", "ZIPF"})
+    public Distribuicao distribuicao;
+
+    @Param({"1000000", "10000000"})
+    public int tamanho;
+
+    @Param({"false", "true"})
+    public boolean mapeado;
+
+    private File diretorio;
+    private File texto;
+    private File run;
+    private File saida;
+    private long[] valores;
+    private long[] ordenados;
+    private Object tipo;
+    private Object formatoTexto;
+    private Object execucao;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Throwable {
+        diretorio = Temporarios.criarDiretorio("benchmark-io");
+        texto = new File(diretorio, "entrada.txt");
+        run = new File(diretorio, "valores.run");
+        saida = new File(diretorio, "saida.txt");
+
+        int[] gerados = distribuicao.gerar(tamanho);
+        Distribuicao.gravarTexto(gerados, texto);
+        valores = Arrays.stream(gerados).asLongStream().toArray();
+        ordenados = valores.clone();
+        Arrays.sort(ordenados);
+
+        tipo = Interno.constante("TipoChave", "LONG");
+        formatoTexto = Interno.constante("FormatoArquivo", "TEXTO");
+        execucao = Interno.execucao(Interno.configuracao());
+        Interno.gravarRun(execucao, run, ordenados, ordenados.length);
+    }
+
+    @Benchmark
+    public long lerTexto() throws Throwable {
+        Object leitor = Interno.abrirLeitor(texto, mapeado, tipo, formatoTexto);
+        try {
+            long soma = 0;
+            while (Interno.temProximo(leitor)) {
+                soma += Interno.proximo(leitor);
+            }
+            return soma;
+        } finally {
+            Interno.fechar(leitor);
+        }
+    }
+
+    @Benchmark
+    public File escreverTexto() throws Throwable {
+        Object escritor = Interno.escritorSaida(saida, tipo, formatoTexto);
+        try {
+            for (long valor : valores) {
+                Interno.escrever(escritor, valor);
+            }
+        } finally {
+            Interno.fechar(escritor);
+        }
+        return saida;
+    }
+
+    @Benchmark
+    public File gravarRun() throws Throwable {
+        Interno.gravarRun(execucao, saida, ordenados, ordenados.length);
+        return saida;
+    }
+
+    @Benchmark
+    public long lerRun() throws Throwable {
+        Object leitor = Interno.abrirRun(execucao, run, 64 * 1024);
+        try {
+            long soma = 0;
+            while (!Interno.runVazio(leitor)) {
+                soma += Interno.removerDoRun(leitor);
+            }
+            return soma;
+        } finally {
+            Interno.fechar(leitor);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void apagarDiretorio() {
+        Temporarios.apagar(diretorio);
+    }
+}
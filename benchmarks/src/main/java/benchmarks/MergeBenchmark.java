@@ -0,0 +1,103 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExecucaoOrdenacao.mesclarArquivosOrdenados com fanIn runs de mesmo tamanho mesclados em
+ * um passo só (o fan-in máximo do planejador é o próprio fanIn) e saída binária, para medir
+ * o merge e não a formatação do texto.
+ *
+ * O merge apaga os runs que consome, então cada chamada recebe cópias dos runs originais,
+ * feitas antes da medição.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class MergeBenchmark {
+
+    @Param({"2", "16", "256", "2048"})
+    public int fanIn;
+
+    @Param({"UNIFORME", "DIGITOS", "ORDENADA", "REVERSA", "ZIPF"})
+    public Distribuicao distribuicao;
+
+    @Param({"4000000"})
+    public int tamanho;
+
+    @Param({"true", "false"})
+    public boolean leituraAntecipada;
+
+    private File diretorio;
+    private File saida;
+    private final List<File> originais = new ArrayList<>();
+    private final List<File> copias = new ArrayList<>();
+    private Object execucao;
+    private Object planejador;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Throwable {
+        diretorio = Temporarios.criarDiretorio("benchmark-merge");
+        saida = new File(diretorio, "saida.bin");
+
+        Object configuracao = Interno.configuracao(
+                "diretorioTemporario", diretorio,
+                "fanIn", fanIn,
+                "leituraAntecipada", leituraAntecipada,
+                "formatoSaida", Interno.constante("FormatoArquivo", "BINARIO"));
+        execucao = Interno.execucao(configuracao);
+        planejador = Interno.planejador(fanIn, 256L * 1024 * 1024, 1, leituraAntecipada);
+
+        long[] valores = distribuicao.gerarLongs(tamanho);
+        for (int r = 0; r < fanIn; r++) {
+            long[] run = Arrays.copyOfRange(valores, (int) ((long) tamanho * r / fanIn),
+                    (int) ((long) tamanho * (r + 1) / fanIn));
+            Arrays.sort(run);
+            File arquivo = new File(diretorio, "original-" + r + ".run");
+            Interno.gravarRun(execucao, arquivo, run, run.length);
+            originais.add(arquivo);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copiarRuns() throws Exception {
+        copias.clear();
+        for (File original : originais) {
+            File copia = new File(diretorio, original.getName().replace("original", "copia"));
+            Files.copy(original.toPath(), copia.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            copias.add(copia);
+        }
+    }
+
+    @Benchmark
+    public long mesclar() throws Throwable {
+        return Interno.mesclarArquivosOrdenados(execucao, new ArrayList<>(copias), saida, planejador);
+    }
+
+    @TearDown(Level.Trial)
+    public void apagarDiretorio() {
+        Temporarios.apagar(diretorio);
+    }
+}
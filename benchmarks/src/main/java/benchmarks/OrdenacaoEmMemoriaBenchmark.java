@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QuickSortThreeWay.quickSort3Way e OrdenacaoRadix contra Arrays.sort e Arrays.parallelSort
+ * sobre o mesmo int[]. A cópia da entrada é feita antes de cada chamada, fora da medição.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class OrdenacaoEmMemoriaBenchmark {
+
+    @Param({"UNIFORME", "DIGITOS", "ORDENADA", "REVERSA", "ZIPF"})
+    public Distribuicao distribuicao;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int tamanho;
+
+    private int[] original;
+    private int[] valores;
+    private final int threads = Runtime.getRuntime().availableProcessors();
+
+    @Setup(Level.Trial)
+    public void gerar() {
+        original = distribuicao.gerar(tamanho);
+    }
+
+    @Setup(Level.Invocation)
+    public void copiar() {
+        valores = original.clone();
+    }
+
+    @Benchmark
+    public int[] quickSort3Way() throws Throwable {
+        Interno.quickSort3Way(valores, 1);
+        return valores;
+    }
+
+    @Benchmark
+    public int[] quickSort3WayParalelo() throws Throwable {
+        Interno.quickSort3Way(valores, threads);
+        return valores;
+    }
+
+    @Benchmark
+    public int[] radix() throws Throwable {
+        Interno.radix(valores, 1);
+        return valores;
+    }
+
+    @Benchmark
+    public int[] radixParalelo() throws Throwable {
+        Interno.radix(valores, threads);
+        return valores;
+    }
+
+    @Benchmark
+    public int[] arraysSort() {
+        Arrays.sort(valores);
+        return valores;
+    }
+
+    @Benchmark
+    public int[] arraysParallelSort() {
+        Arrays.parallelSort(valores);
+        return valores;
+    }
+}
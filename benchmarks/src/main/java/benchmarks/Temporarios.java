@@ -0,0 +1,28 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Diretório próprio de cada trial, para os runs e saídas dos benchmarks não se misturarem
+ * com os de outras execuções
+ */
+final class Temporarios {
+    private Temporarios() {
+    }
+
+    static File criarDiretorio(String prefixo) throws IOException {
+        return Files.createTempDirectory(prefixo).toFile();
+    }
+
+    static void apagar(File arquivo) {
+        File[] filhos = arquivo.listFiles();
+        if (filhos != null) {
+            for (File filho : filhos) {
+                apagar(filho);
+            }
+        }
+        arquivo.delete();
+    }
+}
@@ -0,0 +1,149 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ida e volta dos runs comprimidos: o que o EscritorRun grava com DELTA_BLOCOS o
+ * BufferArquivoBinario tem que ler igual, do início ou de um ponto do índice
+ */
+class CodecRunTest {
+    @TempDir
+    File diretorio;
+
+    private final ArenaBuffers arena = new ArenaBuffers(1 << 20);
+
+    @Test
+    void deltasDe64Bits() throws IOException {
+        // de Long.MIN_VALUE para 0 a diferença só cabe em 64 bits sem sinal
+        long[] valores = {Long.MIN_VALUE, Long.MIN_VALUE, 0, 1, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+        assertArrayEquals(valores, idaEVolta(valores, CodecRun.DELTA_BLOCOS));
+    }
+
+    @Test
+    void blocosComLargurasMisturadas() throws IOException {
+        // blocos inteiros alternando diferenças pequenas e de 63-64 bits
+        long[] valores = new long[4 * CodecRun.VALORES_POR_BLOCO];
+        valores[0] = Long.MIN_VALUE;
+        for (int i = 1; i < valores.length; i++) {
+            boolean salto = (i / CodecRun.VALORES_POR_BLOCO) % 2 == 1 && i % CodecRun.VALORES_POR_BLOCO == 0;
+            valores[i] = salto ? valores[i - 1] + Long.MAX_VALUE / 2 : valores[i - 1] + (i % 3);
+        }
+        assertArrayEquals(valores, idaEVolta(valores, CodecRun.DELTA_BLOCOS));
+    }
+
+    @Test
+    void ultimoBlocoParcial() throws IOException {
+        for (int sobra : new int[]{1, 5, CodecRun.VALORES_POR_BLOCO - 1}) {
+            long[] valores = ordenados(3 * CodecRun.VALORES_POR_BLOCO + sobra, new Random(sobra));
+            assertArrayEquals(valores, idaEVolta(valores, CodecRun.DELTA_BLOCOS), "sobra " + sobra);
+        }
+    }
+
+    @Test
+    void leituraAPartirDeCadaPontoDoIndice() throws IOException {
+        // cada ponto cai no início de um bloco (INTERVALO é múltiplo de VALORES_POR_BLOCO)
+        long[] valores = ordenados(2 * IndiceRun.INTERVALO + 3, new Random(7));
+        File run = gravar(valores, CodecRun.DELTA_BLOCOS);
+        IndiceRun indice = IndiceRun.ler(run);
+        assertEquals(3, indice.pontos());
+
+        for (int ponto = 0; ponto < indice.pontos(); ponto++) {
+            int primeiro = (int) indice.indices[ponto];
+            assertEquals(ponto * IndiceRun.INTERVALO, primeiro);
+            assertEquals(valores[primeiro], indice.chaves[ponto]);
+            try (BufferArquivoBinario leitor = BufferArquivoBinario.abrirNoPonto(run, indice, ponto,
+                    64 * 1024, false, false, arena)) {
+                assertArrayEquals(Arrays.copyOfRange(valores, primeiro, valores.length), lerTudo(leitor),
+                        "ponto " + ponto);
+            }
+        }
+    }
+
+    @Test
+    void ordenacaoComCompressaoAdaptativa() throws IOException {
+        // valores densos (o primeiro run comprime e a compressão continua ligada) com os
+        // extremos de long espalhados, para ter diferenças de 64 bits dentro dos runs
+        Random aleatorio = new Random(42);
+        long[] valores = new long[300_000];
+        for (int i = 0; i < valores.length; i++) {
+            valores[i] = i % 1000 == 0 ? (aleatorio.nextBoolean() ? Long.MIN_VALUE : Long.MAX_VALUE)
+                    : aleatorio.nextInt(1 << 16);
+        }
+        File entrada = new File(diretorio, "entrada.bin");
+        File saida = new File(diretorio, "saida.bin");
+        gravarBinario(entrada, valores);
+
+        ResultadoOrdenacao resultado = ExternalSorter.builder()
+                .memoriaMaxima(1024 * 1024)
+                .diretorioTemporario(diretorio)
+                .compressaoRuns(ConfiguracaoOrdenacao.CompressaoRuns.ADAPTATIVA)
+                .formatoEntrada(FormatoArquivo.BINARIO)
+                .formatoSaida(FormatoArquivo.BINARIO)
+                .build()
+                .ordenar(entrada, saida);
+
+        Arrays.sort(valores);
+        assertArrayEquals(valores, lerBinario(saida));
+        assertTrue(resultado.runsIniciais() > 1, "a entrada deveria ter gerado vários runs");
+        assertTrue(resultado.metricas().getBytesDerramados() < valores.length * Long.BYTES * 3L / 4,
+                "os runs deveriam ter continuado comprimidos");
+    }
+
+    private long[] idaEVolta(long[] valores, CodecRun codec) throws IOException {
+        try (BufferArquivoBinario leitor = new BufferArquivoBinario(gravar(valores, codec), 64 * 1024, arena)) {
+            return lerTudo(leitor);
+        }
+    }
+
+    private File gravar(long[] valores, CodecRun codec) throws IOException {
+        File run = File.createTempFile("run", ".bin", diretorio);
+        try (EscritorRun escritor = new EscritorRun(run, codec, valores[0], valores[valores.length - 1], false,
+                ConfiguracaoOrdenacao.Agregacao.NENHUMA, arena)) {
+            for (long valor : valores) {
+                escritor.escrever(valor);
+            }
+        }
+        return run;
+    }
+
+    private static long[] lerTudo(BufferArquivoBinario leitor) throws IOException {
+        long[] lidos = new long[16];
+        int quantidade = 0;
+        while (!leitor.vazio()) {
+            if (quantidade == lidos.length) lidos = Arrays.copyOf(lidos, quantidade * 2);
+            lidos[quantidade++] = leitor.remover();
+        }
+        return Arrays.copyOf(lidos, quantidade);
+    }
+
+    // valores crescentes com diferenças de larguras variadas (inclusive repetições)
+    private static long[] ordenados(int quantidade, Random aleatorio) {
+        long[] valores = new long[quantidade];
+        valores[0] = -aleatorio.nextInt(1000);
+        for (int i = 1; i < quantidade; i++) {
+            valores[i] = valores[i - 1] + (aleatorio.nextLong() >>> (20 + aleatorio.nextInt(44)));
+        }
+        return valores;
+    }
+
+    private static void gravarBinario(File arquivo, long[] valores) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(valores.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asLongBuffer().put(valores);
+        Files.write(arquivo.toPath(), buffer.array());
+    }
+
+    private static long[] lerBinario(File arquivo) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(arquivo.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        long[] valores = new long[buffer.remaining() / Long.BYTES];
+        buffer.asLongBuffer().get(valores);
+        return valores;
+    }
+}
@@ -0,0 +1,202 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringJoiner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Casos de borda do passo final particionado: separadores sem amostras distintas,
+ * intervalos sem valores e segmentos vazios na concatenação
+ */
+class MergeParticionadoTest {
+    @TempDir
+    File diretorio;
+
+    private final ArenaBuffers arena = new ArenaBuffers(1 << 20);
+
+    @Test
+    void chavesIguaisNaoGeramSeparadores() throws IOException {
+        List<IndiceRun> indices = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            long[] valores = new long[2 * IndiceRun.INTERVALO + 1];
+            Arrays.fill(valores, 42);
+            indices.add(IndiceRun.ler(gravarRun(valores)));
+        }
+        assertEquals(9, indices.stream().mapToInt(IndiceRun::pontos).sum());
+        assertEquals(0, MergeParticionado.separadores(indices, 4).length);
+    }
+
+    @Test
+    void separadoresCrescentesEAcimaDoMenorValor() throws IOException {
+        // metade dos valores repetidos no mínimo: nenhum separador pode ser igual a ele
+        long[] valores = new long[8 * IndiceRun.INTERVALO];
+        for (int i = valores.length / 2; i < valores.length; i++) {
+            valores[i] = i;
+        }
+        long[] separadores = MergeParticionado.separadores(List.of(IndiceRun.ler(gravarRun(valores))), 4);
+        assertTrue(separadores.length > 0);
+        assertTrue(separadores[0] > 0);
+        for (int i = 1; i < separadores.length; i++) {
+            assertTrue(separadores[i] > separadores[i - 1]);
+        }
+    }
+
+    @Test
+    void intervaloSemValores() throws IOException {
+        File run = gravarRun(sequencia(0, 1000));
+        try (MergeParticionado.FonteIntervalo fonte = new MergeParticionado.FonteIntervalo(abrir(run), 5000, 6000, true)) {
+            assertTrue(fonte.vazio());
+        }
+        // entre dois valores vizinhos do run
+        try (MergeParticionado.FonteIntervalo fonte = new MergeParticionado.FonteIntervalo(abrir(run), 500, 500, true)) {
+            assertTrue(fonte.vazio());
+        }
+    }
+
+    @Test
+    void intervaloEntregaSoOsValoresDoIntervalo() throws IOException {
+        File run = gravarRun(sequencia(0, 1000));
+        try (MergeParticionado.FonteIntervalo fonte = new MergeParticionado.FonteIntervalo(abrir(run), 100, 200, true)) {
+            assertArrayEquals(sequencia(100, 200), lerTudo(fonte));
+        }
+        // a última partição não é limitada: vai até o fim do run
+        try (MergeParticionado.FonteIntervalo fonte = new MergeParticionado.FonteIntervalo(abrir(run), 990, 0, false)) {
+            assertArrayEquals(sequencia(990, 1000), lerTudo(fonte));
+        }
+    }
+
+    @Test
+    void concatenarTextoPulaSegmentosVazios() throws IOException {
+        File saida = arquivo("saida.txt", "1, 2");
+        MergeParticionado.concatenar(saida, List.of(arquivo("a", ""), arquivo("b", "3, 4"), arquivo("c", ""),
+                arquivo("d", "5")), FormatoArquivo.TEXTO, new byte[0]);
+        assertEquals("1, 2, 3, 4, 5", ler(saida));
+    }
+
+    @Test
+    void concatenarTextoComPrimeiraParticaoVazia() throws IOException {
+        File saida = arquivo("saida.txt", "");
+        MergeParticionado.concatenar(saida, List.of(arquivo("a", ""), arquivo("b", "7"), arquivo("c", "8, 9")),
+                FormatoArquivo.TEXTO, new byte[0]);
+        assertEquals("7, 8, 9", ler(saida));
+    }
+
+    @Test
+    void concatenarLinhasSemSeparador() throws IOException {
+        File saida = arquivo("saida.txt", "1\n");
+        MergeParticionado.concatenar(saida, List.of(arquivo("a", ""), arquivo("b", "2\n3\n")), FormatoArquivo.LINHAS,
+                new byte[0]);
+        assertEquals("1\n2\n3\n", ler(saida));
+    }
+
+    @Test
+    void concatenarTextoComTerminadorDepoisDoUltimoSegmento() throws IOException {
+        File saida = arquivo("saida.txt", "1");
+        MergeParticionado.concatenar(saida, List.of(arquivo("a", "2"), arquivo("b", "")), FormatoArquivo.TEXTO,
+                EscritorSaida.terminador(FormatoArquivo.TEXTO, true));
+        assertEquals("1, 2" + System.lineSeparator(), ler(saida));
+    }
+
+    @Test
+    void ordenacaoParticionadaComChavesIguais() throws IOException {
+        // vários runs de um único valor: sem separadores, o passo final fica com uma partição
+        long[] valores = new long[200_000];
+        Arrays.fill(valores, 7);
+        assertEquals(texto(valores), ordenarTexto(valores));
+    }
+
+    @Test
+    void ordenacaoParticionadaComSeparadoresRepetidos() throws IOException {
+        // quase tudo em dois valores: os quantis da amostra repetem e viram um só separador
+        long[] valores = new long[200_000];
+        for (int i = 0; i < valores.length; i++) {
+            valores[i] = i % 50_000 == 0 ? i : (i % 2 == 0 ? -3 : 3);
+        }
+        String ordenado = ordenarTexto(valores);
+        Arrays.sort(valores);
+        assertEquals(texto(valores), ordenado);
+    }
+
+    @Test
+    void ordenacaoParticionadaComQuebraLinhaFinal() throws IOException {
+        // só uma quebra de linha, no fim do último segmento
+        long[] valores = new long[200_000];
+        for (int i = 0; i < valores.length; i++) {
+            valores[i] = (i * 7919L) % valores.length;
+        }
+        String ordenado = ordenarTexto(valores, true);
+        Arrays.sort(valores);
+        assertEquals(texto(valores) + System.lineSeparator(), ordenado);
+    }
+
+    private String ordenarTexto(long[] valores) throws IOException {
+        return ordenarTexto(valores, false);
+    }
+
+    private String ordenarTexto(long[] valores, boolean quebraLinhaFinal) throws IOException {
+        File entrada = arquivo("entrada.txt", texto(valores));
+        File saida = new File(diretorio, "saida.txt");
+        ResultadoOrdenacao resultado = ExternalSorter.builder()
+                .memoriaMaxima(1024 * 1024)
+                .diretorioTemporario(diretorio)
+                .threadsMerge(4)
+                .limiteContagem(0)
+                .quebraLinhaFinal(quebraLinhaFinal)
+                .build()
+                .ordenar(entrada, saida);
+        assertTrue(resultado.runsIniciais() > 1, "a entrada deveria ter gerado vários runs");
+        return ler(saida);
+    }
+
+    private File gravarRun(long[] valores) throws IOException {
+        File run = File.createTempFile("run", ".bin", diretorio);
+        EscritorRun.gravar(run, valores, valores.length, false, ConfiguracaoOrdenacao.Agregacao.NENHUMA,
+                CodecRun.DELTA_BLOCOS, arena);
+        return run;
+    }
+
+    private BufferArquivoBinario abrir(File run) throws IOException {
+        return new BufferArquivoBinario(run, 64 * 1024, arena);
+    }
+
+    private static long[] lerTudo(FonteRunOrdenada fonte) throws IOException {
+        List<Long> lidos = new ArrayList<>();
+        while (!fonte.vazio()) {
+            lidos.add(fonte.remover());
+        }
+        return lidos.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long[] sequencia(long inicio, long fim) {
+        long[] valores = new long[(int) (fim - inicio)];
+        for (int i = 0; i < valores.length; i++) {
+            valores[i] = inicio + i;
+        }
+        return valores;
+    }
+
+    private static String texto(long[] valores) {
+        StringJoiner juntos = new StringJoiner(", ");
+        for (long valor : valores) {
+            juntos.add(Long.toString(valor));
+        }
+        return juntos.toString();
+    }
+
+    private File arquivo(String nome, String conteudo) throws IOException {
+        File arquivo = new File(diretorio, nome);
+        Files.write(arquivo.toPath(), conteudo.getBytes(StandardCharsets.ISO_8859_1));
+        return arquivo;
+    }
+
+    private static String ler(File arquivo) throws IOException {
+        return new String(Files.readAllBytes(arquivo.toPath()), StandardCharsets.ISO_8859_1);
+    }
+}
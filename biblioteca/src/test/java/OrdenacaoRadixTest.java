@@ -0,0 +1,63 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Radix em um trecho do meio do array: só [inicio, fim) muda e fica ordenado, com o
+ * histograma sequencial e com o dividido entre threads
+ */
+class OrdenacaoRadixTest {
+    private static final int TAMANHO = 4 * OrdenacaoRadix.LIMIAR_PARALELO;
+    private static final int INICIO = TAMANHO / 2;
+    private static final int FIM = TAMANHO - 1000;
+
+    @Test
+    void trechoDeIntSequencial() {
+        verificarInt(1);
+    }
+
+    @Test
+    void trechoDeIntParalelo() {
+        verificarInt(4);
+    }
+
+    @Test
+    void trechoDeLongSequencial() {
+        verificarLong(1);
+    }
+
+    @Test
+    void trechoDeLongParalelo() {
+        verificarLong(4);
+    }
+
+    private static void verificarInt(int threads) {
+        // a primeira metade só com valores altos: um histograma do trecho errado não ordena
+        Random aleatorio = new Random(threads);
+        int[] valores = new int[TAMANHO];
+        for (int i = 0; i < TAMANHO; i++) {
+            valores[i] = i < INICIO ? Integer.MAX_VALUE - aleatorio.nextInt(10) : aleatorio.nextInt();
+        }
+        int[] esperado = valores.clone();
+        Arrays.sort(esperado, INICIO, FIM);
+
+        OrdenacaoRadix.ordenar(valores, INICIO, FIM, threads);
+        assertArrayEquals(esperado, valores);
+    }
+
+    private static void verificarLong(int threads) {
+        Random aleatorio = new Random(threads);
+        long[] valores = new long[TAMANHO];
+        for (int i = 0; i < TAMANHO; i++) {
+            valores[i] = i < INICIO ? Long.MAX_VALUE - aleatorio.nextInt(10) : aleatorio.nextLong();
+        }
+        long[] esperado = valores.clone();
+        Arrays.sort(esperado, INICIO, FIM);
+
+        OrdenacaoRadix.ordenar(valores, INICIO, FIM, threads);
+        assertArrayEquals(esperado, valores);
+    }
+}